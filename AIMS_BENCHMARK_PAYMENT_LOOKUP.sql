@@ -0,0 +1,79 @@
+-- Benchmark truy vấn fallback của callback VietQR trên bảng Payment 1 triệu dòng
+-- Chạy trên database test (KHÔNG chạy trên production), sau khi đã chạy AIMS_DATABASE.sql
+-- Chạy đúng các câu PaymentRepository.findMatchCandidatesByAmount / findMatchCandidatesByAmountAndContentKeyPrefix
+-- (callback 6.250.000 VND = 250 USD, sai số 250 VND) và so sánh full table scan với index idx_payment_method_status_amount_vnd
+
+USE AIMS_DATABASE;
+
+-- Seed 1.000.000 payment: ~98% đã COMPLETED/CANCELLED, còn lại PENDING, trộn VIETQR/PAYPAL
+-- expectedAmountVnd / contentKey điền giống lúc ứng dụng tạo payment (tỷ giá 25000)
+SET SESSION cte_max_recursion_depth = 1000000;
+
+INSERT INTO Payment (orderId, paymentCode, amount, expectedAmountVnd, description, contentKey, status, paymentMethod,
+                     transactionId, createdAt)
+WITH RECURSIVE seq (n) AS (
+    SELECT 1
+    UNION ALL
+    SELECT n + 1 FROM seq WHERE n < 1000000
+)
+SELECT
+    1,
+    CONCAT('BENCH-', n),
+    ROUND(1 + (n % 5000) / 10, 2),
+    CASE WHEN n % 3 = 0 THEN NULL ELSE ROUND(ROUND(1 + (n % 5000) / 10, 2) * 25000) END,
+    CONCAT('THANH TOAN DON HANG ', n, ' | Bank: BIDV, Account: 8867699892'),
+    CASE WHEN n % 3 = 0 THEN NULL ELSE CONCAT('THANH TOAN DON HANG ', n) END,
+    CASE WHEN n % 50 = 0 THEN 'PENDING' WHEN n % 7 = 0 THEN 'CANCELLED' ELSE 'COMPLETED' END,
+    CASE WHEN n % 3 = 0 THEN 'PAYPAL' ELSE 'VIETQR' END,
+    CONCAT('BENCH-TX-', n),
+    NOW() - INTERVAL (n % 525600) MINUTE
+FROM seq;
+
+ANALYZE TABLE Payment;
+
+-- 1. Trước: findMatchCandidatesByAmount không dùng index (tương đương lọc trên toàn bộ bảng)
+EXPLAIN ANALYZE
+SELECT id, amount, description, transactionId, expiresAt, expectedAmountVnd, contentKey
+FROM Payment IGNORE INDEX (idx_payment_method_status_amount_vnd, idx_payment_method_status_amount,
+                           idx_payment_status, idx_payment_status_expires)
+WHERE paymentMethod = 'VIETQR' AND status = 'PENDING'
+  AND expectedAmountVnd BETWEEN 6249750 AND 6250250
+ORDER BY id;
+
+-- 2. findMatchCandidatesByAmount: range scan trên (paymentMethod, status, expectedAmountVnd)
+EXPLAIN ANALYZE
+SELECT id, amount, description, transactionId, expiresAt, expectedAmountVnd, contentKey
+FROM Payment
+WHERE paymentMethod = 'VIETQR' AND status = 'PENDING'
+  AND expectedAmountVnd BETWEEN 6249750 AND 6250250
+ORDER BY id;
+
+-- 3. findMatchCandidatesByAmountAndContentKeyPrefix: cùng range scan, contentKey LIKE prefix lọc trên các dòng đã thu hẹp
+EXPLAIN ANALYZE
+SELECT id, amount, description, transactionId, expiresAt, expectedAmountVnd, contentKey
+FROM Payment
+WHERE paymentMethod = 'VIETQR' AND status = 'PENDING'
+  AND expectedAmountVnd BETWEEN 6249750 AND 6250250
+  AND contentKey LIKE CONCAT('THANH TOAN DON HANG 2490', '%')
+ORDER BY id;
+
+-- 4. Đối chiếu: dạng cũ có nhánh OR (expectedAmountVnd IS NULL AND amount BETWEEN ...) cho payment chưa backfill
+-- Nhánh OR buộc MySQL quét thêm toàn bộ dải expectedAmountVnd IS NULL (hoặc index merge); AIMS_DATABASE.sql đã backfill
+-- expectedAmountVnd cho payment VIETQR nên ứng dụng không còn dùng dạng này
+EXPLAIN ANALYZE
+SELECT id, amount, description, transactionId, expiresAt, expectedAmountVnd, contentKey
+FROM Payment
+WHERE paymentMethod = 'VIETQR' AND status = 'PENDING'
+  AND (expectedAmountVnd BETWEEN 6249750 AND 6250250
+       OR (expectedAmountVnd IS NULL AND amount BETWEEN 249.99 AND 250.01))
+ORDER BY id;
+
+-- 5. Đếm payment PENDING cho log "not found" (index-only scan)
+EXPLAIN ANALYZE
+SELECT COUNT(*) FROM Payment WHERE paymentMethod = 'VIETQR' AND status = 'PENDING';
+
+-- Dọn dữ liệu benchmark
+DELETE FROM Payment WHERE paymentCode LIKE 'BENCH-%';
+
+-- Benchmark insert thêm dòng bằng AUTO_INCREMENT: đồng bộ lại IdAllocator để ứng dụng không cấp trùng id
+UPDATE IdAllocator SET nextId = GREATEST(nextId, (SELECT COALESCE(MAX(id), 0) + 1 FROM Payment)) WHERE entityName = 'Payment';
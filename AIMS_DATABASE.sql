@@ -120,6 +120,55 @@ CREATE INDEX idx_payment_code ON Payment(paymentCode);
 CREATE INDEX idx_payment_status ON Payment(status);
 CREATE INDEX idx_order_id ON Payment(orderId);
 
+-- Index cho callback VietQR: lọc paymentMethod + status rồi range scan theo amount
+-- (thay cho full table scan khi không tìm được payment theo transactionId/orderId)
+-- transactionId đã có index từ ràng buộc UNIQUE nên không cần tạo thêm
+CREATE INDEX idx_payment_method_status_amount ON Payment(paymentMethod, status, amount);
+
+-- Khóa so khớp callback VietQR, tính sẵn lúc tạo payment
+-- expectedAmountVnd: amount quy đổi sang VND; contentKey: description đã chuẩn hóa (bỏ dấu, viết hoa)
+ALTER TABLE Payment
+ADD COLUMN expectedAmountVnd BIGINT AFTER amount,
+ADD COLUMN contentKey VARCHAR(255) AFTER description;
+
+-- Backfill expectedAmountVnd cho payment cũ (tỷ giá vietqr.usd-to-vnd-rate)
+-- contentKey của payment cũ để NULL, ứng dụng tự tính từ description khi so khớp
+UPDATE Payment SET expectedAmountVnd = ROUND(amount * 25000)
+WHERE paymentMethod = 'VIETQR' AND expectedAmountVnd IS NULL;
+
+CREATE INDEX idx_payment_method_status_amount_vnd ON Payment(paymentMethod, status, expectedAmountVnd);
+
+-- Optimistic locking (@Version): mỗi lần ghi Payment tăng version, hai lần ghi đồng thời thì lần sau bị từ chối
+ALTER TABLE Payment
+ADD COLUMN version INT NOT NULL DEFAULT 0;
+
+-- Index cho expiry sweeper: tìm payment PENDING đã quá expiresAt (status EXPIRED do sweeper đặt)
+CREATE INDEX idx_payment_status_expires ON Payment(status, expiresAt);
+
+-- Bảng lưu response đã trả cho callback VietQR (vietqr.callback.idempotency.store=jpa)
+-- Dùng để dedup callback bank gửi lại, kể cả sau khi restart ứng dụng
+CREATE TABLE VietQRCallbackIdempotency (
+    idempotencyKey VARCHAR(255) PRIMARY KEY, -- bankCode|transactionId|referenceNumber
+    isError BOOLEAN NOT NULL,
+    errorReason VARCHAR(10),
+    toastMessage VARCHAR(255),
+    refTransactionId VARCHAR(255),
+    createdAt DATETIME NOT NULL
+);
+CREATE INDEX idx_callback_idempotency_created ON VietQRCallbackIdempotency(createdAt);
+
+-- Transactional outbox: mỗi thay đổi status của Payment, ghi cùng transaction với lần cập nhật status
+-- PaymentOutboxRelay gửi các dòng chưa publish (publishedAt IS NULL) theo id tăng dần rồi đặt publishedAt
+CREATE TABLE PaymentOutbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    paymentId INT NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    createdAt DATETIME NOT NULL,
+    publishedAt DATETIME NULL,
+    CONSTRAINT uk_payment_outbox_payment_status UNIQUE (paymentId, status)
+);
+CREATE INDEX idx_payment_outbox_published ON PaymentOutbox(publishedAt, id);
+
 -- PRODUCT
 INSERT INTO Product (title, category, price, quantity, value, imgUrl) VALUES
 ('Clean Code', 'BOOK', 150000, 10, 150000, 'https://example.com/clean-code.jpg'),
@@ -163,3 +212,19 @@ VALUES (
     'PAYPAL',
     NOW()
 );
+
+-- Bảng cấp phát id theo block cho Payment/Order (thay cho AUTO_INCREMENT, để Hibernate batch được INSERT)
+-- nextId = id đầu tiên của block kế tiếp; mỗi lần ứng dụng lấy 50 id (allocationSize = 50)
+-- Phải seed SAU khi đã có dữ liệu để không cấp trùng id đang tồn tại
+CREATE TABLE IdAllocator (
+    entityName VARCHAR(100) PRIMARY KEY,
+    nextId BIGINT NOT NULL
+);
+INSERT INTO IdAllocator (entityName, nextId)
+SELECT 'Payment', COALESCE(MAX(id), 0) + 1 FROM Payment;
+INSERT INTO IdAllocator (entityName, nextId)
+SELECT 'Order', COALESCE(MAX(id), 0) + 1 FROM `Order`;
+
+-- Nếu có dòng được insert bằng AUTO_INCREMENT ngoài ứng dụng (script, benchmark...), đồng bộ lại:
+-- UPDATE IdAllocator SET nextId = GREATEST(nextId, (SELECT COALESCE(MAX(id), 0) + 1 FROM Payment)) WHERE entityName = 'Payment';
+-- UPDATE IdAllocator SET nextId = GREATEST(nextId, (SELECT COALESCE(MAX(id), 0) + 1 FROM `Order`)) WHERE entityName = 'Order';
@@ -0,0 +1,103 @@
+package com.example.AIMSVER2.benchmark;
+
+import com.example.AIMSVER2.entity.Order;
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.repository.OrderRepository;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Repository in-memory cho benchmark (không cần MySQL)
+ * Chỉ cài các method mà hot path thanh toán gọi tới, method khác ném UnsupportedOperationException
+ */
+public final class InMemoryRepositories {
+
+    private InMemoryRepositories() {
+    }
+
+    public static PaymentRepository paymentRepository(Map<Integer, Payment> table) {
+        AtomicInteger nextId = new AtomicInteger(table.keySet().stream().mapToInt(Integer::intValue).max().orElse(0));
+        return (PaymentRepository) Proxy.newProxyInstance(
+            PaymentRepository.class.getClassLoader(),
+            new Class<?>[]{PaymentRepository.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "findByTransactionId" -> table.values().stream()
+                    .filter(p -> args[0].equals(p.getTransactionId()))
+                    .findFirst();
+                case "findByOrderIdAndPaymentMethodAndStatus" -> List.of();
+                case "countByPaymentMethodAndStatus" -> (long) table.size();
+                case "findMatchViewsByPaymentMethodAndStatus" -> List.of();
+                case "findById" -> Optional.ofNullable(table.get((Integer) args[0]));
+                case "findAllById" -> {
+                    List<Payment> found = new ArrayList<>();
+                    for (Object id : (Iterable<?>) args[0]) {
+                        Payment payment = table.get((Integer) id);
+                        if (payment != null) {
+                            found.add(payment);
+                        }
+                    }
+                    yield found;
+                }
+                case "save" -> {
+                    Payment payment = (Payment) args[0];
+                    if (payment.getId() == null) {
+                        payment.setId(nextId.incrementAndGet());
+                    }
+                    table.put(payment.getId(), payment);
+                    yield payment;
+                }
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> "InMemoryPaymentRepository";
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    public static OrderRepository orderRepository(Map<Integer, Order> table) {
+        return (OrderRepository) Proxy.newProxyInstance(
+            OrderRepository.class.getClassLoader(),
+            new Class<?>[]{OrderRepository.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "findById" -> Optional.ofNullable(table.get((Integer) args[0]));
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> "InMemoryOrderRepository";
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    public static Map<Integer, Payment> newTable() {
+        return new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Transaction manager không làm gì, để TransactionTemplate chạy callback trực tiếp
+     */
+    public static PlatformTransactionManager noOpTransactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.AIMSVER2.benchmark;
+
+import com.example.AIMSVER2.dto.PaymentRequest;
+import com.example.AIMSVER2.dto.PaymentResponse;
+import com.example.AIMSVER2.strategy.PaymentStrategy;
+
+import java.time.LocalDateTime;
+
+/**
+ * Strategy giả lập gateway trả kết quả ngay (không gọi network)
+ */
+public class StubPaymentStrategy implements PaymentStrategy {
+
+    private final String paymentMethod;
+
+    public StubPaymentStrategy(String paymentMethod) {
+        this.paymentMethod = paymentMethod;
+    }
+
+    @Override
+    public PaymentResponse createPayment(PaymentRequest request) {
+        return PaymentResponse.builder()
+            .status("PENDING")
+            .amount(request.getAmount())
+            .description(request.getDescription())
+            .paymentMethod(paymentMethod)
+            .transactionId(paymentMethod + "-" + System.nanoTime())
+            .qrCodeUrl("https://example.invalid/qr")
+            .expiresAt(LocalDateTime.now().plusMinutes(15))
+            .build();
+    }
+
+    @Override
+    public PaymentResponse confirmPayment(String paymentId, String payerId) {
+        return PaymentResponse.builder().status("COMPLETED").transactionId(paymentId).build();
+    }
+
+    @Override
+    public PaymentResponse cancelPayment(String paymentId) {
+        return PaymentResponse.builder().status("CANCELLED").transactionId(paymentId).build();
+    }
+
+    @Override
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+}
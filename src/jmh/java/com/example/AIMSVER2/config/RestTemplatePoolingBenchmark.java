@@ -0,0 +1,118 @@
+package com.example.AIMSVER2.config;
+
+import com.example.AIMSVER2.dto.vietqr.VietQRGenerateRequest;
+import com.example.AIMSVER2.dto.vietqr.VietQRGenerateResponse;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thông lượng POST /qr/generate-customer qua RestTemplate tới một VietQR giả lập (JDK HttpServer trên loopback)
+ * client = simple: SimpleClientHttpRequestFactory (cấu hình trước khi có pool, keep-alive của HttpURLConnection
+ * chỉ giữ http.maxConnections = 5 connection/host); pooled: RestTemplateConfig (HttpClient 5 + pool keep-alive)
+ * Server giả lập là HTTP thường nên chỉ đo phần mở TCP connection, không tính TLS handshake của gateway thật
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+@Fork(1)
+public class RestTemplatePoolingBenchmark {
+
+    private static final byte[] QR_RESPONSE = """
+        {"bankCode":"BIDV","bankName":"BIDV","bankAccount":"8867699892","userBankName":"NGUYEN TRUNG SON",\
+        "amount":"250000","content":"THANH TOAN DON HANG 1","qrCode":"000201010212","transactionRefId":"REF1"}\
+        """.getBytes(StandardCharsets.UTF_8);
+
+    @Param({"simple", "pooled"})
+    private String client;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private CloseableHttpClient httpClient;
+    private RestTemplate restTemplate;
+    private String url;
+    private HttpEntity<VietQRGenerateRequest> request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        serverExecutor = Executors.newFixedThreadPool(32);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(serverExecutor);
+        server.createContext("/qr/generate-customer", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                body.readAllBytes();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, QR_RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(QR_RESPONSE);
+            }
+        });
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/qr/generate-customer";
+
+        if ("pooled".equals(client)) {
+            RestTemplateConfig restTemplateConfig = new RestTemplateConfig(new HttpClientPoolConfig());
+            httpClient = restTemplateConfig.gatewayHttpClient(restTemplateConfig.gatewayConnectionManager());
+            restTemplate = restTemplateConfig.restTemplate(httpClient);
+        } else {
+            SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+            requestFactory.setConnectTimeout(5000);
+            requestFactory.setReadTimeout(10000);
+            restTemplate = new RestTemplate(requestFactory);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth("benchmark-token");
+        request = new HttpEntity<>(VietQRGenerateRequest.builder()
+            .bankCode("BIDV")
+            .bankAccount("8867699892")
+            .userBankName("NGUYEN TRUNG SON")
+            .amount("250000")
+            .content("Thanh toan don hang 1")
+            .orderId("1")
+            .build(), headers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public VietQRGenerateResponse generateQr() {
+        return restTemplate.postForEntity(url, request, VietQRGenerateResponse.class).getBody();
+    }
+}
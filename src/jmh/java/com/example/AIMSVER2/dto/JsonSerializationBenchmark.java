@@ -0,0 +1,67 @@
+package com.example.AIMSVER2.dto;
+
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize response trả về cho client/VietQR bằng Jackson (cùng mapper mặc định Spring MVC dùng)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    private JsonMapper jsonMapper;
+    private PaymentResponse paymentResponse;
+    private VietQRCallbackResponse callbackResponse;
+
+    @Setup
+    public void setUp() {
+        jsonMapper = JsonMapper.builder().build();
+        paymentResponse = PaymentResponse.builder()
+            .paymentId(12345)
+            .paymentCode("VIETQR-1A2B3C4D")
+            .status("PENDING")
+            .amount(new BigDecimal("18.00"))
+            .description("Thanh toan don hang 12345")
+            .paymentMethod("VIETQR")
+            .transactionId("VQR26044A5CCKYZA")
+            .createdAt(LocalDateTime.of(2026, 1, 20, 10, 0))
+            .expiresAt(LocalDateTime.of(2026, 1, 20, 10, 15))
+            .qrCodeUrl("https://pro.vietqr.vn/qr-generated?token=abcdef")
+            .qrCode("00020101021238570010A000000727012700069704180113886769989202080208QRIBFTTA53037045406450000")
+            .bankName("BIDV")
+            .bankAccount("8867699892")
+            .message("QR code generated. Bank: BIDV, Account: 8867699892. Please scan QR code to pay.")
+            .build();
+        callbackResponse = VietQRCallbackResponse.builder()
+            .error(false)
+            .errorReason("00")
+            .toastMessage("Transaction processed successfully")
+            .object(VietQRCallbackResponse.ResponseObject.builder().refTransactionId("VQR26044A5CCKYZA").build())
+            .build();
+    }
+
+    @Benchmark
+    public byte[] paymentResponse() {
+        return jsonMapper.writeValueAsBytes(paymentResponse);
+    }
+
+    @Benchmark
+    public byte[] vietQRCallbackResponse() {
+        return jsonMapper.writeValueAsBytes(callbackResponse);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.AIMSVER2.factory;
+
+import com.example.AIMSVER2.benchmark.StubPaymentStrategy;
+import com.example.AIMSVER2.config.GatewayResilienceConfig;
+import com.example.AIMSVER2.resilience.GatewayResilienceRegistry;
+import com.example.AIMSVER2.strategy.PaymentStrategy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class PaymentStrategyFactoryBenchmark {
+
+    private PaymentStrategyFactory factory;
+
+    @Setup
+    public void setUp() {
+        factory = new PaymentStrategyFactory(List.of(
+            new StubPaymentStrategy("PAYPAL"),
+            new StubPaymentStrategy("VIETQR")),
+            new GatewayResilienceRegistry(new GatewayResilienceConfig(), new SimpleMeterRegistry()));
+        factory.getStrategy("VIETQR");
+    }
+
+    @Benchmark
+    public PaymentStrategy getStrategyUpperCase() {
+        return factory.getStrategy("VIETQR");
+    }
+
+    @Benchmark
+    public PaymentStrategy getStrategyLowerCase() {
+        return factory.getStrategy("vietqr");
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.AIMSVER2.repository;
+
+import com.example.AIMSVER2.entity.Order;
+import com.example.AIMSVER2.entity.Payment;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Số Payment INSERT/giây qua PaymentRepository.saveAll (đường reserve của batch tạo payment)
+ *
+ * - Id lấy từ TableGenerator IdAllocator (pooled-lo, block 50) như entity thật
+ * - batchSize = hibernate.jdbc.batch_size: 1 là mỗi dòng một round trip, 50 là cấu hình trong application.properties
+ * - Mặc định chạy trên H2 in-memory (schema do Hibernate tạo); đo trên MySQL thật (đã có schema AIMS_DATABASE.sql)
+ *   bằng các system property benchmark.jdbc.url / user / password của JVM fork, ví dụ
+ *   -Djmh.args="PaymentInsertBenchmark -jvmArgsAppend '-Dbenchmark.jdbc.url=jdbc:mysql://host:3307/AIMS_DATABASE?rewriteBatchedStatements=true -Dbenchmark.jdbc.user=root'"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class PaymentInsertBenchmark {
+
+    private static final int ROWS_PER_SAVE = 500; // payment.batch.max-size
+    private static final String CODE_PREFIX = "BENCH-INS-";
+
+    @Param({"1", "50"})
+    private int batchSize;
+
+    private AnnotationConfigApplicationContext context;
+    private PaymentRepository paymentRepository;
+    private TransactionTemplate transactionTemplate;
+    private EntityManager entityManager;
+    private Order order;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("benchmark.hibernate.batch-size", String.valueOf(batchSize));
+        context = new AnnotationConfigApplicationContext(JpaConfig.class);
+        paymentRepository = context.getBean(PaymentRepository.class);
+        OrderRepository orderRepository = context.getBean(OrderRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(context.getBean(EntityManagerFactory.class));
+
+        Order newOrder = new Order();
+        newOrder.setCustomerName("Benchmark");
+        newOrder.setPrice(BigDecimal.TEN);
+        newOrder.setCreatedAt(LocalDateTime.now());
+        order = transactionTemplate.execute(status -> orderRepository.save(newOrder));
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteInsertedPayments() {
+        transactionTemplate.executeWithoutResult(status -> entityManager
+            .createQuery("DELETE FROM Payment p WHERE p.paymentCode LIKE :prefix")
+            .setParameter("prefix", CODE_PREFIX + "%")
+            .executeUpdate());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transactionTemplate.executeWithoutResult(status -> context.getBean(OrderRepository.class).deleteById(order.getId()));
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS_PER_SAVE)
+    public List<Payment> saveAll() {
+        List<Payment> payments = new ArrayList<>(ROWS_PER_SAVE);
+        for (int i = 0; i < ROWS_PER_SAVE; i++) {
+            Payment payment = new Payment();
+            payment.setOrder(order);
+            payment.setPaymentCode(CODE_PREFIX + sequence.incrementAndGet());
+            payment.setAmount(BigDecimal.TEN);
+            payment.setDescription("BENCH INSERT");
+            payment.setStatus("PROCESSING");
+            payment.setPaymentMethod("VIETQR");
+            payment.setCreatedAt(LocalDateTime.now());
+            payments.add(payment);
+        }
+        return transactionTemplate.execute(status -> paymentRepository.saveAll(payments));
+    }
+
+    /**
+     * JPA tối thiểu (DataSource, EntityManagerFactory, repository) thay cho auto-configuration của Spring Boot
+     */
+    @Configuration
+    @EnableJpaRepositories(basePackageClasses = PaymentRepository.class)
+    static class JpaConfig {
+
+        private static final String H2_URL = "jdbc:h2:mem:payment-insert;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+        @Bean
+        DataSource dataSource() {
+            return new DriverManagerDataSource(
+                System.getProperty("benchmark.jdbc.url", H2_URL),
+                System.getProperty("benchmark.jdbc.user", "sa"),
+                System.getProperty("benchmark.jdbc.password", ""));
+        }
+
+        @Bean
+        LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+            boolean h2 = System.getProperty("benchmark.jdbc.url", H2_URL).startsWith("jdbc:h2:");
+            Properties properties = new Properties();
+            properties.setProperty("hibernate.jdbc.batch_size", System.getProperty("benchmark.hibernate.batch-size"));
+            properties.setProperty("hibernate.order_inserts", "true");
+            properties.setProperty("hibernate.hbm2ddl.auto", h2 ? "create-drop" : "none");
+
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setDataSource(dataSource);
+            factory.setPackagesToScan(Payment.class.getPackageName());
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setJpaProperties(properties);
+            return factory;
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+    }
+}
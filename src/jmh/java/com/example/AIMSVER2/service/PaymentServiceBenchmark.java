@@ -0,0 +1,108 @@
+package com.example.AIMSVER2.service;
+
+import com.example.AIMSVER2.benchmark.InMemoryRepositories;
+import com.example.AIMSVER2.benchmark.StubPaymentStrategy;
+import com.example.AIMSVER2.config.GatewayResilienceConfig;
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.dto.PaymentRequest;
+import com.example.AIMSVER2.dto.PaymentResponse;
+import com.example.AIMSVER2.entity.Order;
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.factory.PaymentStrategyFactory;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import com.example.AIMSVER2.resilience.GatewayResilienceRegistry;
+import com.example.AIMSVER2.service.code.SnowflakePaymentCodeGenerator;
+import com.example.AIMSVER2.service.vietqr.PendingVietQRPaymentIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đo overhead của PaymentService.createPayment (reserve -> gateway -> finalize) với strategy giả lập,
+ * repository in-memory và transaction manager no-op, gateway chạy ngay trên thread gọi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class PaymentServiceBenchmark {
+
+    @Param({"VIETQR", "PAYPAL"})
+    private String paymentMethod;
+
+    private Map<Integer, Payment> paymentTable;
+    private PendingVietQRPaymentIndex pendingPaymentIndex;
+    private PaymentService paymentService;
+    private PaymentRequest request;
+
+    @Setup
+    public void setUp() {
+        VietQRConfig vietQRConfig = new VietQRConfig();
+        Order order = new Order();
+        order.setId(1);
+
+        paymentTable = InMemoryRepositories.newTable();
+        PaymentRepository paymentRepository = InMemoryRepositories.paymentRepository(paymentTable);
+        pendingPaymentIndex = new PendingVietQRPaymentIndex(paymentRepository, vietQRConfig);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PaymentStrategyFactory factory = new PaymentStrategyFactory(List.of(
+            new StubPaymentStrategy("PAYPAL"),
+            new StubPaymentStrategy("VIETQR")),
+            new GatewayResilienceRegistry(new GatewayResilienceConfig(), meterRegistry));
+
+        paymentService = new PaymentService(
+            paymentRepository,
+            InMemoryRepositories.orderRepository(Map.of(1, order)),
+            factory,
+            pendingPaymentIndex,
+            vietQRConfig,
+            new NoOpExpirySweeper(),
+            new SnowflakePaymentCodeGenerator(1),
+            event -> { },
+            new TransactionTemplate(InMemoryRepositories.noOpTransactionManager()),
+            Runnable::run,
+            meterRegistry);
+
+        request = new PaymentRequest();
+        request.setOrderId(1);
+        request.setAmount(new BigDecimal("18.00"));
+        request.setDescription("Thanh toán đơn hàng 1");
+        request.setPaymentMethod(paymentMethod);
+    }
+
+    @Benchmark
+    public PaymentResponse createPayment() {
+        PaymentResponse response = paymentService.createPayment(request);
+        // Giữ bảng và index không phình ra giữa các lần gọi
+        paymentTable.remove(response.getPaymentId());
+        pendingPaymentIndex.remove(response.getPaymentId());
+        return response;
+    }
+
+    /**
+     * Không giữ payment trong DelayQueue của sweeper giữa các lần gọi
+     */
+    private static class NoOpExpirySweeper extends PaymentExpirySweeper {
+
+        NoOpExpirySweeper() {
+            super(null, null, null, null, null);
+        }
+
+        @Override
+        public void track(Payment payment) {
+        }
+    }
+}
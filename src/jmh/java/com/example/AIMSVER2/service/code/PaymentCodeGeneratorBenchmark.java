@@ -0,0 +1,44 @@
+package com.example.AIMSVER2.service.code;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput sinh paymentCode khi nhiều thread tạo payment cùng lúc
+ * - uuidSubstring: cách cũ (UUID.randomUUID dùng SecureRandom, cắt 8 ký tự)
+ * - snowflake / random: các PaymentCodeGenerator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+@Fork(1)
+public class PaymentCodeGeneratorBenchmark {
+
+    private final PaymentCodeGenerator snowflake = new SnowflakePaymentCodeGenerator(1);
+    private final PaymentCodeGenerator random = new RandomPaymentCodeGenerator();
+
+    @Benchmark
+    public String uuidSubstring() {
+        return UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    }
+
+    @Benchmark
+    public String snowflake() {
+        return snowflake.next();
+    }
+
+    @Benchmark
+    public String random() {
+        return random.next();
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.example.AIMSVER2.benchmark.InMemoryRepositories;
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackRequest;
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.LoggerFactory;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thông lượng processCallback (match theo transactionId, payment được đặt lại PENDING mỗi lần) theo cấu hình log
+ * level = DEBUG: bật toàn bộ log chi tiết (tương đương lượng log INFO trước đây); INFO: chỉ dòng tóm tắt mỗi callback
+ * appender = sync: ghi trực tiếp trên thread xử lý; async: qua AsyncAppender như profile prod
+ * Log ghi ra OutputStream rỗng để chỉ đo chi phí format/encode, không đo tốc độ đĩa/console
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class VietQRCallbackLoggingBenchmark {
+
+    private static final double RATE = 25000.0;
+    private static final BigDecimal AMOUNT_USD = new BigDecimal("10.00");
+
+    @Param({"DEBUG", "INFO"})
+    private String level;
+
+    @Param({"sync", "async"})
+    private String appender;
+
+    private VietQRCallbackService callbackService;
+    private VietQRCallbackRequest callback;
+    private Payment payment;
+    private Logger root;
+    private Appender<ILoggingEvent> installed;
+
+    @Setup
+    public void setUp() {
+        configureLogging();
+
+        VietQRConfig config = new VietQRConfig();
+        config.setUsdToVndRate(RATE);
+
+        Map<Integer, Payment> table = InMemoryRepositories.newTable();
+        PaymentRepository paymentRepository = InMemoryRepositories.paymentRepository(table);
+        PendingVietQRPaymentIndex index = new PendingVietQRPaymentIndex(paymentRepository, config);
+        index.warmUp();
+
+        payment = new Payment();
+        payment.setId(1);
+        payment.setAmount(AMOUNT_USD);
+        payment.setTransactionId("FT26044A5CCKYZA");
+        payment.setDescription("Thanh toán đơn hàng 1 | Bank: BIDV, Account: 8867699892");
+        payment.setPaymentMethod("VIETQR");
+        payment.setStatus("PENDING");
+        payment.setExpiresAt(LocalDateTime.now().plusDays(1));
+        payment.setExpectedAmountVnd(VietQRMatchKeys.toVnd(AMOUNT_USD, RATE));
+        payment.setContentKey(VietQRMatchKeys.paymentContentKey(payment.getDescription()));
+        table.put(1, payment);
+
+        callbackService = new VietQRCallbackService(paymentRepository, config, index, event -> { }, new SimpleMeterRegistry());
+        callbackService.init();
+        callback = new VietQRCallbackRequest();
+        callback.setAmount(250_000L);
+        callback.setContent("VQR26044A5CCKYZA THANH TOAN DON HANG 1");
+        callback.setTransType("C");
+        callback.setBankAccount("8867699892");
+        callback.setBankCode("BIDV");
+        callback.setTransactionId("FT26044A5CCKYZA");
+        callback.setReferenceNumber("FT26044A5CCKYZA");
+    }
+
+    @Benchmark
+    public boolean processCallback() {
+        payment.setStatus("PENDING");
+        return callbackService.processCallback(callback);
+    }
+
+    @TearDown
+    public void tearDown() {
+        root.detachAppender(installed);
+        installed.stop();
+    }
+
+    private void configureLogging() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        root = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.detachAndStopAllAppenders();
+        root.setLevel(Level.toLevel(level));
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5level [%thread] %logger{36} : %msg %kvp%n");
+        encoder.start();
+
+        OutputStreamAppender<ILoggingEvent> sink = new OutputStreamAppender<>();
+        sink.setContext(context);
+        sink.setName("NULL");
+        sink.setEncoder(encoder);
+        sink.setOutputStream(OutputStream.nullOutputStream());
+        sink.start();
+
+        if ("async".equals(appender)) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setName("ASYNC");
+            async.setQueueSize(8192);
+            async.setNeverBlock(true);
+            async.setIncludeCallerData(false);
+            async.addAppender(sink);
+            async.start();
+            installed = async;
+        } else {
+            installed = sink;
+        }
+        root.addAppender(installed);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import com.example.AIMSVER2.benchmark.InMemoryRepositories;
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackRequest;
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đo findPaymentByCallback trên N candidate (index in-memory + repository in-memory)
+ * Tất cả candidate cùng số tiền (trường hợp xấu nhất: index trả về cả N payment), payment đúng nằm cuối
+ * keys = precomputed: payment có expectedAmountVnd/contentKey; legacy: tính lại từ amount/description mỗi lần
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class VietQRCallbackMatchingBenchmark {
+
+    private static final double RATE = 25000.0;
+    private static final BigDecimal AMOUNT_USD = new BigDecimal("10.00");
+
+    @Param({"10000", "100000"})
+    private int candidates;
+
+    @Param({"precomputed", "legacy"})
+    private String keys;
+
+    private VietQRCallbackService callbackService;
+    private VietQRCallbackRequest callback;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        VietQRConfig config = new VietQRConfig();
+        config.setUsdToVndRate(RATE);
+
+        Map<Integer, Payment> table = InMemoryRepositories.newTable();
+        PaymentRepository paymentRepository = InMemoryRepositories.paymentRepository(table);
+        PendingVietQRPaymentIndex index = new PendingVietQRPaymentIndex(paymentRepository, config);
+        index.warmUp();
+
+        for (int id = 1; id <= candidates; id++) {
+            Payment payment = new Payment();
+            payment.setId(id);
+            payment.setAmount(AMOUNT_USD);
+            payment.setDescription("Thanh toán đơn hàng " + id + " | Bank: BIDV, Account: 8867699892");
+            payment.setPaymentMethod("VIETQR");
+            payment.setStatus("PENDING");
+            payment.setExpiresAt(LocalDateTime.now().plusDays(1));
+            if ("precomputed".equals(keys)) {
+                payment.setExpectedAmountVnd(VietQRMatchKeys.toVnd(AMOUNT_USD, RATE));
+                payment.setContentKey(VietQRMatchKeys.paymentContentKey(payment.getDescription()));
+            }
+            table.put(id, payment);
+            index.add(payment);
+        }
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        callbackService = new VietQRCallbackService(paymentRepository, config, index, event -> { }, meterRegistry);
+        callbackService.init();
+        callback = new VietQRCallbackRequest();
+        callback.setAmount(250_000L);
+        callback.setContent("VQR26044A5CCKYZA THANH TOAN DON HANG " + candidates);
+        callback.setTransType("C");
+        callback.setBankAccount("8867699892");
+    }
+
+    @Benchmark
+    public Optional<Payment> findPaymentByCallback() {
+        return callbackService.findPaymentByCallback(callback);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đo từng bước so khớp của một candidate: extract content, content key, so amount (long vs BigDecimal)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class VietQRMatchKeysBenchmark {
+
+    private static final double RATE = 25000.0;
+
+    private final String rawContent = "VQR26044A5CCKYZA THANH TOAN DON HANG 12345";
+    private final BigDecimal paymentAmountUsd = new BigDecimal("10.00");
+    private final long callbackAmountVnd = 250_100L;
+    private final long expectedAmountVnd = VietQRMatchKeys.toVnd(paymentAmountUsd, RATE);
+    private final String paymentKey = VietQRMatchKeys.paymentContentKey("Thanh toán đơn hàng 12345 | Bank: BIDV, Account: 1");
+    private final String callbackKey = VietQRMatchKeys.callbackContentKey(rawContent);
+
+    @Benchmark
+    public String extractActualContent() {
+        return VietQRMatchKeys.extractActualContent(rawContent);
+    }
+
+    @Benchmark
+    public String callbackContentKey() {
+        return VietQRMatchKeys.callbackContentKey(rawContent);
+    }
+
+    @Benchmark
+    public boolean contentMatches() {
+        return VietQRMatchKeys.contentMatches(callbackKey, paymentKey);
+    }
+
+    @Benchmark
+    public boolean matchesAmountVnd() {
+        return VietQRMatchKeys.amountMatches(callbackAmountVnd, expectedAmountVnd, VietQRMatchKeys.toleranceVnd(RATE));
+    }
+
+    /**
+     * Cách so amount trước đây: chia BigDecimal VND -> USD rồi so với sai số 0.01 USD
+     */
+    @Benchmark
+    public boolean matchesAmountBigDecimal() {
+        BigDecimal callbackUsd = BigDecimal.valueOf(callbackAmountVnd).divide(BigDecimal.valueOf(RATE), 2, RoundingMode.HALF_UP);
+        return paymentAmountUsd.subtract(callbackUsd).abs().compareTo(new BigDecimal("0.01")) <= 0;
+    }
+}
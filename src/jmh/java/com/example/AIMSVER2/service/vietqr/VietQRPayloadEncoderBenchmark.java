@@ -0,0 +1,34 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chi phí dựng QR local (vietqr.qr-mode=local) thay cho token + /qr/generate-customer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class VietQRPayloadEncoderBenchmark {
+
+    private final String description = "Thanh toán đơn hàng 12345 | Bank: BIDV, Account: 1";
+    private final String purpose = VietQRPayloadEncoder.purpose(description);
+
+    @Benchmark
+    public String encode() {
+        return VietQRPayloadEncoder.encode("970418", "8867699892", 250_000L, purpose);
+    }
+
+    @Benchmark
+    public String purposeAndEncode() {
+        return VietQRPayloadEncoder.encode("970418", "8867699892", 250_000L, VietQRPayloadEncoder.purpose(description));
+    }
+}
@@ -1,13 +1,17 @@
 package com.example.AIMSVER2;
 
+import com.example.AIMSVER2.config.HttpClientPoolConfig;
 import com.example.AIMSVER2.config.PayPalConfig;
+import com.example.AIMSVER2.config.VietQRCallbackConfig;
 import com.example.AIMSVER2.config.VietQRConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@EnableConfigurationProperties({PayPalConfig.class, VietQRConfig.class})
+@EnableScheduling
+@EnableConfigurationProperties({PayPalConfig.class, VietQRConfig.class, VietQRCallbackConfig.class, HttpClientPoolConfig.class})
 public class Aimsver2Application {
 
 	public static void main(String[] args) {
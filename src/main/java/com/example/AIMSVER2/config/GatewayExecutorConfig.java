@@ -0,0 +1,59 @@
+package com.example.AIMSVER2.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@Slf4j
+public class GatewayExecutorConfig {
+    
+    /**
+     * Executor cho các lời gọi ra payment gateway (VietQR, PayPal)
+     * Tách khỏi servlet thread và không giữ DB connection trong lúc chờ gateway
+     *
+     * spring.threads.virtual.enabled=true: mỗi lời gọi chạy trên một virtual thread
+     * (Tomcat cũng chuyển sang virtual thread), số lời gọi đồng thời chỉ bị giới hạn bởi virtual-concurrency-limit
+     */
+    @Bean
+    public AsyncTaskExecutor gatewayExecutor(
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${gateway.executor.core-size:16}") int coreSize,
+            @Value("${gateway.executor.max-size:64}") int maxSize,
+            @Value("${gateway.executor.queue-capacity:500}") int queueCapacity,
+            @Value("${gateway.executor.virtual-concurrency-limit:1000}") int virtualConcurrencyLimit) {
+        if (virtualThreads) {
+            log.info("Gateway executor running on virtual threads (concurrency limit {})", virtualConcurrencyLimit);
+            return virtualThreadExecutor(virtualConcurrencyLimit);
+        }
+        return platformThreadExecutor(coreSize, maxSize, queueCapacity);
+    }
+    
+    static ThreadPoolTaskExecutor platformThreadExecutor(int coreSize, int maxSize, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("gateway-");
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        // Hàng đợi đầy thì thread gọi tự chạy (backpressure thay vì từ chối request)
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+    
+    static SimpleAsyncTaskExecutor virtualThreadExecutor(int concurrencyLimit) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("gateway-vt-");
+        executor.setVirtualThreads(true);
+        // Vượt giới hạn thì thread submit phải chờ (backpressure), -1 = không giới hạn
+        executor.setConcurrencyLimit(concurrencyLimit);
+        executor.setTaskTerminationTimeout(30_000);
+        return executor;
+    }
+}
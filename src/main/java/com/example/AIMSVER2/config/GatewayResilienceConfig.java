@@ -0,0 +1,49 @@
+package com.example.AIMSVER2.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Circuit breaker / bulkhead / retry cho từng payment gateway (key = payment method viết thường: vietqr, paypal)
+ * Gateway không khai báo trong gateways dùng giá trị mặc định của Settings
+ */
+@Data
+@Slf4j
+@Configuration
+@Validated
+@ConfigurationProperties(prefix = "gateway.resilience")
+public class GatewayResilienceConfig {
+    private boolean enabled = true; // false: strategy được dùng trực tiếp, không bọc
+    private Map<String, Settings> gateways = new LinkedHashMap<>();
+    
+    public Settings settingsFor(String gateway) {
+        return gateways.getOrDefault(gateway.toLowerCase(), new Settings());
+    }
+    
+    @PostConstruct
+    public void init() {
+        log.info("Gateway resilience config initialized - Enabled: {}, Gateways: {}", enabled, gateways.keySet());
+    }
+    
+    @Data
+    public static class Settings {
+        private int failureRateThreshold = 50; // % lời gọi lỗi trong window để mở mạch
+        private int slidingWindowSize = 20; // Số lời gọi gần nhất dùng để tính tỷ lệ lỗi
+        private int minimumCalls = 10; // Chưa đủ số lời gọi này trong window thì không mở mạch
+        private Duration openDuration = Duration.ofSeconds(30); // Thời gian mạch mở (fail ngay) trước khi thử lại
+        private int halfOpenCalls = 3; // Số lời gọi thăm dò khi half-open, tất cả thành công thì đóng mạch
+        private int maxConcurrentCalls = 50; // Bulkhead: số lời gọi đồng thời tối đa tới gateway
+        private Duration bulkheadMaxWait = Duration.ZERO; // Chờ slot bulkhead tối đa bao lâu (0 = từ chối ngay)
+        private int maxAttempts = 2; // Số lần thử tối đa cho createPayment (confirm/cancel không retry)
+        private Duration retryBaseDelay = Duration.ofMillis(200); // Backoff lần retry đầu, nhân đôi mỗi lần
+        private Duration retryMaxDelay = Duration.ofSeconds(2); // Backoff tối đa
+    }
+}
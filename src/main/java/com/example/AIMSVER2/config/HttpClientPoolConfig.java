@@ -0,0 +1,37 @@
+package com.example.AIMSVER2.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cấu hình connection pool HTTP dùng chung cho các lời gọi ra gateway (VietQR, ...)
+ */
+@Data
+@Slf4j
+@Configuration
+@Validated
+@ConfigurationProperties(prefix = "http-client")
+public class HttpClientPoolConfig {
+    private Duration connectTimeout = Duration.ofSeconds(5); // Timeout mở kết nối
+    private Duration readTimeout = Duration.ofSeconds(10); // Timeout chờ response
+    private Duration connectionRequestTimeout = Duration.ofSeconds(2); // Timeout chờ lấy connection từ pool
+    private int maxTotal = 100; // Tổng số connection tối đa
+    private int maxPerRoute = 20; // Số connection tối đa mặc định cho mỗi host
+    private Map<String, Integer> routes = new LinkedHashMap<>(); // Giới hạn riêng theo base URL, ví dụ https://api.vietqr.org -> 30
+    private Duration idleTimeout = Duration.ofSeconds(30); // Đóng connection idle quá thời gian này
+    private Duration timeToLive = Duration.ofMinutes(5); // Thời gian sống tối đa của một connection
+    
+    @PostConstruct
+    public void init() {
+        log.info("HTTP Client Pool Config initialized - Max total: {}, Max per route: {}, Route limits: {}",
+            maxTotal, maxPerRoute, routes);
+    }
+}
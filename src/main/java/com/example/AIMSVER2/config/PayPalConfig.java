@@ -17,6 +17,7 @@ public class PayPalConfig {
     private String clientSecret;
     private String mode;
     private boolean mock = false; // Chế độ mock để test không cần PayPal thật
+    private String endpoint; // Ghi đè endpoint của SDK (ví dụ stub server), null = theo mode
     
     @PostConstruct
     public void init() {
@@ -1,18 +1,98 @@
 package com.example.AIMSVER2.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.util.function.ToDoubleFunction;
+
 @Configuration
+@RequiredArgsConstructor
 public class RestTemplateConfig {
     
+    private final HttpClientPoolConfig httpClientPoolConfig;
+    
+    /**
+     * Connection pool keep-alive dùng chung, tránh mở kết nối + TLS handshake mới cho mỗi request
+     */
+    @Bean
+    public PoolingHttpClientConnectionManager gatewayConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(httpClientPoolConfig.getMaxTotal())
+            .setMaxConnPerRoute(httpClientPoolConfig.getMaxPerRoute())
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(httpClientPoolConfig.getConnectTimeout()))
+                .setSocketTimeout(Timeout.of(httpClientPoolConfig.getReadTimeout()))
+                .setTimeToLive(TimeValue.of(httpClientPoolConfig.getTimeToLive()))
+                .build())
+            .build();
+        httpClientPoolConfig.getRoutes().forEach((url, max) -> connectionManager.setMaxPerRoute(routeOf(url), max));
+        return connectionManager;
+    }
+    
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient gatewayHttpClient(PoolingHttpClientConnectionManager gatewayConnectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectionRequestTimeout(Timeout.of(httpClientPoolConfig.getConnectionRequestTimeout()))
+            .setResponseTimeout(Timeout.of(httpClientPoolConfig.getReadTimeout()))
+            .build();
+        return HttpClients.custom()
+            .setConnectionManager(gatewayConnectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.of(httpClientPoolConfig.getIdleTimeout()))
+            .build();
+    }
+    
     @Bean
-    public RestTemplate restTemplate() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(5000); // 5 seconds
-        factory.setReadTimeout(10000); // 10 seconds
-        return new RestTemplate(factory);
+    public RestTemplate restTemplate(CloseableHttpClient gatewayHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(gatewayHttpClient));
+    }
+    
+    /**
+     * Metrics của pool: số connection đang được dùng (leased), đang chờ (pending), idle (available)
+     */
+    @Bean
+    public MeterBinder gatewayConnectionPoolMetrics(PoolingHttpClientConnectionManager gatewayConnectionManager) {
+        return registry -> {
+            registerPoolGauge(registry, gatewayConnectionManager, "leased", PoolStats::getLeased);
+            registerPoolGauge(registry, gatewayConnectionManager, "pending", PoolStats::getPending);
+            registerPoolGauge(registry, gatewayConnectionManager, "idle", PoolStats::getAvailable);
+            registerPoolGauge(registry, gatewayConnectionManager, "max", PoolStats::getMax);
+        };
+    }
+    
+    private static void registerPoolGauge(MeterRegistry registry,
+                                          PoolingHttpClientConnectionManager connectionManager,
+                                          String state, ToDoubleFunction<PoolStats> value) {
+        Gauge.builder("http.client.pool.connections", connectionManager, cm -> value.applyAsDouble(cm.getTotalStats()))
+            .tag("pool", "gateway")
+            .tag("state", state)
+            .register(registry);
+    }
+    
+    private static HttpRoute routeOf(String url) {
+        URI uri = URI.create(url);
+        String scheme = uri.getScheme() != null ? uri.getScheme() : "http";
+        boolean secure = "https".equalsIgnoreCase(scheme);
+        int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+        return new HttpRoute(new HttpHost(scheme, uri.getHost(), port), null, secure);
     }
 }
@@ -0,0 +1,51 @@
+package com.example.AIMSVER2.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+/**
+ * Cấu hình xử lý callback transaction-sync từ VietQR
+ */
+@Data
+@Slf4j
+@Configuration
+@Validated
+@ConfigurationProperties(prefix = "vietqr.callback")
+public class VietQRCallbackConfig {
+    private Ingestion ingestion = new Ingestion();
+    private Idempotency idempotency = new Idempotency();
+    
+    @Data
+    public static class Ingestion {
+        private boolean async = false; // true: ghi callback vào WAL rồi trả lời ngay, worker xử lý sau
+        private String walDirectory = "data/vietqr-callback-wal"; // Thư mục chứa các segment WAL
+        private int segmentSizeBytes = 16 * 1024 * 1024; // Kích thước mỗi segment (memory-mapped)
+        private boolean fsync = true; // force() vùng vừa ghi xuống đĩa trước khi ack
+        private int workerThreads = 4; // Số lane xử lý callback, mỗi lane một thread (callback cùng payment luôn vào cùng lane)
+        private int queueCapacity = 1000; // Tổng hàng đợi của các lane, lane đầy thì thread nhận request phải chờ
+        private int maxAttempts = 5; // Số lần xử lý một callback trong WAL bị lỗi trước khi chuyển sang dead letter
+        private Duration retryBackoff = Duration.ofSeconds(1); // Chờ trước lần thử lại đầu tiên, gấp đôi sau mỗi lần
+        private Duration retryMaxBackoff = Duration.ofMinutes(1); // Thời gian chờ tối đa giữa hai lần thử
+    }
+    
+    @Data
+    public static class Idempotency {
+        private boolean enabled = true; // Trả lại response cũ cho callback bank gửi lặp lại
+        private String store = "memory"; // memory | jpa (lưu bảng VietQRCallbackIdempotency, giữ qua restart)
+        private int maxEntries = 100_000; // Số key tối đa giữ trong bộ nhớ
+        private Duration ttl = Duration.ofHours(24); // Thời gian nhớ một callback
+    }
+    
+    @PostConstruct
+    public void init() {
+        log.info("VietQR Callback Config initialized - Async ingestion: {}, WAL: {}, Workers: {}, Idempotency store: {}",
+            ingestion.isAsync(), ingestion.getWalDirectory(), ingestion.getWorkerThreads(),
+            idempotency.isEnabled() ? idempotency.getStore() : "DISABLED");
+    }
+}
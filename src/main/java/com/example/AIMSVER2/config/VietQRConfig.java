@@ -7,6 +7,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
+
 @Data
 @Slf4j
 @Configuration
@@ -18,9 +20,13 @@ public class VietQRConfig {
     private String clientId;
     private String clientSecret;
     private String bankCode;
+    private String bankBin; // BIN NAPAS của bankCode, chỉ dùng khi qrMode=local (bỏ trống: suy ra từ bankCode)
     private String bankAccount;
     private String userBankName;
     private Double usdToVndRate = 25000.0; // Tỷ giá USD sang VND (mặc định 25000)
+    private Duration qrLifetime = Duration.ofMinutes(15); // Hạn của QR mới tạo (expiresAt của payment VietQR)
+    private String client = "blocking"; // blocking: RestTemplate; async: thêm VietQRAsyncClient (JDK HttpClient, non-blocking)
+    private String qrMode = "remote"; // remote: gọi /qr/generate-customer; local: dựng payload EMVCo trong process (VietQRLocalQrGenerator)
     
     @PostConstruct
     public void init() {
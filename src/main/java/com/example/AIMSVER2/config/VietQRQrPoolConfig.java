@@ -0,0 +1,46 @@
+package com.example.AIMSVER2.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cấu hình pool QR VietQR tạo sẵn cho các khoản thanh toán có số tiền + nội dung cố định
+ * (sản phẩm giá cố định, phí vận chuyển theo mức)
+ */
+@Data
+@Slf4j
+@Configuration
+@Validated
+@ConfigurationProperties(prefix = "vietqr.qr-pool")
+public class VietQRQrPoolConfig {
+    private boolean enabled = false; // true: VietQRPaymentStrategy lấy QR từ pool trước khi gọi gateway
+    private int size = 5; // Số QR sẵn sàng cho mỗi entry (entry có thể ghi đè)
+    private Duration maxAge = Duration.ofMinutes(5); // QR tạo quá thời gian này thì bỏ, không đem ra dùng
+    private Duration qrLifetime = Duration.ofMinutes(15); // Hạn của QR tính từ lúc tạo (expiresAt của payment)
+    private Duration refillInterval = Duration.ofSeconds(30); // Chu kỳ bỏ QR hết hạn và bù cho đủ size
+    private List<Entry> entries = new ArrayList<>();
+    
+    @Data
+    public static class Entry {
+        private BigDecimal amount; // Số tiền theo đơn vị của PaymentRequest (USD)
+        private String description; // Nội dung thanh toán, phải trùng với description của PaymentRequest
+        private Integer size; // null: dùng size chung
+    }
+    
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            log.info("VietQR QR pool config initialized - Entries: {}, Size: {}, Max age: {}, Refill interval: {}",
+                entries.size(), size, maxAge, refillInterval);
+        }
+    }
+}
@@ -2,15 +2,31 @@ package com.example.AIMSVER2.controller;
 
 import com.example.AIMSVER2.dto.PaymentRequest;
 import com.example.AIMSVER2.dto.PaymentResponse;
+import com.example.AIMSVER2.dto.PaymentStatusResponse;
 import com.example.AIMSVER2.service.PaymentService;
+import com.example.AIMSVER2.service.PaymentStatusCache;
+import com.example.AIMSVER2.service.PaymentStatusSubscriptions;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RestController
 @RequestMapping("/api/payment")
@@ -20,30 +36,177 @@ import java.util.Map;
 public class PaymentController {
     
     private final PaymentService paymentService;
+    private final PaymentStatusCache paymentStatusCache;
+    private final PaymentStatusSubscriptions paymentStatusSubscriptions;
+    
+    @Value("${payment.status-subscription.sse-timeout:15m}")
+    private Duration sseTimeout;
+    
+    @Value("${payment.status-subscription.long-poll-timeout:30s}")
+    private Duration longPollTimeout;
     
     /**
      * Tạo payment mới
      */
     @PostMapping("/create")
-    public ResponseEntity<PaymentResponse> createPayment(@RequestBody PaymentRequest request) {
+    public CompletableFuture<ResponseEntity<PaymentResponse>> createPayment(@RequestBody PaymentRequest request) {
         try {
-            PaymentResponse response = paymentService.createPayment(request);
-            return ResponseEntity.ok(response);
+            // Servlet thread được trả lại trong lúc chờ gateway
+            return paymentService.createPaymentAsync(request)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(this::createPaymentError);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(createPaymentError(e));
+        }
+    }
+    
+    /**
+     * Tạo nhiều payment trong một request
+     * Luôn trả 200 kèm kết quả từng item theo thứ tự request (item lỗi có status FAILED + message)
+     */
+    @PostMapping("/create-batch")
+    public ResponseEntity<List<PaymentResponse>> createPayments(@RequestBody List<PaymentRequest> requests) {
+        try {
+            return ResponseEntity.ok(paymentService.createPayments(requests));
         } catch (IllegalArgumentException e) {
-            log.error("Error creating payment: ", e);
+            log.error("Error creating payment batch: ", e);
             PaymentResponse errorResponse = PaymentResponse.builder()
                 .status("FAILED")
                 .message(e.getMessage())
                 .build();
-            return ResponseEntity.badRequest().body(errorResponse);
+            return ResponseEntity.badRequest().body(List.of(errorResponse));
         } catch (Exception e) {
-            log.error("Unexpected error creating payment: ", e);
+            log.error("Unexpected error creating payment batch: ", e);
             PaymentResponse errorResponse = PaymentResponse.builder()
                 .status("FAILED")
                 .message("Internal server error: " + e.getMessage())
                 .build();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(List.of(errorResponse));
+        }
+    }
+    
+    /**
+     * Trạng thái payment cho client polling, tra theo paymentCode hoặc transactionId
+     * Đọc qua PaymentStatusCache nên polling liên tục không chạm DB khi status không đổi
+     */
+    @GetMapping("/status")
+    public ResponseEntity<PaymentStatusResponse> getPaymentStatus(
+            @RequestParam(value = "paymentCode", required = false) String paymentCode,
+            @RequestParam(value = "transactionId", required = false) String transactionId) {
+        Optional<PaymentStatusResponse> status;
+        if (paymentCode != null && !paymentCode.isEmpty()) {
+            status = paymentStatusCache.findByPaymentCode(paymentCode);
+        } else if (transactionId != null && !transactionId.isEmpty()) {
+            status = paymentStatusCache.findByTransactionId(transactionId);
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+        return status.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * Server-Sent Events: gửi status hiện tại, sau đó mỗi lần status đổi (event "status")
+     * Stream đóng khi payment sang trạng thái cuối (COMPLETED, CANCELLED, EXPIRED, FAILED) hoặc hết sse-timeout
+     */
+    @GetMapping(path = "/status/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamPaymentStatus(@RequestParam("paymentCode") String paymentCode) {
+        Optional<PaymentStatusResponse> current = paymentStatusCache.findByPaymentCode(paymentCode);
+        if (current.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        SseEmitter emitter = new SseEmitter(sseTimeout.toMillis());
+        AtomicReference<String> lastSent = new AtomicReference<>();
+        PaymentStatusSubscriptions.Subscription subscription;
+        try {
+            subscription = paymentStatusSubscriptions.subscribe(current.get().getPaymentId(), status -> {
+                synchronized (emitter) {
+                    if (Objects.equals(lastSent.getAndSet(status.getStatus()), status.getStatus())) {
+                        return;
+                    }
+                    try {
+                        emitter.send(SseEmitter.event().name("status").data(status));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (PaymentStatusSubscriptions.isFinal(status.getStatus())) {
+                        emitter.complete();
+                    }
+                }
+            });
+        } catch (IllegalStateException e) {
+            log.warn("Rejecting payment status stream for {}: {}", paymentCode, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(error -> subscription.cancel());
+        
+        // Đọc lại sau khi subscribe để không lỡ thay đổi xảy ra giữa hai bước
+        subscription.deliver(paymentStatusCache.findByPaymentCode(paymentCode).orElse(current.get()));
+        return ResponseEntity.ok(emitter);
+    }
+    
+    /**
+     * Long-poll: trả về ngay khi status khác status client đang biết (tham số status, mặc định là status hiện tại),
+     * hết long-poll-timeout thì trả status hiện tại để client gọi lại
+     */
+    @GetMapping("/status/wait")
+    public DeferredResult<ResponseEntity<PaymentStatusResponse>> waitForPaymentStatus(
+            @RequestParam("paymentCode") String paymentCode,
+            @RequestParam(value = "status", required = false) String knownStatus) {
+        DeferredResult<ResponseEntity<PaymentStatusResponse>> result = new DeferredResult<>(longPollTimeout.toMillis());
+        Optional<PaymentStatusResponse> current = paymentStatusCache.findByPaymentCode(paymentCode);
+        if (current.isEmpty()) {
+            result.setResult(ResponseEntity.notFound().build());
+            return result;
+        }
+        
+        String currentStatus = current.get().getStatus();
+        String waitingFrom = knownStatus != null ? knownStatus : currentStatus;
+        if (!waitingFrom.equals(currentStatus) || PaymentStatusSubscriptions.isFinal(currentStatus)) {
+            result.setResult(ResponseEntity.ok(current.get()));
+            return result;
+        }
+        
+        PaymentStatusSubscriptions.Subscription subscription;
+        try {
+            subscription = paymentStatusSubscriptions.subscribe(current.get().getPaymentId(), status -> {
+                if (!waitingFrom.equals(status.getStatus())) {
+                    result.setResult(ResponseEntity.ok(status));
+                }
+            });
+        } catch (IllegalStateException e) {
+            log.warn("Rejecting payment status long-poll for {}: {}", paymentCode, e.getMessage());
+            result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+            return result;
+        }
+        result.onCompletion(subscription::cancel);
+        result.onError(error -> subscription.cancel());
+        result.onTimeout(() -> result.setResult(ResponseEntity.ok(
+            paymentStatusCache.findByPaymentCode(paymentCode).orElse(current.get()))));
+        
+        // Đọc lại sau khi subscribe để không lỡ thay đổi xảy ra giữa hai bước
+        subscription.deliver(paymentStatusCache.findByPaymentCode(paymentCode).orElse(current.get()));
+        return result;
+    }
+    
+    private ResponseEntity<PaymentResponse> createPaymentError(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof IllegalArgumentException) {
+            log.error("Error creating payment: ", cause);
+            PaymentResponse errorResponse = PaymentResponse.builder()
+                .status("FAILED")
+                .message(cause.getMessage())
+                .build();
+            return ResponseEntity.badRequest().body(errorResponse);
         }
+        log.error("Unexpected error creating payment: ", cause);
+        PaymentResponse errorResponse = PaymentResponse.builder()
+            .status("FAILED")
+            .message("Internal server error: " + cause.getMessage())
+            .build();
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
     }
     
     /**
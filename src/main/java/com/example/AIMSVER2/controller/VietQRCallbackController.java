@@ -2,13 +2,16 @@ package com.example.AIMSVER2.controller;
 
 import com.example.AIMSVER2.dto.vietqr.VietQRCallbackRequest;
 import com.example.AIMSVER2.dto.vietqr.VietQRCallbackResponse;
-import com.example.AIMSVER2.service.vietqr.VietQRCallbackService;
+import com.example.AIMSVER2.service.vietqr.idempotency.CallbackIdempotencyService;
+import com.example.AIMSVER2.service.vietqr.ingestion.VietQRCallbackIngestionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Optional;
+
 /**
  * Controller xử lý callback từ VietQR
  */
@@ -18,7 +21,8 @@ import org.springframework.web.bind.annotation.*;
 @Slf4j
 public class VietQRCallbackController {
     
-    private final VietQRCallbackService vietQRCallbackService;
+    private final VietQRCallbackIngestionService vietQRCallbackIngestionService;
+    private final CallbackIdempotencyService callbackIdempotencyService;
     
     /**
      * Endpoint nhận callback từ VietQR khi có giao dịch thanh toán
@@ -42,32 +46,46 @@ public class VietQRCallbackController {
             return ResponseEntity.badRequest().body(response);
         }
         
-        log.info("=== VietQR Callback Received ===");
-        log.info("Bank Account: {}", request.getBankAccount() != null ? request.getBankAccount() : "NULL");
-        log.info("Amount: {} VND", request.getAmount() != null ? request.getAmount() : "NULL");
-        log.info("Content: {}", request.getContent() != null ? request.getContent() : "NULL");
-        log.info("Transaction Type: {}", request.getTransType() != null ? request.getTransType() : "NULL");
-        log.info("Bank Code: {}", request.getBankCode() != null ? request.getBankCode() : "NULL");
-        log.info("Transaction ID: {}", request.getTransactionId() != null ? request.getTransactionId() : "NULL");
-        log.info("Reference Number: {}", request.getReferenceNumber() != null ? request.getReferenceNumber() : "NULL");
-        log.info("Transaction Time: {}", request.getTransactionTime() != null ? request.getTransactionTime() : "NULL");
-        log.info("Order ID: {}", request.getOrderId() != null ? request.getOrderId() : "NULL");
-        log.info("=================================");
+        // Callback bank gửi lại: trả response cũ, không xử lý lại
+        Optional<VietQRCallbackResponse> previousResponse = callbackIdempotencyService.findPreviousResponse(request);
+        if (previousResponse.isPresent()) {
+            log.debug("Duplicate VietQR callback, returning previous response: transactionId={}, referenceNumber={}",
+                request.getTransactionId(), request.getReferenceNumber());
+            return ResponseEntity.ok(previousResponse.get());
+        }
+        
+        // Chi tiết request chỉ ở DEBUG; dòng tóm tắt INFO do VietQRCallbackService ghi sau khi xử lý
+        if (log.isDebugEnabled()) {
+            log.debug("VietQR callback received: bankAccount={}, amount={} VND, content={}, transType={}, bankCode={}, transactionId={}, referenceNumber={}, transactionTime={}, orderId={}",
+                request.getBankAccount(), request.getAmount(), request.getContent(), request.getTransType(),
+                request.getBankCode(), request.getTransactionId(), request.getReferenceNumber(),
+                request.getTransactionTime(), request.getOrderId());
+        }
         
         try {
-            // Xử lý callback
-            boolean success = vietQRCallbackService.processCallback(request);
+            // Chế độ async: ghi WAL rồi ack ngay, worker sẽ xử lý sau
+            if (vietQRCallbackIngestionService.isAsync()) {
+                vietQRCallbackIngestionService.submit(request);
+                VietQRCallbackResponse response = VietQRCallbackResponse.builder()
+                    .error(false)
+                    .errorReason("00")
+                    .toastMessage("Transaction received")
+                    .object(VietQRCallbackResponse.ResponseObject.builder()
+                        .refTransactionId(refTransactionIdOf(request))
+                        .build())
+                    .build();
+                callbackIdempotencyService.remember(request, response);
+                return ResponseEntity.ok(response);
+            }
+            
+            // Xử lý callback (trên lane của giao dịch, không chạy song song với lần gửi lại của cùng giao dịch)
+            boolean success = vietQRCallbackIngestionService.process(request);
             
             if (success) {
-                log.info("Transaction processed successfully");
-                // Lấy transactionId từ request để trả về trong object
-                String refTransactionId = request.getReferenceNumber() != null ? 
-                    request.getReferenceNumber() : 
-                    (request.getTransactionId() != null ? request.getTransactionId() : "N/A");
-                
+                log.debug("Transaction processed successfully");
                 VietQRCallbackResponse.ResponseObject responseObject = 
                     VietQRCallbackResponse.ResponseObject.builder()
-                        .refTransactionId(refTransactionId)
+                        .refTransactionId(refTransactionIdOf(request))
                         .build();
                 
                 VietQRCallbackResponse response = VietQRCallbackResponse.builder()
@@ -76,15 +94,17 @@ public class VietQRCallbackController {
                     .toastMessage("Transaction processed successfully")
                     .object(responseObject)
                     .build();
+                callbackIdempotencyService.remember(request, response);
                 return ResponseEntity.ok(response);
             } else {
-                log.warn("Transaction processing failed - Payment not found or validation failed");
+                log.debug("Transaction processing failed - Payment not found or validation failed");
                 VietQRCallbackResponse response = VietQRCallbackResponse.builder()
                     .error(true)
                     .errorReason("01")
                     .toastMessage("Transaction not found or validation failed")
                     .object(null)
                     .build();
+                // Không lưu idempotency: retry của bank phải được match lại
                 return ResponseEntity.ok(response); // Vẫn trả 200 nhưng error = true
             }
             
@@ -99,4 +119,13 @@ public class VietQRCallbackController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
+    
+    /**
+     * Lấy transactionId từ request để trả về trong object
+     */
+    private String refTransactionIdOf(VietQRCallbackRequest request) {
+        return request.getReferenceNumber() != null ? 
+            request.getReferenceNumber() : 
+            (request.getTransactionId() != null ? request.getTransactionId() : "N/A");
+    }
 }
@@ -1,5 +1,6 @@
 package com.example.AIMSVER2.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -28,4 +29,6 @@ public class PaymentResponse {
     private String bankName; // Cho VietQR - Tên ngân hàng
     private String bankAccount; // Cho VietQR - Số tài khoản
     private String message;
+    @JsonIgnore
+    private boolean clientError; // FAILED do request không hợp lệ (validation, gateway trả 4xx): không retry, không tính lỗi cho circuit breaker
 }
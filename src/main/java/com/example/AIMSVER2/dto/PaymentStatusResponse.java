@@ -0,0 +1,24 @@
+package com.example.AIMSVER2.dto;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Trạng thái payment trả về cho client polling
+ * Immutable vì cùng một instance được chia sẻ giữa các request qua PaymentStatusCache
+ */
+@Value
+@Builder
+public class PaymentStatusResponse {
+    Integer paymentId;
+    String paymentCode;
+    String transactionId;
+    String paymentMethod;
+    String status;
+    BigDecimal amount;
+    LocalDateTime expiresAt;
+    LocalDateTime paidAt;
+}
@@ -0,0 +1,38 @@
+package com.example.AIMSVER2.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Response đã trả cho một callback VietQR, dùng để dedup khi bank gửi lại
+ */
+@Entity
+@Table(name = "VietQRCallbackIdempotency")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CallbackIdempotencyRecord {
+    
+    @Id
+    @Column(name = "idempotencyKey", length = 255)
+    private String idempotencyKey;
+    
+    @Column(name = "isError", nullable = false)
+    private boolean error;
+    
+    @Column(name = "errorReason", length = 10)
+    private String errorReason;
+    
+    @Column(name = "toastMessage")
+    private String toastMessage;
+    
+    @Column(name = "refTransactionId")
+    private String refTransactionId;
+    
+    @Column(name = "createdAt", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -2,22 +2,31 @@ package com.example.AIMSVER2.entity;
 
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
-import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
+/**
+ * Không dùng @Data: equals/hashCode/toString sinh ra sẽ đi qua association lazy (payments) và nạp thêm entity
+ */
 @Entity
 @Table(name = "`Order`")
-@Data
+@Getter
+@Setter
+@ToString
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "orderIdGenerator")
+    @TableGenerator(name = "orderIdGenerator", table = "IdAllocator", pkColumnName = "entityName",
+        valueColumnName = "nextId", pkColumnValue = "Order", allocationSize = 50)
     private Integer id;
     
     @Column(name = "customerName", nullable = false)
@@ -36,5 +45,6 @@ public class Order {
     private BigDecimal price;
     
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @ToString.Exclude
     private List<Payment> payments;
 }
@@ -2,21 +2,30 @@ package com.example.AIMSVER2.entity;
 
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
-import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
+/**
+ * Không dùng @Data: equals/hashCode/toString sinh ra sẽ đi qua association lazy (order) và nạp thêm entity
+ */
 @Entity
 @Table(name = "Payment")
-@Data
+@Getter
+@Setter
+@ToString
 @NoArgsConstructor
 @AllArgsConstructor
 public class Payment {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "paymentIdGenerator")
+    @TableGenerator(name = "paymentIdGenerator", table = "IdAllocator", pkColumnName = "entityName",
+        valueColumnName = "nextId", pkColumnValue = "Payment", allocationSize = 50)
     private Integer id;
     
     @Column(name = "paymentCode", unique = true, length = 50)
@@ -24,8 +33,15 @@ public class Payment {
     
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "orderId", nullable = false)
+    @ToString.Exclude
     private Order order;
     
+    /**
+     * Cùng cột orderId với association order nhưng chỉ đọc: log/response dùng field này để không phải nạp Order
+     */
+    @Column(name = "orderId", insertable = false, updatable = false)
+    private Integer orderId;
+    
     @Column(name = "amount", nullable = false, columnDefinition = "DECIMAL(10,2)")
     private BigDecimal amount;
     
@@ -52,4 +68,31 @@ public class Payment {
     
     @Column(name = "transactionId", unique = true)
     private String transactionId;
+    
+    /**
+     * Số tiền VND mong đợi từ callback VietQR (amount quy đổi theo tỷ giá lúc tạo payment)
+     */
+    @Column(name = "expectedAmountVnd")
+    private Long expectedAmountVnd;
+    
+    /**
+     * Description đã chuẩn hóa để so khớp content của callback VietQR
+     */
+    @Column(name = "contentKey", length = 255)
+    private String contentKey;
+    
+    /**
+     * Optimistic locking: chặn hai lần ghi đồng thời cùng đọc một status (ví dụ hai callback cùng thấy PENDING)
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    private Integer version;
+    
+    /**
+     * Gán order và giữ orderId đồng bộ (payment mới chưa được nạp lại từ DB)
+     */
+    public void setOrder(Order order) {
+        this.order = order;
+        this.orderId = order != null ? order.getId() : null;
+    }
 }
@@ -0,0 +1,40 @@
+package com.example.AIMSVER2.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một thay đổi status của Payment chờ được relay ra ngoài (transactional outbox)
+ * Được ghi trong cùng transaction với lần cập nhật status, publishedAt được đặt khi relay gửi xong
+ */
+@Entity
+@Table(name = "PaymentOutbox",
+    uniqueConstraints = @UniqueConstraint(name = "uk_payment_outbox_payment_status", columnNames = {"paymentId", "status"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentOutboxEvent {
+    
+    /**
+     * AUTO_INCREMENT để thứ tự id trùng thứ tự ghi event (relay gửi theo id tăng dần)
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "paymentId", nullable = false)
+    private Integer paymentId;
+    
+    @Column(name = "status", nullable = false, length = 20)
+    private String status;
+    
+    @Column(name = "createdAt", nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "publishedAt")
+    private LocalDateTime publishedAt;
+}
@@ -0,0 +1,22 @@
+package com.example.AIMSVER2.event;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Event gửi cho các hệ thống downstream (fulfilment, notification...) qua PaymentEventSink
+ *
+ * @param eventId Id của dòng outbox, tăng dần theo thứ tự ghi; consumer dùng để bỏ qua event nhận lại
+ * @param occurredAt Thời điểm status được ghi
+ */
+public record PaymentLifecycleEvent(
+    Long eventId,
+    Integer paymentId,
+    String paymentCode,
+    Integer orderId,
+    String paymentMethod,
+    BigDecimal amount,
+    String status,
+    LocalDateTime occurredAt
+) {
+}
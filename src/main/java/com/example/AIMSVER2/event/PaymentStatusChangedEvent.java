@@ -0,0 +1,12 @@
+package com.example.AIMSVER2.event;
+
+/**
+ * Phát ra ở mọi chỗ ghi status của Payment (tạo, confirm, cancel, callback VietQR, expire)
+ * Listener dùng @TransactionalEventListener nên chỉ nhận event sau khi transaction ghi status commit,
+ * riêng PaymentOutboxWriter nghe đồng bộ để ghi outbox trong chính transaction đó
+ *
+ * @param paymentId Id của payment
+ * @param status Status vừa ghi
+ */
+public record PaymentStatusChangedEvent(Integer paymentId, String status) {
+}
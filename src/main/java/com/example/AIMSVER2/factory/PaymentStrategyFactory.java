@@ -1,12 +1,12 @@
 package com.example.AIMSVER2.factory;
 
+import com.example.AIMSVER2.resilience.GatewayResilienceRegistry;
 import com.example.AIMSVER2.strategy.PaymentStrategy;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
@@ -14,25 +14,32 @@ import java.util.stream.Collectors;
 public class PaymentStrategyFactory {
     
     private final List<PaymentStrategy> paymentStrategies;
+    private final GatewayResilienceRegistry gatewayResilienceRegistry;
     private Map<String, PaymentStrategy> strategyMap;
     
     /**
      * Lazy initialization của strategy map
+     * Mỗi strategy được bọc circuit breaker / bulkhead / retry của gateway tương ứng
      */
     private void initializeStrategyMap() {
         if (strategyMap == null) {
             strategyMap = paymentStrategies.stream()
                 .collect(Collectors.toMap(
                     PaymentStrategy::getPaymentMethod,
-                    Function.identity()
+                    gatewayResilienceRegistry::decorate
                 ));
         }
     }
     
     /**
      * Lấy payment strategy theo payment method
+     *
+     * @throws IllegalArgumentException thiếu payment method hoặc method không được hỗ trợ (message trả thẳng cho client)
      */
     public PaymentStrategy getStrategy(String paymentMethod) {
+        if (paymentMethod == null || paymentMethod.isBlank()) {
+            throw new IllegalArgumentException("Payment method is required");
+        }
         initializeStrategyMap();
         PaymentStrategy strategy = strategyMap.get(paymentMethod.toUpperCase());
         if (strategy == null) {
@@ -0,0 +1,20 @@
+package com.example.AIMSVER2.repository;
+
+import com.example.AIMSVER2.entity.CallbackIdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface CallbackIdempotencyRepository extends JpaRepository<CallbackIdempotencyRecord, String> {
+    
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM CallbackIdempotencyRecord r WHERE r.createdAt < :cutoff")
+    int deleteByCreatedAtBefore(@Param("cutoff") LocalDateTime cutoff);
+}
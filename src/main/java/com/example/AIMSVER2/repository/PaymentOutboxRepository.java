@@ -0,0 +1,39 @@
+package com.example.AIMSVER2.repository;
+
+import com.example.AIMSVER2.entity.PaymentOutboxEvent;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PaymentOutboxRepository extends JpaRepository<PaymentOutboxEvent, Long> {
+    
+    boolean existsByPaymentIdAndStatus(Integer paymentId, String status);
+    
+    /**
+     * Lấy và khóa (SELECT ... FOR UPDATE) một lô event chưa publish theo thứ tự id
+     * Relay ở instance khác sẽ chờ tới khi lô này commit, nên mỗi event chỉ được gửi bởi một relay
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM PaymentOutboxEvent e WHERE e.publishedAt IS NULL ORDER BY e.id")
+    List<PaymentOutboxEvent> findUnpublishedForUpdate(Pageable pageable);
+    
+    @Modifying
+    @Query("UPDATE PaymentOutboxEvent e SET e.publishedAt = :publishedAt WHERE e.id IN :ids")
+    int markPublished(@Param("ids") Collection<Long> ids, @Param("publishedAt") LocalDateTime publishedAt);
+    
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM PaymentOutboxEvent e WHERE e.publishedAt < :cutoff")
+    int deletePublishedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -1,11 +1,17 @@
 package com.example.AIMSVER2.repository;
 
 import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.repository.projection.PaymentExpiryView;
+import com.example.AIMSVER2.repository.projection.PaymentMatchView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,6 +19,7 @@ import java.util.Optional;
 public interface PaymentRepository extends JpaRepository<Payment, Integer> {
     Optional<Payment> findByPaymentCode(String paymentCode);
     Optional<Payment> findByTransactionId(String transactionId);
+    long countByPaymentMethodAndStatus(String paymentMethod, String status);
     
     @Query("SELECT p FROM Payment p WHERE p.order.id = :orderId AND p.paymentMethod = :paymentMethod AND p.status = :status")
     List<Payment> findByOrderIdAndPaymentMethodAndStatus(
@@ -20,4 +27,87 @@ public interface PaymentRepository extends JpaRepository<Payment, Integer> {
         @Param("paymentMethod") String paymentMethod,
         @Param("status") String status
     );
+    
+    @Query("SELECT p.id AS id, p.amount AS amount, p.description AS description, p.transactionId AS transactionId, p.expiresAt AS expiresAt, " +
+           "p.expectedAmountVnd AS expectedAmountVnd, p.contentKey AS contentKey " +
+           "FROM Payment p WHERE p.paymentMethod = :paymentMethod AND p.status = :status")
+    List<PaymentMatchView> findMatchViewsByPaymentMethodAndStatus(
+        @Param("paymentMethod") String paymentMethod,
+        @Param("status") String status
+    );
+    
+    /**
+     * Candidate cho callback: lọc method/status/expectedAmountVnd trong SQL (range scan trên idx_payment_method_status_amount_vnd)
+     * Payment cũ đã được AIMS_DATABASE.sql backfill expectedAmountVnd nên không còn nhánh so theo amount USD
+     */
+    @Query("SELECT p.id AS id, p.amount AS amount, p.description AS description, p.transactionId AS transactionId, p.expiresAt AS expiresAt, " +
+           "p.expectedAmountVnd AS expectedAmountVnd, p.contentKey AS contentKey " +
+           "FROM Payment p WHERE p.paymentMethod = :paymentMethod AND p.status = :status " +
+           "AND p.expectedAmountVnd BETWEEN :minAmountVnd AND :maxAmountVnd ORDER BY p.id")
+    List<PaymentMatchView> findMatchCandidatesByAmount(
+        @Param("paymentMethod") String paymentMethod,
+        @Param("status") String status,
+        @Param("minAmountVnd") long minAmountVnd,
+        @Param("maxAmountVnd") long maxAmountVnd
+    );
+    
+    /**
+     * Giống findMatchCandidatesByAmount nhưng chỉ lấy payment có contentKey bắt đầu bằng content key của callback
+     * (content key chỉ gồm chữ/số/khoảng trắng nên không cần escape LIKE)
+     */
+    @Query("SELECT p.id AS id, p.amount AS amount, p.description AS description, p.transactionId AS transactionId, p.expiresAt AS expiresAt, " +
+           "p.expectedAmountVnd AS expectedAmountVnd, p.contentKey AS contentKey " +
+           "FROM Payment p WHERE p.paymentMethod = :paymentMethod AND p.status = :status " +
+           "AND p.expectedAmountVnd BETWEEN :minAmountVnd AND :maxAmountVnd " +
+           "AND p.contentKey LIKE CONCAT(:contentKeyPrefix, '%') ORDER BY p.id")
+    List<PaymentMatchView> findMatchCandidatesByAmountAndContentKeyPrefix(
+        @Param("paymentMethod") String paymentMethod,
+        @Param("status") String status,
+        @Param("minAmountVnd") long minAmountVnd,
+        @Param("maxAmountVnd") long maxAmountVnd,
+        @Param("contentKeyPrefix") String contentKeyPrefix
+    );
+    
+    @Query("SELECT p.id AS id, p.expiresAt AS expiresAt FROM Payment p WHERE p.status = :status AND p.expiresAt IS NOT NULL")
+    List<PaymentExpiryView> findExpiryViewsByStatus(@Param("status") String status);
+    
+    @Query("SELECT p.id FROM Payment p WHERE p.status = :status AND p.expiresAt < :now ORDER BY p.expiresAt")
+    List<Integer> findIdsByStatusAndExpiresAtBefore(
+        @Param("status") String status,
+        @Param("now") LocalDateTime now,
+        Pageable pageable
+    );
+    
+    /**
+     * Chuyển các payment còn PENDING và đã quá hạn sang EXPIRED (một câu UPDATE cho cả chunk)
+     * Payment đã được thanh toán/hủy trong lúc chờ sẽ không bị ghi đè
+     * Tăng version để callback đang giữ bản PENDING cũ bị từ chối khi ghi
+     */
+    @Modifying
+    @Query("UPDATE Payment p SET p.status = 'EXPIRED', p.version = p.version + 1 " +
+           "WHERE p.id IN :ids AND p.status = 'PENDING' AND p.expiresAt <= :now")
+    int expirePending(@Param("ids") Collection<Integer> ids, @Param("now") LocalDateTime now);
+    
+    @Query("SELECT p.id FROM Payment p WHERE p.status = :status AND p.createdAt < :before ORDER BY p.createdAt")
+    List<Integer> findIdsByStatusAndCreatedAtBefore(
+        @Param("status") String status,
+        @Param("before") LocalDateTime before,
+        Pageable pageable
+    );
+    
+    /**
+     * Chuyển các payment kẹt ở PROCESSING (crash / redeploy giữa reserve và finalize, markFailed lỗi) sang FAILED
+     * Payment đã được finalize trong lúc chờ sẽ không bị ghi đè
+     */
+    @Modifying
+    @Query("UPDATE Payment p SET p.status = 'FAILED', p.version = p.version + 1 " +
+           "WHERE p.id IN :ids AND p.status = 'PROCESSING' AND p.createdAt <= :before")
+    int failStaleProcessing(@Param("ids") Collection<Integer> ids, @Param("before") LocalDateTime before);
+    
+    /**
+     * Trong số ids, các payment đang ở status cho trước (sweeper dùng sau expirePending để chỉ phát event
+     * cho payment thực sự EXPIRED, không phải payment đã được thanh toán trước khi tới hạn)
+     */
+    @Query("SELECT p.id FROM Payment p WHERE p.id IN :ids AND p.status = :status")
+    List<Integer> findIdsByIdInAndStatus(@Param("ids") Collection<Integer> ids, @Param("status") String status);
 }
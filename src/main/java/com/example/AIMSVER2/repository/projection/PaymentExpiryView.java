@@ -0,0 +1,11 @@
+package com.example.AIMSVER2.repository.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection cho expiry sweeper: chỉ cần id và thời điểm hết hạn
+ */
+public interface PaymentExpiryView {
+    Integer getId();
+    LocalDateTime getExpiresAt();
+}
@@ -0,0 +1,18 @@
+package com.example.AIMSVER2.repository.projection;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Projection chỉ chứa các cột cần cho việc match callback VietQR
+ * Tránh load toàn bộ entity Payment (và association Order) khi lọc candidate
+ */
+public interface PaymentMatchView {
+    Integer getId();
+    BigDecimal getAmount();
+    String getDescription();
+    String getTransactionId();
+    LocalDateTime getExpiresAt();
+    Long getExpectedAmountVnd();
+    String getContentKey();
+}
@@ -0,0 +1,45 @@
+package com.example.AIMSVER2.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Giới hạn số lời gọi đồng thời tới một gateway
+ * Gateway chậm chỉ giữ tối đa maxConcurrentCalls thread/slot, lời gọi vượt quá bị từ chối thay vì xếp hàng chờ timeout
+ */
+public class Bulkhead {
+
+    private final int maxConcurrentCalls;
+    private final long maxWaitNanos;
+    private final Semaphore permits;
+
+    public Bulkhead(int maxConcurrentCalls, Duration maxWait) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.permits = new Semaphore(maxConcurrentCalls);
+    }
+
+    /**
+     * @return true nếu lấy được slot (phải release() sau khi gọi xong)
+     */
+    public boolean tryAcquire() {
+        if (maxWaitNanos <= 0) {
+            return permits.tryAcquire();
+        }
+        try {
+            return permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int inFlight() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.AIMSVER2.resilience;
+
+import org.springframework.web.client.RestClientResponseException;
+
+/**
+ * Phân loại lỗi do chính request (không phải do gateway): gửi lại request y hệt cũng hỏng, và gateway vẫn đang trả lời bình thường
+ *
+ * - IllegalArgumentException: validation phía client (dựng payload QR, số tiền / nội dung không hợp lệ...)
+ * - HTTP 4xx trừ 401 (token hết hạn), 408 và 429 (gateway quá tải / timeout, thử lại có thể được)
+ */
+public final class ClientErrors {
+
+    private ClientErrors() {
+    }
+
+    public static boolean isClientError(int httpStatus) {
+        return httpStatus >= 400 && httpStatus < 500 && httpStatus != 401 && httpStatus != 408 && httpStatus != 429;
+    }
+
+    /**
+     * Xét cả chuỗi cause vì service thường bọc lỗi gốc trong RuntimeException
+     */
+    public static boolean isClientError(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof IllegalArgumentException) {
+                return true;
+            }
+            if (e instanceof RestClientResponseException responseException) {
+                return isClientError(responseException.getStatusCode().value());
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.AIMSVER2.resilience;
+
+import com.example.AIMSVER2.config.GatewayResilienceConfig;
+import com.example.AIMSVER2.dto.PaymentResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker + bulkhead + retry cho một gateway
+ *
+ * - Mỗi lần thử: lấy slot bulkhead, rồi permission của breaker; không được thì trả FAILED ngay (không retry)
+ * - Strategy trả lỗi gateway dưới dạng response FAILED nên response FAILED (hoặc exception) tính là lỗi của breaker
+ * - Trừ lỗi do request (response.clientError, IllegalArgumentException / 4xx, xem ClientErrors): gateway vẫn trả lời
+ *   bình thường nên không tính vào failure rate (chỉ trả permission) và không retry vì gửi lại cũng hỏng y hệt
+ * - Chỉ retry khi caller cho phép (createPayment); backoff có jitter, bản async chờ bằng delayedExecutor nên không giữ thread
+ * - Metrics: gateway.circuit.state{gateway, state}, gateway.calls.rejected{gateway, reason},
+ *   gateway.retries{gateway, operation}, gateway.bulkhead.in.flight{gateway}
+ */
+@Slf4j
+public class GatewayResilience {
+
+    private final String gateway;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final RetryPolicy retryPolicy;
+    private final Counter rejectedByCircuit;
+    private final Counter rejectedByBulkhead;
+    private final MeterRegistry meterRegistry;
+
+    public GatewayResilience(String gateway, GatewayResilienceConfig.Settings settings, MeterRegistry meterRegistry) {
+        this(gateway,
+            new CircuitBreaker(gateway, settings.getFailureRateThreshold(), settings.getSlidingWindowSize(),
+                settings.getMinimumCalls(), settings.getOpenDuration(), settings.getHalfOpenCalls()),
+            new Bulkhead(settings.getMaxConcurrentCalls(), settings.getBulkheadMaxWait()),
+            new RetryPolicy(settings.getMaxAttempts(), settings.getRetryBaseDelay(), settings.getRetryMaxDelay()),
+            meterRegistry);
+    }
+
+    GatewayResilience(String gateway, CircuitBreaker circuitBreaker, Bulkhead bulkhead, RetryPolicy retryPolicy,
+                      MeterRegistry meterRegistry) {
+        this.gateway = gateway;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.retryPolicy = retryPolicy;
+        this.meterRegistry = meterRegistry;
+        this.rejectedByCircuit = Counter.builder("gateway.calls.rejected")
+            .tag("gateway", gateway).tag("reason", "circuit_open").register(meterRegistry);
+        this.rejectedByBulkhead = Counter.builder("gateway.calls.rejected")
+            .tag("gateway", gateway).tag("reason", "bulkhead_full").register(meterRegistry);
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder("gateway.circuit.state", circuitBreaker, breaker -> breaker.state() == state ? 1 : 0)
+                .description("1 nếu circuit breaker của gateway đang ở state này")
+                .tag("gateway", gateway)
+                .tag("state", state.name().toLowerCase())
+                .register(meterRegistry);
+        }
+        Gauge.builder("gateway.bulkhead.in.flight", bulkhead, Bulkhead::inFlight)
+            .description("Số lời gọi đang chiếm slot bulkhead của gateway")
+            .tag("gateway", gateway)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Gọi đồng bộ; backoff giữa các lần thử chờ trên thread hiện tại
+     */
+    public PaymentResponse execute(String operation, boolean retryable, Supplier<PaymentResponse> call) {
+        int maxAttempts = retryable ? retryPolicy.maxAttempts() : 1;
+        for (int attempt = 1; ; attempt++) {
+            PaymentResponse rejected = tryEnter();
+            if (rejected != null) {
+                return rejected;
+            }
+            PaymentResponse response;
+            try {
+                response = call.get();
+            } catch (RuntimeException e) {
+                exit(null, e);
+                if (isClientError(null, e) || attempt >= maxAttempts || !sleep(retryDelay(operation, attempt))) {
+                    throw e;
+                }
+                continue;
+            }
+            exit(response, null);
+            if (!isFailure(response, null) || isClientError(response, null) || attempt >= maxAttempts || !sleep(retryDelay(operation, attempt))) {
+                return response;
+            }
+        }
+    }
+
+    /**
+     * Gọi bất đồng bộ; retry được hẹn bằng delayedExecutor trên executor của caller
+     */
+    public CompletableFuture<PaymentResponse> executeAsync(String operation, boolean retryable,
+                                                          Supplier<CompletableFuture<PaymentResponse>> call,
+                                                          Executor executor) {
+        return attemptAsync(operation, 1, retryable ? retryPolicy.maxAttempts() : 1, call, executor);
+    }
+
+    private CompletableFuture<PaymentResponse> attemptAsync(String operation, int attempt, int maxAttempts,
+                                                           Supplier<CompletableFuture<PaymentResponse>> call,
+                                                           Executor executor) {
+        PaymentResponse rejected = tryEnter();
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        CompletableFuture<PaymentResponse> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return result
+            .handle((response, error) -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                exit(response, cause);
+                boolean failed = isFailure(response, cause) && !isClientError(response, cause);
+                if (!failed || attempt >= maxAttempts) {
+                    return cause == null
+                        ? CompletableFuture.completedFuture(response)
+                        : CompletableFuture.<PaymentResponse>failedFuture(cause);
+                }
+                Duration delay = retryDelay(operation, attempt);
+                Executor delayed = CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS, executor);
+                return CompletableFuture.supplyAsync(() -> null, delayed)
+                    .thenCompose(ignored -> attemptAsync(operation, attempt + 1, maxAttempts, call, executor));
+            })
+            .thenCompose(next -> next);
+    }
+
+    public CircuitBreaker.State circuitState() {
+        return circuitBreaker.state();
+    }
+
+    /**
+     * Lấy slot bulkhead + permission của breaker; null nếu được gọi, ngược lại là response FAILED trả về ngay
+     */
+    private PaymentResponse tryEnter() {
+        if (!bulkhead.tryAcquire()) {
+            rejectedByBulkhead.increment();
+            return failed("too many concurrent calls");
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            bulkhead.release();
+            rejectedByCircuit.increment();
+            return failed("circuit open");
+        }
+        return null;
+    }
+
+    private void exit(PaymentResponse response, Throwable error) {
+        bulkhead.release();
+        if (isClientError(response, error)) {
+            circuitBreaker.releasePermission();
+        } else if (isFailure(response, error)) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    private Duration retryDelay(String operation, int attempt) {
+        meterRegistry.counter("gateway.retries", "gateway", gateway, "operation", operation).increment();
+        Duration delay = retryPolicy.backoff(attempt);
+        log.debug("Retrying {} {} (attempt {}) in {} ms", gateway, operation, attempt + 1, delay.toMillis());
+        return delay;
+    }
+
+    private static boolean isFailure(PaymentResponse response, Throwable error) {
+        return error != null || response == null || "FAILED".equals(response.getStatus());
+    }
+
+    private static boolean isClientError(PaymentResponse response, Throwable error) {
+        return error != null ? ClientErrors.isClientError(error) : response != null && response.isClientError();
+    }
+
+    private static boolean sleep(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis(), (int) (delay.toNanos() % 1_000_000));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private PaymentResponse failed(String reason) {
+        return PaymentResponse.builder()
+            .status("FAILED")
+            .message(gateway + " gateway unavailable: " + reason)
+            .build();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.AIMSVER2.resilience;
+
+import com.example.AIMSVER2.config.GatewayResilienceConfig;
+import com.example.AIMSVER2.strategy.PaymentStrategy;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Một GatewayResilience (breaker, bulkhead, retry) cho mỗi gateway, dùng chung cho mọi lời gọi tới gateway đó
+ */
+@Component
+public class GatewayResilienceRegistry {
+
+    private final GatewayResilienceConfig config;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, GatewayResilience> byGateway = new ConcurrentHashMap<>();
+
+    public GatewayResilienceRegistry(GatewayResilienceConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Bọc strategy khi gateway.resilience.enabled=true, ngược lại trả nguyên strategy
+     */
+    public PaymentStrategy decorate(PaymentStrategy strategy) {
+        if (!config.isEnabled()) {
+            return strategy;
+        }
+        return new ResilientPaymentStrategy(strategy, forGateway(strategy.getPaymentMethod()));
+    }
+
+    public GatewayResilience forGateway(String paymentMethod) {
+        String gateway = paymentMethod.toLowerCase();
+        return byGateway.computeIfAbsent(gateway,
+            name -> new GatewayResilience(name, config.settingsFor(name), meterRegistry));
+    }
+}
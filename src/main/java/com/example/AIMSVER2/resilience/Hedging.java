@@ -0,0 +1,57 @@
+package com.example.AIMSVER2.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hedged request cho lời gọi idempotent: lần gọi đầu chưa xong sau hedgeDelay thì gửi thêm một lần nữa,
+ * lấy kết quả thành công đến trước; chỉ lỗi khi mọi lần gọi đã gửi đều lỗi
+ * Cắt đuôi latency (p99) khi gateway thỉnh thoảng treo một request, đổi lại tốn thêm tối đa một lời gọi
+ */
+public final class Hedging {
+
+    private Hedging() {
+    }
+
+    /**
+     * @param attempt Bắt đầu một lần gọi, không được chặn thread gọi (scheduler chỉ có một thread)
+     * @param onHedge Gọi khi lần gọi thứ hai được gửi (metrics)
+     */
+    public static <T> CompletableFuture<T> hedge(Supplier<CompletableFuture<T>> attempt, Duration hedgeDelay,
+                                                 ScheduledExecutorService scheduler, Runnable onHedge) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        launch(attempt, result, pending);
+        ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+            if (!result.isDone()) {
+                pending.incrementAndGet();
+                onHedge.run();
+                launch(attempt, result, pending);
+            }
+        }, hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((value, error) -> hedge.cancel(false));
+        return result;
+    }
+
+    private static <T> void launch(Supplier<CompletableFuture<T>> attempt, CompletableFuture<T> result,
+                                   AtomicInteger pending) {
+        CompletableFuture<T> call;
+        try {
+            call = attempt.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.AIMSVER2.resilience;
+
+import com.example.AIMSVER2.dto.PaymentRequest;
+import com.example.AIMSVER2.dto.PaymentResponse;
+import com.example.AIMSVER2.strategy.PaymentStrategy;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Bọc một PaymentStrategy bằng GatewayResilience của gateway tương ứng
+ * Chỉ createPayment được retry (tạo lại QR / PayPal payment chưa approve không gây tác dụng phụ);
+ * confirm (execute PayPal) và cancel chỉ gọi một lần nhưng vẫn đi qua breaker và bulkhead
+ * createPaymentLocally không đi qua breaker: không chạm gateway nên không tính vào tỷ lệ lỗi và vẫn phục vụ khi OPEN
+ */
+public class ResilientPaymentStrategy implements PaymentStrategy {
+
+    private final PaymentStrategy delegate;
+    private final GatewayResilience resilience;
+
+    public ResilientPaymentStrategy(PaymentStrategy delegate, GatewayResilience resilience) {
+        this.delegate = delegate;
+        this.resilience = resilience;
+    }
+
+    @Override
+    public PaymentResponse createPayment(PaymentRequest request) {
+        return resilience.execute("create", true, () -> delegate.createPayment(request));
+    }
+
+    @Override
+    public CompletableFuture<PaymentResponse> createPaymentAsync(PaymentRequest request, Executor executor) {
+        return resilience.executeAsync("create", true, () -> delegate.createPaymentAsync(request, executor), executor);
+    }
+
+    @Override
+    public Optional<PaymentResponse> createPaymentLocally(PaymentRequest request) {
+        return delegate.createPaymentLocally(request);
+    }
+
+    @Override
+    public PaymentResponse confirmPayment(String paymentId, String payerId) {
+        return resilience.execute("confirm", false, () -> delegate.confirmPayment(paymentId, payerId));
+    }
+
+    @Override
+    public PaymentResponse cancelPayment(String paymentId) {
+        return resilience.execute("cancel", false, () -> delegate.cancelPayment(paymentId));
+    }
+
+    @Override
+    public String getPaymentMethod() {
+        return delegate.getPaymentMethod();
+    }
+}
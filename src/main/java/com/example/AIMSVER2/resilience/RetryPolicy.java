@@ -0,0 +1,36 @@
+package com.example.AIMSVER2.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Số lần thử tối đa và backoff lũy thừa có jitter giữa các lần thử
+ * Jitter lấy ngẫu nhiên trong [cap/2, cap] để các request cùng lỗi một lúc không retry dồn cùng thời điểm
+ *
+ * @param maxAttempts Tổng số lần thử, tính cả lần đầu (1 = không retry)
+ * @param baseDelay Backoff trước lần retry đầu
+ * @param maxDelay Backoff tối đa
+ */
+public record RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+
+    public RetryPolicy {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be >= 1");
+        }
+    }
+
+    /**
+     * Thời gian chờ trước lần thử thứ attempt + 1 (attempt bắt đầu từ 1)
+     */
+    public Duration backoff(int attempt) {
+        long base = baseDelay.toNanos();
+        long cap = maxDelay.toNanos();
+        int shift = Math.min(attempt - 1, 30);
+        long exponential = base > (cap >> shift) ? cap : Math.min(cap, base << shift);
+        if (exponential <= 0) {
+            return Duration.ZERO;
+        }
+        long half = exponential / 2;
+        return Duration.ofNanos(half + ThreadLocalRandom.current().nextLong(exponential - half + 1));
+    }
+}
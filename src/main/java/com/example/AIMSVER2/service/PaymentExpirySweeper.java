@@ -0,0 +1,228 @@
+package com.example.AIMSVER2.service;
+
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.event.PaymentStatusChangedEvent;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import com.example.AIMSVER2.repository.projection.PaymentExpiryView;
+import com.example.AIMSVER2.service.vietqr.PendingVietQRPaymentIndex;
+import com.example.AIMSVER2.util.TransactionHooks;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chuyển các payment PENDING đã quá expiresAt sang EXPIRED
+ *
+ * - Payment được đưa vào DelayQueue lúc tạo (và lúc khởi động cho các payment PENDING có sẵn),
+ *   mỗi lần sweep chỉ lấy các phần tử đã tới hạn, không quét bảng Payment
+ * - Cập nhật theo lô bằng một câu UPDATE ... WHERE id IN (...) AND status = 'PENDING' cho mỗi chunk
+ * - Định kỳ quét DB để bắt các payment không có trong queue (tạo bởi instance khác, bị mất khi restart...)
+ * - Chỉ expire sau expiresAt + gracePeriod: chuyển khoản quét QR sát giờ hết hạn vẫn kịp về callback khi payment còn PENDING
+ * - Reconcile cũng chuyển payment kẹt ở PROCESSING quá processingTimeout (crash / redeploy giữa reserve và finalize của
+ *   PaymentService, markFailed lỗi) sang FAILED; processingTimeout phải dài hơn một lần gọi gateway kể cả retry
+ * - Metrics: số payment expired, kích thước mỗi batch, độ trễ từ hạn (expiresAt + grace) đến lúc được expire, kích thước queue,
+ *   số payment PROCESSING bị chuyển sang FAILED
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentExpirySweeper {
+
+    private static final String STATUS_PENDING = "PENDING";
+    private static final String STATUS_EXPIRED = "EXPIRED";
+    private static final String STATUS_PROCESSING = "PROCESSING";
+    private static final String STATUS_FAILED = "FAILED";
+
+    private final PaymentRepository paymentRepository;
+    private final PendingVietQRPaymentIndex pendingPaymentIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private final DelayQueue<ExpiringPayment> queue = new DelayQueue<>();
+
+    @Value("${payment.expiry.batch-size:500}")
+    private int batchSize;
+
+    @Value("${payment.expiry.grace-period:5m}")
+    private Duration gracePeriod;
+
+    @Value("${payment.expiry.processing-timeout:2m}")
+    private Duration processingTimeout;
+
+    private Counter expiredCounter;
+    private Counter staleProcessingCounter;
+    private DistributionSummary batchSizeSummary;
+    private Timer lagTimer;
+
+    @PostConstruct
+    public void init() {
+        expiredCounter = Counter.builder("payment.expiry.expired")
+            .description("Số payment đã chuyển sang EXPIRED")
+            .register(meterRegistry);
+        staleProcessingCounter = Counter.builder("payment.expiry.processing.failed")
+            .description("Số payment kẹt ở PROCESSING bị chuyển sang FAILED")
+            .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("payment.expiry.batch.size")
+            .description("Số payment trong mỗi câu UPDATE expire")
+            .register(meterRegistry);
+        lagTimer = Timer.builder("payment.expiry.lag")
+            .description("Độ trễ từ expiresAt + grace period đến lúc payment được expire")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        Gauge.builder("payment.expiry.queue.size", queue, DelayQueue::size)
+            .description("Payment PENDING đang chờ tới hạn")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Nạp các payment PENDING có expiresAt khi ứng dụng khởi động
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadPending() {
+        List<PaymentExpiryView> pending = paymentRepository.findExpiryViewsByStatus(STATUS_PENDING);
+        pending.forEach(p -> queue.offer(new ExpiringPayment(p.getId(), p.getExpiresAt().plus(gracePeriod))));
+        log.info("Payment expiry sweeper tracking {} pending payment(s)", pending.size());
+    }
+
+    /**
+     * Theo dõi payment vừa tạo; nếu đang trong transaction thì chỉ đưa vào queue sau khi commit
+     */
+    public void track(Payment payment) {
+        if (payment == null || payment.getId() == null || payment.getExpiresAt() == null
+            || !STATUS_PENDING.equals(payment.getStatus())) {
+            return;
+        }
+        ExpiringPayment expiring = new ExpiringPayment(payment.getId(), payment.getExpiresAt().plus(gracePeriod));
+        TransactionHooks.afterCommit(() -> queue.offer(expiring));
+    }
+
+    /**
+     * Expire các payment đã tới hạn trong queue
+     */
+    @Scheduled(fixedDelayString = "${payment.expiry.sweep-interval-ms:1000}")
+    public void sweep() {
+        List<ExpiringPayment> due = new ArrayList<>();
+        queue.drainTo(due);
+        if (due.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<ExpiringPayment> chunk = due.subList(from, Math.min(from + batchSize, due.size()));
+            expireChunk(chunk.stream().map(ExpiringPayment::paymentId).toList(), now);
+            chunk.forEach(p -> lagTimer.record(Duration.between(p.deadline(), now)));
+        }
+    }
+
+    /**
+     * Lưới an toàn: quét DB tìm payment PENDING đã quá hạn mà queue không biết và payment kẹt ở PROCESSING
+     */
+    @Scheduled(fixedDelayString = "${payment.expiry.reconcile-interval-ms:300000}",
+        initialDelayString = "${payment.expiry.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        LocalDateTime now = LocalDateTime.now();
+        int total = 0;
+        List<Integer> ids;
+        do {
+            ids = paymentRepository.findIdsByStatusAndExpiresAtBefore(STATUS_PENDING, now.minus(gracePeriod),
+                PageRequest.of(0, batchSize));
+            if (!ids.isEmpty()) {
+                total += expireChunk(ids, now);
+            }
+        } while (ids.size() == batchSize);
+        if (total > 0) {
+            log.info("Expiry reconcile expired {} payment(s) missing from the sweeper queue", total);
+        }
+        failStaleProcessing(now);
+    }
+
+    private void failStaleProcessing(LocalDateTime now) {
+        LocalDateTime before = now.minus(processingTimeout);
+        int total = 0;
+        List<Integer> ids;
+        do {
+            ids = paymentRepository.findIdsByStatusAndCreatedAtBefore(STATUS_PROCESSING, before,
+                PageRequest.of(0, batchSize));
+            if (!ids.isEmpty()) {
+                List<Integer> chunk = ids;
+                Integer updated = transactionTemplate.execute(status -> {
+                    int count = paymentRepository.failStaleProcessing(chunk, before);
+                    if (count > 0) {
+                        paymentRepository.findIdsByIdInAndStatus(chunk, STATUS_FAILED)
+                            .forEach(id -> eventPublisher.publishEvent(new PaymentStatusChangedEvent(id, STATUS_FAILED)));
+                    }
+                    return count;
+                });
+                total += updated == null ? 0 : updated;
+            }
+        } while (ids.size() == batchSize);
+        if (total > 0) {
+            staleProcessingCounter.increment(total);
+            log.warn("Expiry reconcile marked {} payment(s) stuck in PROCESSING for over {} as FAILED", total, processingTimeout);
+        }
+    }
+
+    private int expireChunk(List<Integer> paymentIds, LocalDateTime now) {
+        Integer updated = transactionTemplate.execute(status -> {
+            int count = paymentRepository.expirePending(paymentIds, now.minus(gracePeriod));
+            paymentIds.forEach(pendingPaymentIndex::remove);
+            if (count > 0) {
+                paymentRepository.findIdsByIdInAndStatus(paymentIds, STATUS_EXPIRED)
+                    .forEach(id -> eventPublisher.publishEvent(new PaymentStatusChangedEvent(id, STATUS_EXPIRED)));
+            }
+            return count;
+        });
+        int expired = updated == null ? 0 : updated;
+        batchSizeSummary.record(expired);
+        expiredCounter.increment(expired);
+        log.debug("Expired {} of {} due payment(s)", expired, paymentIds.size());
+        return expired;
+    }
+
+    public int queueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @param deadline expiresAt + gracePeriod
+     */
+    private record ExpiringPayment(Integer paymentId, LocalDateTime deadline) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            long deadlineMillis = deadline.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            return unit.convert(deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof ExpiringPayment payment) {
+                return deadline.compareTo(payment.deadline);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
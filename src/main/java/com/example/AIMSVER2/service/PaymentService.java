@@ -1,55 +1,282 @@
 package com.example.AIMSVER2.service;
 
+import com.example.AIMSVER2.config.VietQRConfig;
 import com.example.AIMSVER2.dto.PaymentRequest;
 import com.example.AIMSVER2.dto.PaymentResponse;
 import com.example.AIMSVER2.entity.Order;
+import com.example.AIMSVER2.event.PaymentStatusChangedEvent;
 import com.example.AIMSVER2.entity.Payment;
 import com.example.AIMSVER2.factory.PaymentStrategyFactory;
 import com.example.AIMSVER2.repository.OrderRepository;
 import com.example.AIMSVER2.repository.PaymentRepository;
+import com.example.AIMSVER2.service.code.PaymentCodeGenerator;
+import com.example.AIMSVER2.service.vietqr.PendingVietQRPaymentIndex;
+import com.example.AIMSVER2.service.vietqr.VietQRMatchKeys;
 import com.example.AIMSVER2.strategy.PaymentStrategy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class PaymentService {
     
+    /**
+     * Tag method khi chưa xác định được payment method hợp lệ (tránh đưa input tùy ý vào tag metrics)
+     */
+    private static final String METHOD_UNKNOWN = "UNKNOWN";
+    
     private final PaymentRepository paymentRepository;
     private final OrderRepository orderRepository;
     private final PaymentStrategyFactory paymentStrategyFactory;
+    private final PendingVietQRPaymentIndex pendingPaymentIndex;
+    private final VietQRConfig vietQRConfig;
+    private final PaymentExpirySweeper paymentExpirySweeper;
+    private final PaymentCodeGenerator paymentCodeGenerator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor gatewayExecutor;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${payment.batch.max-size:500}")
+    private int batchMaxSize;
+    
+    @Value("${payment.batch.parallelism:16}")
+    private int batchParallelism;
     
     /**
-     * Tạo payment mới
+     * Tạo payment mới (blocking, dùng cho các caller đồng bộ)
      */
-    @Transactional
     public PaymentResponse createPayment(PaymentRequest request) {
+        try {
+            return createPaymentAsync(request).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Tạo payment mới theo 3 pha, không giữ transaction/JDBC connection trong lúc gọi gateway:
+     * 1. Reserve: tạo dòng Payment trạng thái PROCESSING (transaction ngắn)
+     * 2. Gọi gateway trên gatewayExecutor (ngoài transaction)
+     * 3. Finalize: cập nhật Payment theo kết quả gateway (transaction ngắn)
+     */
+    public CompletableFuture<PaymentResponse> createPaymentAsync(PaymentRequest request) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String method = METHOD_UNKNOWN;
+        try {
+            // Get payment strategy
+            PaymentStrategy strategy = paymentStrategyFactory.getStrategy(request.getPaymentMethod());
+            method = strategy.getPaymentMethod();
+            
+            Payment reserved = transactionTemplate.execute(status -> reservePayment(request));
+            
+            String paymentMethod = method;
+            return callGateway(strategy, request)
+                .exceptionally(e -> gatewayFailure(reserved.getId(), e))
+                .thenApply(paymentResponse -> finalizePayment(reserved.getId(), request, paymentResponse))
+                .whenComplete((response, error) -> recordOperation(sample, "create", paymentMethod, response, error));
+        } catch (RuntimeException e) {
+            recordOperation(sample, "create", method, null, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Tạo nhiều payment trong một lần gọi (checkout marketplace, xuất hóa đơn hàng loạt)
+     * - Load toàn bộ Order bằng một query, reserve tất cả Payment trong một transaction (saveAll, JDBC batch)
+     * - Gọi gateway song song, tối đa payment.batch.parallelism lời gọi cùng lúc
+     * - Finalize tất cả trong một transaction
+     * Lỗi của từng item (order không tồn tại, method không hỗ trợ, gateway lỗi) không làm hỏng cả batch:
+     * item đó trả về status FAILED kèm message, kết quả giữ đúng thứ tự request
+     */
+    public List<PaymentResponse> createPayments(List<PaymentRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("Payment batch is empty");
+        }
+        if (requests.size() > batchMaxSize) {
+            throw new IllegalArgumentException(
+                "Payment batch too large: " + requests.size() + " (max " + batchMaxSize + ")");
+        }
+        
+        int size = requests.size();
+        PaymentResponse[] results = new PaymentResponse[size];
+        PaymentStrategy[] strategies = new PaymentStrategy[size];
+        Payment[] reserved = new Payment[size];
+        
+        // Pha 1: validate + reserve
+        Set<Integer> orderIds = requests.stream()
+            .map(PaymentRequest::getOrderId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+        Map<Integer, Order> orders = orderRepository.findAllById(orderIds).stream()
+            .collect(Collectors.toMap(Order::getId, Function.identity()));
+        
+        List<Payment> toReserve = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            PaymentRequest request = requests.get(i);
+            Order order = request.getOrderId() == null ? null : orders.get(request.getOrderId());
+            if (order == null) {
+                results[i] = failedResponse(request, "Order not found: " + request.getOrderId());
+                continue;
+            }
+            try {
+                strategies[i] = paymentStrategyFactory.getStrategy(request.getPaymentMethod());
+            } catch (IllegalArgumentException e) {
+                results[i] = failedResponse(request, e.getMessage());
+                continue;
+            }
+            reserved[i] = newReservedPayment(request, order);
+            toReserve.add(reserved[i]);
+        }
+        transactionTemplate.executeWithoutResult(status -> paymentRepository.saveAll(toReserve));
+        
+        // Pha 2: gọi gateway song song có giới hạn
+        Semaphore permits = new Semaphore(batchParallelism);
+        List<CompletableFuture<PaymentResponse>> gatewayCalls = new ArrayList<>(Collections.nCopies(size, null));
+        for (int i = 0; i < size; i++) {
+            if (reserved[i] == null) {
+                continue;
+            }
+            permits.acquireUninterruptibly();
+            Integer paymentId = reserved[i].getId();
+            gatewayCalls.set(i, callGateway(strategies[i], requests.get(i))
+                .exceptionally(e -> gatewayFailure(paymentId, e))
+                .whenComplete((response, error) -> permits.release()));
+        }
+        CompletableFuture.allOf(gatewayCalls.stream()
+            .filter(Objects::nonNull)
+            .toArray(CompletableFuture[]::new)).join();
+        
+        // Pha 3: finalize toàn bộ batch
+        Map<Integer, Integer> positionById = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (reserved[i] != null) {
+                positionById.put(reserved[i].getId(), i);
+                results[i] = gatewayCalls.get(i).join();
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Payment> payments = paymentRepository.findAllById(positionById.keySet());
+                for (Payment payment : payments) {
+                    int i = positionById.get(payment.getId());
+                    applyGatewayResponse(payment, requests.get(i), results[i]);
+                }
+                for (Payment saved : paymentRepository.saveAll(payments)) {
+                    pendingPaymentIndex.add(saved);
+                    paymentExpirySweeper.track(saved);
+                    publishStatusChanged(saved);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to finalize payment batch of {} item(s), marking as FAILED: ", positionById.size(), e);
+            positionById.forEach((paymentId, i) -> {
+                markFailed(paymentId);
+                results[i] = failedResponse(requests.get(i), "Failed to create payment: " + e.getMessage());
+            });
+        }
+        
+        positionById.forEach((paymentId, i) -> {
+            results[i].setPaymentId(paymentId);
+            results[i].setPaymentCode(reserved[i].getPaymentCode());
+        });
+        return Arrays.asList(results);
+    }
+    
+    /**
+     * Pha 1: kiểm tra order và lưu Payment ở trạng thái PROCESSING
+     */
+    private Payment reservePayment(PaymentRequest request) {
         // Validate order exists
         Order order = orderRepository.findById(request.getOrderId())
             .orElseThrow(() -> new IllegalArgumentException("Order not found: " + request.getOrderId()));
         
-        // Get payment strategy
-        PaymentStrategy strategy = paymentStrategyFactory.getStrategy(request.getPaymentMethod());
-        
-        // Create payment via strategy
-        PaymentResponse paymentResponse = strategy.createPayment(request);
-        
-        // Save payment to database
+        return paymentRepository.save(newReservedPayment(request, order));
+    }
+    
+    private Payment newReservedPayment(PaymentRequest request, Order order) {
         Payment payment = new Payment();
         payment.setOrder(order);
         payment.setAmount(request.getAmount());
         payment.setDescription(request.getDescription());
-        payment.setStatus(paymentResponse.getStatus());
+        payment.setStatus("PROCESSING");
         payment.setPaymentMethod(request.getPaymentMethod());
+        payment.setCreatedAt(LocalDateTime.now());
+        
+        // Generate payment code
+        String paymentCode = generatePaymentCode(request.getPaymentMethod());
+        payment.setPaymentCode(paymentCode);
+        
+        // Khóa so khớp callback VietQR, tính một lần lúc tạo payment
+        if ("VIETQR".equals(request.getPaymentMethod()) && request.getAmount() != null) {
+            payment.setExpectedAmountVnd(VietQRMatchKeys.toVnd(request.getAmount(),
+                VietQRMatchKeys.effectiveRate(vietQRConfig.getUsdToVndRate())));
+            payment.setContentKey(VietQRMatchKeys.paymentContentKey(request.getDescription()));
+        }
+        
+        return payment;
+    }
+    
+    /**
+     * Pha 3: ghi kết quả gateway vào Payment đã reserve
+     */
+    private PaymentResponse finalizePayment(Integer paymentId, PaymentRequest request, PaymentResponse paymentResponse) {
+        Payment savedPayment;
+        try {
+            savedPayment = transactionTemplate.execute(status -> {
+                Payment payment = paymentRepository.findById(paymentId)
+                    .orElseThrow(() -> new IllegalStateException("Reserved payment not found: " + paymentId));
+                applyGatewayResponse(payment, request, paymentResponse);
+                Payment saved = paymentRepository.save(payment);
+                pendingPaymentIndex.add(saved);
+                paymentExpirySweeper.track(saved);
+                publishStatusChanged(saved);
+                return saved;
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to finalize paymentId={}, marking as FAILED: ", paymentId, e);
+            markFailed(paymentId);
+            throw e;
+        }
+        
+        // Update response with payment ID and code
+        paymentResponse.setPaymentId(savedPayment.getId());
+        paymentResponse.setPaymentCode(savedPayment.getPaymentCode());
+        
+        return paymentResponse;
+    }
+    
+    private void applyGatewayResponse(Payment payment, PaymentRequest request, PaymentResponse paymentResponse) {
+        payment.setStatus(paymentResponse.getStatus());
         payment.setTransactionId(paymentResponse.getTransactionId());
         payment.setQrCodeUrl(paymentResponse.getQrCodeUrl());
-        payment.setCreatedAt(LocalDateTime.now());
         payment.setExpiresAt(paymentResponse.getExpiresAt());
         
         // Lưu thông tin bổ sung cho VietQR (nếu có)
@@ -61,19 +288,54 @@ public class PaymentService {
                     paymentResponse.getBankName(), paymentResponse.getBankAccount());
             }
             payment.setDescription(descriptionWithBank);
+            // Nội dung QR có thể khác description của request (mã tham chiếu riêng của QR tạo sẵn / QR local)
+            payment.setContentKey(VietQRMatchKeys.paymentContentKey(paymentResponse.getDescription()));
+        }
+    }
+    
+    /**
+     * Pha 2: strategy tạo được payment local (QR tạo sẵn) thì không gọi gateway
+     * Exception ném đồng bộ (pool / QR local) cũng trả về dưới dạng future lỗi để đi qua gatewayFailure như lỗi bất đồng bộ
+     */
+    private CompletableFuture<PaymentResponse> callGateway(PaymentStrategy strategy, PaymentRequest request) {
+        try {
+            return strategy.createPaymentLocally(request)
+                .map(CompletableFuture::completedFuture)
+                .orElseGet(() -> strategy.createPaymentAsync(request, gatewayExecutor));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    private PaymentResponse gatewayFailure(Integer paymentId, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        log.error("Gateway call failed for paymentId={}: ", paymentId, cause);
+        return PaymentResponse.builder()
+            .status("FAILED")
+            .message("Failed to create payment: " + cause.getMessage())
+            .build();
+    }
+    
+    private static PaymentResponse failedResponse(PaymentRequest request, String message) {
+        return PaymentResponse.builder()
+            .status("FAILED")
+            .amount(request.getAmount())
+            .paymentMethod(request.getPaymentMethod())
+            .message(message)
+            .build();
+    }
+    
+    private void markFailed(Integer paymentId) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> paymentRepository.findById(paymentId)
+                .ifPresent(payment -> {
+                    payment.setStatus("FAILED");
+                    paymentRepository.save(payment);
+                    publishStatusChanged(payment);
+                }));
+        } catch (RuntimeException e) {
+            log.error("Could not mark paymentId={} as FAILED: ", paymentId, e);
         }
-        
-        // Generate payment code
-        String paymentCode = generatePaymentCode(request.getPaymentMethod());
-        payment.setPaymentCode(paymentCode);
-        
-        Payment savedPayment = paymentRepository.save(payment);
-        
-        // Update response with payment ID and code
-        paymentResponse.setPaymentId(savedPayment.getId());
-        paymentResponse.setPaymentCode(savedPayment.getPaymentCode());
-        
-        return paymentResponse;
     }
     
     /**
@@ -81,23 +343,36 @@ public class PaymentService {
      */
     @Transactional
     public PaymentResponse confirmPayment(String paymentId, String payerId) {
-        Payment payment = paymentRepository.findByTransactionId(paymentId)
-            .orElseThrow(() -> new IllegalArgumentException("Payment not found: " + paymentId));
-        
-        PaymentStrategy strategy = paymentStrategyFactory.getStrategy(payment.getPaymentMethod());
-        PaymentResponse response = strategy.confirmPayment(paymentId, payerId);
-        
-        // Update payment status
-        payment.setStatus(response.getStatus());
-        if ("COMPLETED".equals(response.getStatus())) {
-            payment.setPaidAt(LocalDateTime.now());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String method = METHOD_UNKNOWN;
+        try {
+            Payment payment = paymentRepository.findByTransactionId(paymentId)
+                .orElseThrow(() -> new IllegalArgumentException("Payment not found: " + paymentId));
+            method = payment.getPaymentMethod();
+            
+            PaymentStrategy strategy = paymentStrategyFactory.getStrategy(payment.getPaymentMethod());
+            PaymentResponse response = strategy.confirmPayment(paymentId, payerId);
+            
+            // Update payment status
+            payment.setStatus(response.getStatus());
+            if ("COMPLETED".equals(response.getStatus())) {
+                payment.setPaidAt(LocalDateTime.now());
+            }
+            paymentRepository.save(payment);
+            if (!"PENDING".equals(payment.getStatus())) {
+                pendingPaymentIndex.remove(payment.getId());
+            }
+            publishStatusChanged(payment);
+            
+            response.setPaymentId(payment.getId());
+            response.setPaymentCode(payment.getPaymentCode());
+            
+            recordOperation(sample, "confirm", method, response, null);
+            return response;
+        } catch (RuntimeException e) {
+            recordOperation(sample, "confirm", method, null, e);
+            throw e;
         }
-        paymentRepository.save(payment);
-        
-        response.setPaymentId(payment.getId());
-        response.setPaymentCode(payment.getPaymentCode());
-        
-        return response;
     }
     
     /**
@@ -105,20 +380,58 @@ public class PaymentService {
      */
     @Transactional
     public PaymentResponse cancelPayment(String paymentId) {
-        Payment payment = paymentRepository.findByTransactionId(paymentId)
-            .orElseThrow(() -> new IllegalArgumentException("Payment not found: " + paymentId));
-        
-        PaymentStrategy strategy = paymentStrategyFactory.getStrategy(payment.getPaymentMethod());
-        PaymentResponse response = strategy.cancelPayment(paymentId);
-        
-        // Update payment status
-        payment.setStatus("CANCELLED");
-        paymentRepository.save(payment);
-        
-        response.setPaymentId(payment.getId());
-        response.setPaymentCode(payment.getPaymentCode());
-        
-        return response;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String method = METHOD_UNKNOWN;
+        try {
+            Payment payment = paymentRepository.findByTransactionId(paymentId)
+                .orElseThrow(() -> new IllegalArgumentException("Payment not found: " + paymentId));
+            method = payment.getPaymentMethod();
+            
+            PaymentStrategy strategy = paymentStrategyFactory.getStrategy(payment.getPaymentMethod());
+            PaymentResponse response = strategy.cancelPayment(paymentId);
+            
+            // Update payment status
+            payment.setStatus("CANCELLED");
+            paymentRepository.save(payment);
+            pendingPaymentIndex.remove(payment.getId());
+            publishStatusChanged(payment);
+            
+            response.setPaymentId(payment.getId());
+            response.setPaymentCode(payment.getPaymentCode());
+            
+            recordOperation(sample, "cancel", method, response, null);
+            return response;
+        } catch (RuntimeException e) {
+            recordOperation(sample, "cancel", method, null, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Báo status mới cho cache trạng thái và các client đang chờ (listener chạy sau khi commit)
+     */
+    private void publishStatusChanged(Payment payment) {
+        eventPublisher.publishEvent(new PaymentStatusChangedEvent(payment.getId(), payment.getStatus()));
+    }
+    
+    /**
+     * Ghi thời gian xử lý vào timer payment.operation (tag operation, method, outcome)
+     * outcome: success | failure (gateway/DB trả FAILED) | error (exception)
+     */
+    private void recordOperation(Timer.Sample sample, String operation, String method,
+                                 PaymentResponse response, Throwable error) {
+        String outcome;
+        if (error != null) {
+            outcome = "error";
+        } else if (response == null || "FAILED".equals(response.getStatus())) {
+            outcome = "failure";
+        } else {
+            outcome = "success";
+        }
+        sample.stop(meterRegistry.timer("payment.operation",
+            "operation", operation,
+            "method", method != null ? method : METHOD_UNKNOWN,
+            "outcome", outcome));
     }
     
     /**
@@ -126,6 +439,6 @@ public class PaymentService {
      */
     private String generatePaymentCode(String paymentMethod) {
         String prefix = paymentMethod.equals("PAYPAL") ? "PAYPAL" : "VIETQR";
-        return prefix + "-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        return prefix + "-" + paymentCodeGenerator.next();
     }
 }
@@ -0,0 +1,180 @@
+package com.example.AIMSVER2.service;
+
+import com.example.AIMSVER2.dto.PaymentStatusResponse;
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.event.PaymentStatusChangedEvent;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import com.example.AIMSVER2.util.BoundedTtlCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cache read-through cho API polling trạng thái payment
+ *
+ * - Tra theo paymentCode hoặc transactionId; loader là findByPaymentCode / findByTransactionId
+ * - Trạng thái lưu theo paymentId, hai map paymentCode/transactionId -> paymentId không bao giờ đổi,
+ *   nên mỗi lần ghi status chỉ cần invalidate(paymentId) (sweeper chỉ biết id vẫn invalidate được)
+ * - Invalidate khi nhận PaymentStatusChangedEvent (sau khi transaction ghi status commit); lần load nào
+ *   bắt đầu trước một invalidate của chính payment đó thì không được ghi kết quả vào cache, để không giữ lại status cũ
+ * - Thời điểm invalidate được đóng dấu theo từng payment (mảng stamp chia theo hash paymentId, kích thước cố định):
+ *   invalidate của payment khác không làm hỏng lần load đang chạy; hai payment trùng stripe chỉ làm bỏ qua một lần ghi cache
+ * - Metrics: hit/miss, số entry bị evict (hết chỗ / hết hạn), kích thước cache
+ */
+@Component
+public class PaymentStatusCache {
+
+    private final PaymentRepository paymentRepository;
+    private final BoundedTtlCache<Integer, PaymentStatusResponse> statusById;
+    private final BoundedTtlCache<String, Integer> idByPaymentCode;
+    private final BoundedTtlCache<String, Integer> idByTransactionId;
+
+    private static final int STAMP_STRIPES = 4096; // Lũy thừa của 2
+
+    private final AtomicLong invalidationSequence = new AtomicLong();
+    private final AtomicLongArray invalidatedAt = new AtomicLongArray(STAMP_STRIPES); // Stamp invalidate gần nhất theo stripe
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PaymentStatusCache(PaymentRepository paymentRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${payment.status-cache.max-entries:100000}") int maxEntries,
+                              @Value("${payment.status-cache.ttl:10m}") Duration ttl) {
+        this.paymentRepository = paymentRepository;
+        this.statusById = new BoundedTtlCache<>(maxEntries, ttl);
+        this.idByPaymentCode = new BoundedTtlCache<>(maxEntries, ttl);
+        this.idByTransactionId = new BoundedTtlCache<>(maxEntries, ttl);
+
+        FunctionCounter.builder("payment.status.cache.requests", hits, LongAdder::sum)
+            .tag("result", "hit")
+            .register(meterRegistry);
+        FunctionCounter.builder("payment.status.cache.requests", misses, LongAdder::sum)
+            .tag("result", "miss")
+            .register(meterRegistry);
+        FunctionCounter.builder("payment.status.cache.evictions", statusById, BoundedTtlCache::evictionCount)
+            .tag("cause", "size")
+            .register(meterRegistry);
+        FunctionCounter.builder("payment.status.cache.evictions", statusById, BoundedTtlCache::expirationCount)
+            .tag("cause", "expired")
+            .register(meterRegistry);
+        Gauge.builder("payment.status.cache.size", statusById, BoundedTtlCache::size)
+            .description("Số payment đang có trạng thái trong cache")
+            .register(meterRegistry);
+    }
+
+    public Optional<PaymentStatusResponse> findByPaymentCode(String paymentCode) {
+        return lookup(paymentCode, idByPaymentCode, paymentRepository::findByPaymentCode);
+    }
+
+    public Optional<PaymentStatusResponse> findByTransactionId(String transactionId) {
+        return lookup(transactionId, idByTransactionId, paymentRepository::findByTransactionId);
+    }
+
+    public Optional<PaymentStatusResponse> findById(Integer paymentId) {
+        if (paymentId == null) {
+            return Optional.empty();
+        }
+        Optional<PaymentStatusResponse> cached = statusById.get(paymentId);
+        if (cached.isPresent()) {
+            hits.increment();
+            return cached;
+        }
+        return load(paymentId, paymentRepository::findById);
+    }
+
+    /**
+     * Chạy trước các listener khác (ví dụ subscription SSE) để chúng đọc được status mới
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onStatusChanged(PaymentStatusChangedEvent event) {
+        invalidate(event.paymentId());
+    }
+
+    /**
+     * Bỏ trạng thái đã cache của payment (gọi sau khi status mới đã commit)
+     */
+    public void invalidate(Integer paymentId) {
+        if (paymentId == null) {
+            return;
+        }
+        long stamp = invalidationSequence.incrementAndGet();
+        invalidatedAt.accumulateAndGet(stripe(paymentId), stamp, Math::max);
+        statusById.invalidate(paymentId);
+    }
+
+    private Optional<PaymentStatusResponse> lookup(String key, BoundedTtlCache<String, Integer> ids,
+                                                   Function<String, Optional<Payment>> loader) {
+        if (key == null || key.isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<PaymentStatusResponse> cached = ids.get(key).flatMap(statusById::get);
+        if (cached.isPresent()) {
+            hits.increment();
+            return cached;
+        }
+        return load(key, loader);
+    }
+
+    private <K> Optional<PaymentStatusResponse> load(K key, Function<K, Optional<Payment>> loader) {
+        misses.increment();
+        long startedAt = invalidationSequence.get();
+        Optional<PaymentStatusResponse> loaded = loader.apply(key).map(PaymentStatusCache::toStatus);
+        loaded.ifPresent(status -> put(status, startedAt));
+        return loaded;
+    }
+
+    private void put(PaymentStatusResponse status, long startedAt) {
+        if (invalidatedSince(status.getPaymentId(), startedAt)) {
+            return;
+        }
+        statusById.put(status.getPaymentId(), status);
+        if (status.getPaymentCode() != null) {
+            idByPaymentCode.put(status.getPaymentCode(), status.getPaymentId());
+        }
+        if (status.getTransactionId() != null) {
+            idByTransactionId.put(status.getTransactionId(), status.getPaymentId());
+        }
+        // Một invalidate chen vào giữa lần kiểm tra ở trên và put: bỏ entry vừa ghi
+        if (invalidatedSince(status.getPaymentId(), startedAt)) {
+            statusById.invalidate(status.getPaymentId());
+        }
+    }
+
+    /**
+     * Payment có bị invalidate sau thời điểm startedAt (giá trị invalidationSequence lúc bắt đầu load) không
+     */
+    private boolean invalidatedSince(Integer paymentId, long startedAt) {
+        return invalidatedAt.get(stripe(paymentId)) > startedAt;
+    }
+
+    private static int stripe(Integer paymentId) {
+        int h = paymentId.hashCode();
+        return (h ^ (h >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    private static PaymentStatusResponse toStatus(Payment payment) {
+        return PaymentStatusResponse.builder()
+            .paymentId(payment.getId())
+            .paymentCode(payment.getPaymentCode())
+            .transactionId(payment.getTransactionId())
+            .paymentMethod(payment.getPaymentMethod())
+            .status(payment.getStatus())
+            .amount(payment.getAmount())
+            .expiresAt(payment.getExpiresAt())
+            .paidAt(payment.getPaidAt())
+            .build();
+    }
+}
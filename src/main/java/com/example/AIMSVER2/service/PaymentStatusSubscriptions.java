@@ -0,0 +1,154 @@
+package com.example.AIMSVER2.service;
+
+import com.example.AIMSVER2.dto.PaymentStatusResponse;
+import com.example.AIMSVER2.event.PaymentStatusChangedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Registry các client đang chờ status mới của payment (SSE / long-poll)
+ *
+ * - Subscription chỉ là một listener trong map theo paymentId, không giữ servlet thread hay query DB định kỳ
+ * - Khi nhận PaymentStatusChangedEvent (sau commit) mới đọc status một lần qua PaymentStatusCache
+ *   và gửi cho mọi subscriber của payment đó, trên virtual thread để không chặn thread vừa commit
+ * - Giới hạn tổng số subscription (payment.status-subscription.max-subscribers)
+ */
+@Component
+@Slf4j
+public class PaymentStatusSubscriptions {
+
+    private static final Set<String> FINAL_STATUSES = Set.of("COMPLETED", "CANCELLED", "EXPIRED", "FAILED");
+
+    private final PaymentStatusCache paymentStatusCache;
+    private final int maxSubscribers;
+
+    private final Map<Integer, Set<Subscription>> byPaymentId = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final ExecutorService notifier = Executors.newVirtualThreadPerTaskExecutor();
+
+    public PaymentStatusSubscriptions(PaymentStatusCache paymentStatusCache,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${payment.status-subscription.max-subscribers:10000}") int maxSubscribers) {
+        this.paymentStatusCache = paymentStatusCache;
+        this.maxSubscribers = maxSubscribers;
+        Gauge.builder("payment.status.subscriptions", active, AtomicInteger::get)
+            .description("Số client đang chờ status payment (SSE / long-poll)")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Status không còn thay đổi nữa (client có thể đóng kết nối)
+     */
+    public static boolean isFinal(String status) {
+        return status != null && FINAL_STATUSES.contains(status);
+    }
+
+    /**
+     * Đăng ký nhận status mới của payment; phải gọi Subscription.cancel() khi client ngắt/timeout
+     *
+     * @throws IllegalStateException khi đã đạt giới hạn số subscription
+     */
+    public Subscription subscribe(Integer paymentId, Consumer<PaymentStatusResponse> listener) {
+        if (active.incrementAndGet() > maxSubscribers) {
+            active.decrementAndGet();
+            throw new IllegalStateException("Too many payment status subscriptions (max " + maxSubscribers + ")");
+        }
+        Subscription subscription = new Subscription(paymentId, listener);
+        byPaymentId.compute(paymentId, (id, subscriptions) -> {
+            Set<Subscription> result = subscriptions != null ? subscriptions : ConcurrentHashMap.newKeySet();
+            result.add(subscription);
+            return result;
+        });
+        return subscription;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onStatusChanged(PaymentStatusChangedEvent event) {
+        Integer paymentId = event.paymentId();
+        if (paymentId == null || !byPaymentId.containsKey(paymentId)) {
+            return;
+        }
+        notifier.execute(() -> notifySubscribers(paymentId));
+    }
+
+    public int activeCount() {
+        return active.get();
+    }
+
+    private void notifySubscribers(Integer paymentId) {
+        Set<Subscription> subscriptions = byPaymentId.get(paymentId);
+        if (subscriptions == null || subscriptions.isEmpty()) {
+            return;
+        }
+        paymentStatusCache.findById(paymentId)
+            .ifPresent(status -> subscriptions.forEach(subscription -> subscription.deliver(status)));
+    }
+
+    private void remove(Subscription subscription) {
+        byPaymentId.computeIfPresent(subscription.paymentId, (id, subscriptions) -> {
+            if (subscriptions.remove(subscription)) {
+                active.decrementAndGet();
+            }
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        notifier.shutdownNow();
+    }
+
+    /**
+     * Một client đang chờ status của một payment
+     */
+    public final class Subscription {
+
+        private final Integer paymentId;
+        private final Consumer<PaymentStatusResponse> listener;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private Subscription(Integer paymentId, Consumer<PaymentStatusResponse> listener) {
+            this.paymentId = paymentId;
+            this.listener = listener;
+        }
+
+        /**
+         * Gửi status cho client (cũng dùng để gửi status hiện tại ngay sau khi subscribe)
+         * Lỗi khi gửi (client đã ngắt) thì hủy subscription
+         */
+        public void deliver(PaymentStatusResponse status) {
+            if (cancelled.get()) {
+                return;
+            }
+            try {
+                listener.accept(status);
+            } catch (RuntimeException e) {
+                log.debug("Dropping payment status subscriber for paymentId={}: {}", paymentId, e.getMessage());
+                cancel();
+            }
+        }
+
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                remove(this);
+            }
+        }
+    }
+}
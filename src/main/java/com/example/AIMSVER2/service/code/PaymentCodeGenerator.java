@@ -0,0 +1,13 @@
+package com.example.AIMSVER2.service.code;
+
+/**
+ * Sinh phần định danh của paymentCode (PaymentService ghép thêm prefix theo payment method)
+ * Chọn implementation bằng payment.code.generator (snowflake | random)
+ */
+public interface PaymentCodeGenerator {
+
+    /**
+     * Mã mới, gọi được đồng thời từ nhiều thread
+     */
+    String next();
+}
@@ -0,0 +1,21 @@
+package com.example.AIMSVER2.service.code;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Định dạng mã cũ: 8 ký tự hex ngẫu nhiên (32 bit)
+ * Có thể trùng (xác suất ~50% sau khoảng 77 nghìn mã), chỉ giữ lại để tương thích; mặc định dùng snowflake
+ */
+@Component
+@ConditionalOnProperty(name = "payment.code.generator", havingValue = "random")
+public class RandomPaymentCodeGenerator implements PaymentCodeGenerator {
+
+    @Override
+    public String next() {
+        String hex = Integer.toHexString(ThreadLocalRandom.current().nextInt()).toUpperCase();
+        return "0".repeat(8 - hex.length()) + hex;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.AIMSVER2.service.code;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Sinh mã theo layout kiểu Snowflake, không dùng lock (một AtomicLong + CAS)
+ *
+ * Id 63 bit = [41 bit millis từ EPOCH][10 bit node id][12 bit sequence], mã hóa Crockford base32 đủ 13 ký tự
+ * nên so sánh chuỗi cũng đúng thứ tự thời gian
+ *
+ * Không gian duy nhất:
+ * - Mỗi node: 4096 mã mỗi millisecond; vượt quá thì mượn millisecond kế tiếp (mã vẫn tăng dần, không trùng),
+ *   đồng hồ chạy lùi cũng tiếp tục từ millisecond lớn nhất đã cấp
+ * - Tối đa 1024 node, hai node khác node id không bao giờ sinh trùng mã
+ * - 41 bit millis dùng được khoảng 69 năm kể từ 2025-01-01
+ * Node id phải khác nhau giữa các instance (payment.code.node-id); không cấu hình thì lấy từ hash của hostname,
+ * hai hostname có thể trùng hash nên payment.code.require-node-id=true (bật trong profile prod) bắt buộc cấu hình
+ * node id, thiếu thì không khởi động
+ */
+@Component
+@ConditionalOnProperty(name = "payment.code.generator", havingValue = "snowflake", matchIfMissing = true)
+@Slf4j
+public class SnowflakePaymentCodeGenerator implements PaymentCodeGenerator {
+
+    static final long EPOCH_MILLIS = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    static final int CODE_LENGTH = 13;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private final long nodeBits;
+    private final LongSupplier clock;
+
+    /**
+     * (millis từ EPOCH << SEQUENCE_BITS) | sequence của mã cấp gần nhất
+     */
+    private final AtomicLong lastTimestampAndSequence = new AtomicLong();
+
+    @Autowired
+    public SnowflakePaymentCodeGenerator(@Value("${payment.code.node-id:-1}") int nodeId,
+                                         @Value("${payment.code.require-node-id:false}") boolean requireNodeId) {
+        this(resolveNodeId(nodeId, requireNodeId), System::currentTimeMillis);
+    }
+
+    public SnowflakePaymentCodeGenerator(int nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    SnowflakePaymentCodeGenerator(int nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("payment.code.node-id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.clock = clock;
+    }
+
+    @Override
+    public String next() {
+        return encode(nextId());
+    }
+
+    long nextId() {
+        long now = clock.getAsLong() - EPOCH_MILLIS;
+        long previous;
+        long next;
+        do {
+            previous = lastTimestampAndSequence.get();
+            long candidate = now << SEQUENCE_BITS;
+            // Cùng millisecond, hết sequence hoặc đồng hồ lùi: tăng tiếp từ giá trị cũ (tràn sequence sang millis kế tiếp)
+            next = candidate > previous ? candidate : previous + 1;
+        } while (!lastTimestampAndSequence.compareAndSet(previous, next));
+        long timestamp = next >>> SEQUENCE_BITS;
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | (next & SEQUENCE_MASK);
+    }
+
+    static String encode(long id) {
+        char[] chars = new char[CODE_LENGTH];
+        for (int i = CODE_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    static int nodeIdOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+
+    /**
+     * Node id cấu hình (>= 0) dùng nguyên; -1 thì lấy từ hostname, trừ khi requireNodeId
+     */
+    static int resolveNodeId(int nodeId, boolean requireNodeId) {
+        if (nodeId >= 0) {
+            return nodeId;
+        }
+        if (requireNodeId) {
+            throw new IllegalStateException("payment.code.node-id must be set explicitly (0-" + MAX_NODE_ID
+                + ") when payment.code.require-node-id=true: the hostname-derived node id can collide between instances");
+        }
+        return nodeIdFromHostname();
+    }
+
+    private static int nodeIdFromHostname() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = System.getenv().getOrDefault("HOSTNAME", "localhost");
+        }
+        int nodeId = Math.floorMod(host.hashCode(), MAX_NODE_ID + 1);
+        log.warn("payment.code.node-id is not set, using {} derived from hostname {}; set a distinct node id per instance",
+            nodeId, host);
+        return nodeId;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.AIMSVER2.service.outbox;
+
+import com.example.AIMSVER2.event.PaymentLifecycleEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Sink ghi mỗi event thành một dòng JSON (JSON Lines) vào file local
+ * Cả lô được ghi bằng một lần write rồi force() trước khi relay đánh dấu đã publish
+ */
+@Component
+@ConditionalOnProperty(name = "payment.outbox.sink.file.enabled", havingValue = "true")
+@Slf4j
+public class FilePaymentEventSink implements PaymentEventSink {
+
+    private final JsonMapper jsonMapper;
+    private final Path path;
+
+    public FilePaymentEventSink(JsonMapper jsonMapper,
+                                @Value("${payment.outbox.sink.file.path:data/payment-events.jsonl}") String path) {
+        this.jsonMapper = jsonMapper;
+        this.path = Path.of(path);
+    }
+
+    @Override
+    public String name() {
+        return "file";
+    }
+
+    @Override
+    public synchronized void publish(List<PaymentLifecycleEvent> events) throws IOException {
+        StringBuilder lines = new StringBuilder(events.size() * 200);
+        for (PaymentLifecycleEvent event : events) {
+            lines.append(jsonMapper.writeValueAsString(event)).append('\n');
+        }
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        log.debug("Appended {} payment event(s) to {}", events.size(), path);
+    }
+}
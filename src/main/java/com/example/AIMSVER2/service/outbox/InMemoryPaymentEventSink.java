@@ -0,0 +1,45 @@
+package com.example.AIMSVER2.service.outbox;
+
+import com.example.AIMSVER2.event.PaymentLifecycleEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sink giữ event trong bộ nhớ, dùng cho test và môi trường local
+ * Bỏ qua event có eventId đã nhận (giống cách một consumer thật xử lý event gửi lại)
+ */
+@Component
+@ConditionalOnProperty(name = "payment.outbox.sink.memory.enabled", havingValue = "true")
+public class InMemoryPaymentEventSink implements PaymentEventSink {
+
+    private final List<PaymentLifecycleEvent> events = new ArrayList<>();
+    private final Set<Long> seenEventIds = new HashSet<>();
+
+    @Override
+    public String name() {
+        return "memory";
+    }
+
+    @Override
+    public synchronized void publish(List<PaymentLifecycleEvent> batch) {
+        for (PaymentLifecycleEvent event : batch) {
+            if (seenEventIds.add(event.eventId())) {
+                events.add(event);
+            }
+        }
+    }
+
+    public synchronized List<PaymentLifecycleEvent> events() {
+        return List.copyOf(events);
+    }
+
+    public synchronized void clear() {
+        events.clear();
+        seenEventIds.clear();
+    }
+}
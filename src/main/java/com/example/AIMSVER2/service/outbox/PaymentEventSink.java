@@ -0,0 +1,22 @@
+package com.example.AIMSVER2.service.outbox;
+
+import com.example.AIMSVER2.event.PaymentLifecycleEvent;
+
+import java.util.List;
+
+/**
+ * Đích nhận event từ PaymentOutboxRelay (file, message broker, webhook...)
+ *
+ * - Nhận cả lô theo thứ tự eventId tăng dần
+ * - Ném exception thì cả lô được coi là chưa gửi và sẽ được gửi lại ở lần relay sau,
+ *   nên sink (hoặc consumer phía sau) phải bỏ qua eventId đã nhận
+ */
+public interface PaymentEventSink {
+
+    /**
+     * Tên dùng trong log/metrics
+     */
+    String name();
+
+    void publish(List<PaymentLifecycleEvent> events) throws Exception;
+}
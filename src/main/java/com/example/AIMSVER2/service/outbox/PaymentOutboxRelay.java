@@ -0,0 +1,175 @@
+package com.example.AIMSVER2.service.outbox;
+
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.entity.PaymentOutboxEvent;
+import com.example.AIMSVER2.event.PaymentLifecycleEvent;
+import com.example.AIMSVER2.repository.PaymentOutboxRepository;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Đọc PaymentOutbox theo lô và gửi event cho các PaymentEventSink
+ *
+ * - Không có sink nào được bật thì không chạy (event nằm lại trong outbox)
+ * - Mỗi lô: SELECT ... FOR UPDATE các dòng chưa publish theo id tăng dần, nạp Payment bằng một findAllById,
+ *   gửi cho từng sink rồi đặt publishedAt, tất cả trong một transaction
+ * - Relay ở instance khác chờ lock của lô đang gửi, nên một dòng outbox chỉ được một relay gửi đi
+ * - Sink lỗi: rollback, lô giữ nguyên và được gửi lại ở lần chạy sau (consumer bỏ qua eventId đã nhận)
+ * - Thứ tự được giữ theo từng payment (các lần ghi status của một payment đã tuần tự nhờ lock trên dòng Payment)
+ * - Metrics: số event đã publish, kích thước lô, độ trễ từ lúc ghi outbox tới lúc publish, số lần sink lỗi,
+ *   tuổi event cũ nhất còn chờ
+ */
+@Component
+@Slf4j
+public class PaymentOutboxRelay {
+
+    private final PaymentOutboxRepository paymentOutboxRepository;
+    private final PaymentRepository paymentRepository;
+    private final List<PaymentEventSink> sinks;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final Duration retention;
+
+    private final Counter publishedCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer lagTimer;
+    private final AtomicLong oldestPendingAgeMillis = new AtomicLong();
+
+    public PaymentOutboxRelay(PaymentOutboxRepository paymentOutboxRepository,
+                              PaymentRepository paymentRepository,
+                              ObjectProvider<PaymentEventSink> sinks,
+                              TransactionTemplate transactionTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${payment.outbox.batch-size:200}") int batchSize,
+                              @Value("${payment.outbox.retention:7d}") Duration retention) {
+        this.paymentOutboxRepository = paymentOutboxRepository;
+        this.paymentRepository = paymentRepository;
+        this.sinks = sinks.orderedStream().toList();
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.retention = retention;
+
+        publishedCounter = Counter.builder("payment.outbox.published")
+            .description("Số event payment đã gửi cho các sink")
+            .register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder("payment.outbox.relay.batch")
+            .description("Số event trong mỗi lô relay")
+            .register(meterRegistry);
+        lagTimer = Timer.builder("payment.outbox.lag")
+            .description("Độ trễ từ lúc ghi outbox tới lúc event được publish")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        Gauge.builder("payment.outbox.oldest.pending.age", oldestPendingAgeMillis, AtomicLong::get)
+            .description("Tuổi (ms) của event cũ nhất chưa publish ở lần relay gần nhất")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Gửi hết các event đang chờ (lô đầy thì chạy tiếp lô kế tiếp)
+     *
+     * @return Số event đã publish
+     */
+    @Scheduled(fixedDelayString = "${payment.outbox.relay-interval-ms:500}")
+    public int relay() {
+        if (sinks.isEmpty()) {
+            return 0;
+        }
+        int total = 0;
+        int published;
+        do {
+            try {
+                Integer count = transactionTemplate.execute(status -> relayBatch());
+                published = count == null ? 0 : count;
+            } catch (RuntimeException e) {
+                log.warn("Payment outbox relay failed, batch will be retried: {}", e.getMessage());
+                return total;
+            }
+            total += published;
+        } while (published == batchSize);
+        return total;
+    }
+
+    /**
+     * Xóa các dòng đã publish quá payment.outbox.retention
+     */
+    @Scheduled(fixedDelayString = "${payment.outbox.purge-interval-ms:3600000}",
+        initialDelayString = "${payment.outbox.purge-interval-ms:3600000}")
+    public void purge() {
+        int deleted = paymentOutboxRepository.deletePublishedBefore(LocalDateTime.now().minus(retention));
+        if (deleted > 0) {
+            log.info("Purged {} published payment outbox row(s)", deleted);
+        }
+    }
+
+    private int relayBatch() {
+        List<PaymentOutboxEvent> batch = paymentOutboxRepository.findUnpublishedForUpdate(PageRequest.of(0, batchSize));
+        LocalDateTime now = LocalDateTime.now();
+        if (batch.isEmpty()) {
+            oldestPendingAgeMillis.set(0);
+            return 0;
+        }
+        oldestPendingAgeMillis.set(Duration.between(batch.get(0).getCreatedAt(), now).toMillis());
+
+        Map<Integer, Payment> payments = paymentRepository.findAllById(
+                batch.stream().map(PaymentOutboxEvent::getPaymentId).distinct().toList())
+            .stream()
+            .collect(Collectors.toMap(Payment::getId, Function.identity()));
+        List<PaymentLifecycleEvent> events = batch.stream()
+            .map(row -> toEvent(row, payments.get(row.getPaymentId())))
+            .toList();
+
+        for (PaymentEventSink sink : sinks) {
+            try {
+                sink.publish(events);
+            } catch (Exception e) {
+                Counter.builder("payment.outbox.relay.failures")
+                    .tag("sink", sink.name())
+                    .register(meterRegistry)
+                    .increment();
+                throw new IllegalStateException("Sink " + sink.name() + " rejected " + events.size() + " event(s)", e);
+            }
+        }
+
+        paymentOutboxRepository.markPublished(batch.stream().map(PaymentOutboxEvent::getId).toList(), now);
+        publishedCounter.increment(batch.size());
+        batchSizeSummary.record(batch.size());
+        batch.forEach(row -> lagTimer.record(Duration.between(row.getCreatedAt(), now)));
+        return batch.size();
+    }
+
+    private static PaymentLifecycleEvent toEvent(PaymentOutboxEvent row, Payment payment) {
+        // Payment có thể đã bị xóa sau khi ghi outbox: vẫn gửi event với id/status
+        return new PaymentLifecycleEvent(
+            row.getId(),
+            row.getPaymentId(),
+            payment != null ? payment.getPaymentCode() : null,
+            payment != null ? payment.getOrderId() : null,
+            payment != null ? payment.getPaymentMethod() : null,
+            payment != null ? payment.getAmount() : null,
+            row.getStatus(),
+            row.getCreatedAt()
+        );
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.AIMSVER2.service.outbox;
+
+import com.example.AIMSVER2.entity.PaymentOutboxEvent;
+import com.example.AIMSVER2.event.PaymentStatusChangedEvent;
+import com.example.AIMSVER2.repository.PaymentOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ghi mỗi thay đổi status của Payment vào bảng PaymentOutbox
+ *
+ * - Dùng @EventListener (đồng bộ) nên dòng outbox được ghi trong chính transaction cập nhật status:
+ *   rollback thì cả hai cùng mất, commit thì event chắc chắn còn đó để relay gửi đi
+ * - Mỗi cặp (paymentId, status) chỉ có một dòng (kiểm tra trước + unique key uk_payment_outbox_payment_status)
+ * - Bỏ qua PROCESSING (trạng thái nội bộ lúc đang gọi gateway)
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentOutboxWriter {
+
+    private static final String STATUS_PROCESSING = "PROCESSING";
+
+    private final PaymentOutboxRepository paymentOutboxRepository;
+
+    @EventListener
+    public void onStatusChanged(PaymentStatusChangedEvent event) {
+        if (event.paymentId() == null || event.status() == null || STATUS_PROCESSING.equals(event.status())) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            log.warn("Payment status change outside a transaction, outbox row for paymentId={} is not atomic with it",
+                event.paymentId());
+        }
+        if (paymentOutboxRepository.existsByPaymentIdAndStatus(event.paymentId(), event.status())) {
+            return;
+        }
+        paymentOutboxRepository.save(
+            new PaymentOutboxEvent(null, event.paymentId(), event.status(), LocalDateTime.now(), null));
+    }
+}
@@ -1,17 +1,28 @@
 package com.example.AIMSVER2.service.paypal;
 
 import com.example.AIMSVER2.config.PayPalConfig;
+import com.example.AIMSVER2.service.token.AccessTokenManager;
+import com.example.AIMSVER2.service.token.CachedTokenProvider;
+import com.example.AIMSVER2.service.token.ExpiringToken;
 import com.paypal.api.payments.*;
+import com.paypal.base.Constants;
 import com.paypal.base.rest.APIContext;
+import com.paypal.base.rest.OAuthTokenCredential;
 import com.paypal.base.rest.PayPalRESTException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -19,32 +30,109 @@ import java.util.List;
 public class PayPalService {
     
     private final PayPalConfig payPalConfig;
+    private final AccessTokenManager accessTokenManager;
+    private final MeterRegistry meterRegistry;
     
-    private APIContext getApiContext() {
-        // Log để debug
-        log.info("PayPal Config - ClientId: {}, Mode: {}", 
-            payPalConfig.getClientId() != null ? payPalConfig.getClientId().substring(0, Math.min(10, payPalConfig.getClientId().length())) + "..." : "NULL",
-            payPalConfig.getMode());
-        log.info("PayPal Config - ClientSecret: {}", 
-            payPalConfig.getClientSecret() != null ? "***CONFIGURED***" : "NULL");
-        
+    private CachedTokenProvider<String> tokenProvider;
+    private Map<String, String> sdkConfig;
+    
+    @PostConstruct
+    public void init() {
+        sdkConfig = new HashMap<>();
+        sdkConfig.put(Constants.MODE, payPalConfig.getMode());
+        if (payPalConfig.getEndpoint() != null) {
+            // Endpoint tùy chỉnh (ví dụ stub server khi test), dùng cho cả REST API và OAuth
+            sdkConfig.put("service.EndPoint", payPalConfig.getEndpoint());
+            sdkConfig.put("oauth.EndPoint", payPalConfig.getEndpoint());
+        }
+        tokenProvider = accessTokenManager.register("paypal", this::fetchAccessToken);
+    }
+    
+    /**
+     * Lấy OAuth2 token (grant_type=client_credentials) từ PayPal, chỉ được gọi bởi token provider
+     */
+    private ExpiringToken<String> fetchAccessToken() throws PayPalRESTException {
         if (payPalConfig.getClientId() == null || payPalConfig.getClientSecret() == null) {
             log.error("PayPal credentials are null! ClientId: {}, ClientSecret: {}", 
                 payPalConfig.getClientId(), payPalConfig.getClientSecret());
             throw new IllegalStateException("PayPal credentials are not configured. Please check application.properties. Use format: paypal.client-id and paypal.client-secret");
         }
         
-        // PayPal SDK tự động xử lý OAuth2 token với grant_type=client_credentials
-        // Không cần gửi grant_type manually
-        APIContext apiContext = new APIContext(
+        OAuthTokenCredential credential = new OAuthTokenCredential(
             payPalConfig.getClientId(),
             payPalConfig.getClientSecret(),
-            payPalConfig.getMode()
+            sdkConfig
         );
-        
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        String accessToken;
+        try {
+            accessToken = credential.getAccessToken();
+            outcome = "success";
+        } finally {
+            recordRequest(sample, "token", outcome);
+        }
+        long expiresIn = credential.expiresIn();
+        log.info("PayPal access token obtained, expires in {} seconds", expiresIn);
+        return new ExpiringToken<>(accessToken, Instant.now().plusSeconds(expiresIn));
+    }
+    
+    /**
+     * Tạo APIContext cho một request từ token đang cache
+     * Mỗi request có APIContext riêng (requestId riêng), nhưng dùng chung OAuth token
+     */
+    @SuppressWarnings("deprecation") // SDK 1.14 chỉ nhận token có sẵn qua APIContext(String); constructor (clientId, secret, mode) tự xin token mới
+    private APIContext getApiContext() throws PayPalRESTException {
+        String accessToken;
+        try {
+            accessToken = tokenProvider.get();
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof PayPalRESTException payPalException) {
+                throw payPalException;
+            }
+            throw e;
+        }
+        APIContext apiContext = new APIContext(accessToken);
+        apiContext.setConfigurationMap(sdkConfig);
         return apiContext;
     }
     
+    /**
+     * Gọi PayPal API; nếu token bị từ chối (401) thì lấy token mới và thử lại một lần
+     * Latency (gồm cả lần thử lại) ghi vào timer gateway.request
+     */
+    private <T> T execute(String operation, PayPalCall<T> call) throws PayPalRESTException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result;
+            try {
+                result = call.execute(getApiContext());
+            } catch (PayPalRESTException e) {
+                if (e.getResponsecode() != 401) {
+                    throw e;
+                }
+                log.warn("PayPal access token rejected, fetching a new one");
+                tokenProvider.invalidate();
+                result = call.execute(getApiContext());
+            }
+            outcome = "success";
+            return result;
+        } finally {
+            recordRequest(sample, operation, outcome);
+        }
+    }
+    
+    private void recordRequest(Timer.Sample sample, String operation, String outcome) {
+        sample.stop(meterRegistry.timer("gateway.request",
+            "gateway", "paypal", "operation", operation, "outcome", outcome));
+    }
+    
+    @FunctionalInterface
+    private interface PayPalCall<T> {
+        T execute(APIContext apiContext) throws PayPalRESTException;
+    }
+    
     /**
      * Tạo PayPal payment
      */
@@ -74,7 +162,7 @@ public class PayPalService {
         redirectUrls.setCancelUrl(cancelUrl);
         payment.setRedirectUrls(redirectUrls);
         
-        return payment.create(getApiContext());
+        return execute("create", payment::create);
     }
     
     /**
@@ -87,13 +175,13 @@ public class PayPalService {
         PaymentExecution paymentExecution = new PaymentExecution();
         paymentExecution.setPayerId(payerId);
         
-        return payment.execute(getApiContext(), paymentExecution);
+        return execute("execute", apiContext -> payment.execute(apiContext, paymentExecution));
     }
     
     /**
      * Lấy payment details
      */
     public Payment getPayment(String paymentId) throws PayPalRESTException {
-        return Payment.get(getApiContext(), paymentId);
+        return execute("get", apiContext -> Payment.get(apiContext, paymentId));
     }
 }
@@ -0,0 +1,86 @@
+package com.example.AIMSVER2.service.token;
+
+import com.example.AIMSVER2.resilience.Hedging;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Tạo và quản lý các CachedTokenProvider cho từng gateway (VietQR, PayPal, ...)
+ * Dùng chung một scheduler cho việc refresh token nền
+ * token.hedge-delay > 0: lấy token là idempotent nên được hedge (gửi thêm một request nếu request đầu chậm)
+ */
+@Component
+@Slf4j
+public class AccessTokenManager {
+    
+    private final MeterRegistry meterRegistry;
+    private final Duration refreshAhead;
+    private final Duration safetyMargin;
+    private final Duration hedgeDelay;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    
+    public AccessTokenManager(MeterRegistry meterRegistry,
+                              @Value("${token.refresh-ahead:60s}") Duration refreshAhead,
+                              @Value("${token.safety-margin:10s}") Duration safetyMargin,
+                              @Value("${token.hedge-delay:0s}") Duration hedgeDelay) {
+        this.meterRegistry = meterRegistry;
+        this.refreshAhead = refreshAhead;
+        this.safetyMargin = safetyMargin;
+        this.hedgeDelay = hedgeDelay;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Đăng ký một token provider mới
+     * 
+     * @param name Tên gateway (dùng làm tag cho metrics)
+     * @param fetcher Hàm gọi API lấy token
+     */
+    public <T> CachedTokenProvider<T> register(String name, TokenFetcher<T> fetcher) {
+        log.info("Registering token provider: {} (refresh ahead {}s)", name, refreshAhead.toSeconds());
+        TokenFetcher<T> effective = hedgeDelay.isPositive() ? hedged(name, fetcher) : fetcher;
+        return new CachedTokenProvider<>(name, effective, scheduler, refreshAhead, safetyMargin, meterRegistry);
+    }
+    
+    /**
+     * Mỗi lần thử chạy fetchAsync() trên virtual thread: fetcher blocking chỉ giữ virtual thread,
+     * fetcher non-blocking trả future ngay
+     */
+    private <T> TokenFetcher<T> hedged(String name, TokenFetcher<T> fetcher) {
+        Counter hedges = Counter.builder("token.refresh.hedged").tag("provider", name).register(meterRegistry);
+        return new TokenFetcher<>() {
+            @Override
+            public ExpiringToken<T> fetch() throws Exception {
+                return fetcher.fetch();
+            }
+            
+            @Override
+            public CompletableFuture<ExpiringToken<T>> fetchAsync() {
+                return Hedging.hedge(
+                    () -> CompletableFuture.supplyAsync(fetcher::fetchAsync, hedgeExecutor).thenCompose(future -> future),
+                    hedgeDelay, scheduler, hedges::increment);
+            }
+        };
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        hedgeExecutor.shutdownNow();
+    }
+}
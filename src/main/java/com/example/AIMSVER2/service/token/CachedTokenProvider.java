@@ -0,0 +1,199 @@
+package com.example.AIMSVER2.service.token;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cache một access token dùng chung giữa các thread
+ *
+ * - Single-flight: khi token hết hạn chỉ có đúng một request lấy token, các thread khác chờ kết quả đó
+ * - Refresh nền: token được làm mới trước khi hết hạn để request thread không phải chờ
+ * - getAsync(): cho client non-blocking, refresh qua TokenFetcher.fetchAsync() nên không giữ thread chờ mạng
+ * - Metrics: hit/miss, thời gian refresh, số lần refresh lỗi (tag provider = tên gateway)
+ */
+@Slf4j
+public class CachedTokenProvider<T> {
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final String name;
+    private final TokenFetcher<T> fetcher;
+    private final ScheduledExecutorService scheduler;
+    private final Duration refreshAhead;
+    private final Duration safetyMargin;
+
+    private final AtomicReference<ExpiringToken<T>> current = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<ExpiringToken<T>>> inFlight = new AtomicReference<>();
+    private final AtomicReference<ScheduledFuture<?>> scheduledRefresh = new AtomicReference<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter failures;
+    private final Timer refreshTimer;
+
+    CachedTokenProvider(String name, TokenFetcher<T> fetcher, ScheduledExecutorService scheduler,
+                        Duration refreshAhead, Duration safetyMargin, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.fetcher = fetcher;
+        this.scheduler = scheduler;
+        this.refreshAhead = refreshAhead;
+        this.safetyMargin = safetyMargin;
+        this.hits = Counter.builder("token.cache.requests").tag("provider", name).tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("token.cache.requests").tag("provider", name).tag("result", "miss").register(meterRegistry);
+        this.failures = Counter.builder("token.refresh.failures").tag("provider", name).register(meterRegistry);
+        this.refreshTimer = Timer.builder("token.refresh").tag("provider", name).register(meterRegistry);
+    }
+
+    /**
+     * Lấy token còn hạn; nếu không có thì chờ lần refresh đang chạy (hoặc tự chạy nếu chưa có)
+     */
+    public T get() {
+        ExpiringToken<T> token = current.get();
+        if (isUsable(token)) {
+            hits.increment();
+            return token.value();
+        }
+        misses.increment();
+        try {
+            return refresh().join().value();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to obtain " + name + " token: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Như get() nhưng không chặn: token còn hạn thì trả future đã xong, nếu không thì future của lần refresh
+     */
+    public CompletableFuture<T> getAsync() {
+        ExpiringToken<T> token = current.get();
+        if (isUsable(token)) {
+            hits.increment();
+            return CompletableFuture.completedFuture(token.value());
+        }
+        misses.increment();
+        return refresh().thenApply(ExpiringToken::value);
+    }
+
+    /**
+     * Bỏ token hiện tại (ví dụ khi gateway trả 401), lần get() sau sẽ lấy token mới
+     */
+    public void invalidate() {
+        current.set(null);
+    }
+
+    /**
+     * Single-flight refresh: thread đầu tiên gọi fetcher, các thread sau nhận cùng một future
+     */
+    private CompletableFuture<ExpiringToken<T>> refresh() {
+        while (true) {
+            CompletableFuture<ExpiringToken<T>> existing = inFlight.get();
+            if (existing != null) {
+                return existing;
+            }
+            CompletableFuture<ExpiringToken<T>> mine = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, mine)) {
+                fetchInto(mine);
+                return mine;
+            }
+        }
+    }
+
+    private void fetchInto(CompletableFuture<ExpiringToken<T>> future) {
+        long start = System.nanoTime();
+        CompletableFuture<ExpiringToken<T>> fetched;
+        try {
+            fetched = fetcher.fetchAsync();
+        } catch (RuntimeException e) {
+            fetched = CompletableFuture.failedFuture(e);
+        }
+        fetched.whenComplete((token, error) -> {
+            if (error == null) {
+                refreshTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                current.set(token);
+                scheduleRefresh(token);
+                inFlight.set(null);
+                future.complete(token);
+            } else {
+                failures.increment();
+                inFlight.set(null);
+                future.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+            }
+        });
+    }
+
+    private void backgroundRefresh() {
+        CompletableFuture<ExpiringToken<T>> future = refresh();
+        future.whenComplete((token, error) -> {
+            if (error == null) {
+                return;
+            }
+            ExpiringToken<T> stillCurrent = current.get();
+            if (isUsable(stillCurrent)) {
+                // Token cũ vẫn dùng được: thử lại sau, request thread không bị ảnh hưởng
+                log.warn("Background refresh of {} token failed, retrying in {}s: {}",
+                    name, RETRY_DELAY.toSeconds(), error.getMessage());
+                replaceScheduled(scheduler.schedule(this::backgroundRefresh, RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS));
+            } else {
+                log.error("Background refresh of {} token failed: {}", name, error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Hẹn refresh nền theo refreshDelayMillis
+     */
+    private void scheduleRefresh(ExpiringToken<T> token) {
+        if (token.expiresAt() == null) {
+            return;
+        }
+        long lifetimeMillis = Duration.between(Instant.now(), token.expiresAt()).toMillis();
+        long delayMillis = refreshDelayMillis(lifetimeMillis, refreshAhead.toMillis(), safetyMargin.toMillis());
+        if (delayMillis <= 0) {
+            return;
+        }
+        replaceScheduled(scheduler.schedule(this::backgroundRefresh, delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Thời điểm refresh nền (tính từ lúc nhận token): sớm hơn trong hai mốc 80% thời gian sống và
+     * hết hạn - refreshAhead (bỏ mốc sau nếu token sống ngắn hơn refreshAhead), nhưng không muộn hơn
+     * hết hạn - safetyMargin, lúc get() bắt đầu coi token là hết hạn và tự refresh trên request thread
+     *
+     * @return <= 0 nếu token không còn thời gian dùng được (lần get() sau sẽ refresh)
+     */
+    static long refreshDelayMillis(long lifetimeMillis, long refreshAheadMillis, long safetyMarginMillis) {
+        long delayMillis = lifetimeMillis * 8 / 10;
+        if (lifetimeMillis > refreshAheadMillis) {
+            delayMillis = Math.min(delayMillis, lifetimeMillis - refreshAheadMillis);
+        }
+        return Math.min(delayMillis, lifetimeMillis - safetyMarginMillis);
+    }
+
+    private void replaceScheduled(ScheduledFuture<?> next) {
+        ScheduledFuture<?> previous = scheduledRefresh.getAndSet(next);
+        if (previous != null && previous != next) {
+            previous.cancel(false);
+        }
+    }
+
+    private boolean isUsable(ExpiringToken<T> token) {
+        if (token == null) {
+            return false;
+        }
+        return token.expiresAt() == null || Instant.now().isBefore(token.expiresAt().minus(safetyMargin));
+    }
+}
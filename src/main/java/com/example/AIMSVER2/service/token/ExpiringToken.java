@@ -0,0 +1,9 @@
+package com.example.AIMSVER2.service.token;
+
+import java.time.Instant;
+
+/**
+ * Token (hoặc credential bất kỳ) kèm thời điểm hết hạn
+ */
+public record ExpiringToken<T>(T value, Instant expiresAt) {
+}
@@ -0,0 +1,23 @@
+package com.example.AIMSVER2.service.token;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Gọi API của gateway để lấy token mới
+ */
+@FunctionalInterface
+public interface TokenFetcher<T> {
+    ExpiringToken<T> fetch() throws Exception;
+
+    /**
+     * Lấy token không chặn thread gọi; mặc định chạy fetch() ngay trên thread hiện tại
+     * Gateway có client non-blocking override để refresh không giữ thread trong lúc chờ mạng
+     */
+    default CompletableFuture<ExpiringToken<T>> fetchAsync() {
+        try {
+            return CompletableFuture.completedFuture(fetch());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import com.example.AIMSVER2.repository.projection.PaymentMatchView;
+import com.example.AIMSVER2.util.TransactionHooks;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index in-memory cho các payment VIETQR đang ở trạng thái PENDING
+ * Key theo bucket số tiền (VND) và content đã chuẩn hóa, để callback không phải quét toàn bộ bảng Payment
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PendingVietQRPaymentIndex {
+
+    /**
+     * Số bucket lân cận cần xét khi lookup (sai số 0.01 USD + làm tròn có thể lệch sang bucket bên cạnh)
+     */
+    private static final int NEIGHBOUR_BUCKETS = 2;
+
+    private final PaymentRepository paymentRepository;
+    private final VietQRConfig vietQRConfig;
+
+    private final Map<Integer, PendingEntry> entries = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Integer>> byAmountBucket = new ConcurrentHashMap<>();
+    private final Map<String, Set<Integer>> byContentKey = new ConcurrentHashMap<>();
+
+    private volatile boolean warm = false;
+
+    /**
+     * Nạp các payment VIETQR PENDING hiện có khi ứng dụng khởi động
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        List<PaymentMatchView> pendingPayments =
+            paymentRepository.findMatchViewsByPaymentMethodAndStatus("VIETQR", "PENDING");
+        pendingPayments.forEach(p -> addNow(p.getId(), p.getAmount(), p.getExpectedAmountVnd(),
+            p.getDescription(), p.getContentKey(), p.getExpiresAt()));
+        warm = true;
+        log.info("Pending VietQR payment index warmed up with {} payment(s)", entries.size());
+    }
+
+    /**
+     * Thêm payment vào index (chỉ nhận payment VIETQR đang PENDING)
+     * Nếu đang trong transaction thì chỉ thêm sau khi commit
+     */
+    public void add(Payment payment) {
+        TransactionHooks.afterCommit(() -> addNow(payment));
+    }
+
+    /**
+     * Xóa payment khỏi index khi rời trạng thái PENDING
+     * Nếu đang trong transaction thì chỉ xóa sau khi commit
+     */
+    public void remove(Integer paymentId) {
+        if (paymentId == null) {
+            return;
+        }
+        TransactionHooks.afterCommit(() -> removeNow(paymentId));
+    }
+
+    /**
+     * Tìm các paymentId có thể khớp với callback
+     * Payment có content khớp chính xác được xếp trước, trong mỗi nhóm sắp xếp theo id tăng dần
+     */
+    public List<Integer> findCandidates(long callbackAmountVnd, String callbackContent, LocalDateTime now) {
+        String contentKey = VietQRMatchKeys.normalizeContent(callbackContent);
+        Set<Integer> sameContent = contentKey.isEmpty() ? Set.of() : byContentKey.getOrDefault(contentKey, Set.of());
+        long toleranceVnd = VietQRMatchKeys.toleranceVnd(usdToVndRate());
+
+        List<Integer> contentMatched = new ArrayList<>();
+        List<Integer> amountOnly = new ArrayList<>();
+        long bucket = bucketOf(callbackAmountVnd);
+        for (long b = bucket - NEIGHBOUR_BUCKETS; b <= bucket + NEIGHBOUR_BUCKETS; b++) {
+            Set<Integer> ids = byAmountBucket.get(b);
+            if (ids == null) {
+                continue;
+            }
+            for (Integer id : ids) {
+                PendingEntry entry = entries.get(id);
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.isExpired(now)) {
+                    removeNow(id);
+                    continue;
+                }
+                if (!VietQRMatchKeys.amountMatches(callbackAmountVnd, entry.amountVnd(), toleranceVnd)) {
+                    continue;
+                }
+                if (sameContent.contains(id)) {
+                    contentMatched.add(id);
+                } else {
+                    amountOnly.add(id);
+                }
+            }
+        }
+
+        contentMatched.sort(null);
+        amountOnly.sort(null);
+        contentMatched.addAll(amountOnly);
+        return contentMatched;
+    }
+
+    public boolean isWarm() {
+        return warm;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void addNow(Payment payment) {
+        if (payment == null || payment.getId() == null) {
+            return;
+        }
+        if (!"VIETQR".equals(payment.getPaymentMethod()) || !"PENDING".equals(payment.getStatus())) {
+            return;
+        }
+        addNow(payment.getId(), payment.getAmount(), payment.getExpectedAmountVnd(),
+            payment.getDescription(), payment.getContentKey(), payment.getExpiresAt());
+    }
+
+    /**
+     * Ưu tiên key đã tính sẵn trên Payment; payment cũ chưa có key thì tính từ amount/description
+     */
+    private void addNow(Integer paymentId, BigDecimal amountUsd, Long expectedAmountVnd,
+                        String description, String contentKey, LocalDateTime expiresAt) {
+        if (paymentId == null || (expectedAmountVnd == null && amountUsd == null)) {
+            return;
+        }
+
+        long amountVnd = expectedAmountVnd != null
+            ? expectedAmountVnd
+            : VietQRMatchKeys.toVnd(amountUsd, usdToVndRate());
+        PendingEntry entry = new PendingEntry(
+            paymentId,
+            amountVnd,
+            bucketOf(amountVnd),
+            contentKey != null ? contentKey : VietQRMatchKeys.paymentContentKey(description),
+            expiresAt
+        );
+
+        PendingEntry previous = entries.put(entry.paymentId(), entry);
+        if (previous != null) {
+            unlink(previous);
+        }
+        byAmountBucket.computeIfAbsent(entry.amountBucket(), k -> ConcurrentHashMap.newKeySet()).add(entry.paymentId());
+        if (!entry.contentKey().isEmpty()) {
+            byContentKey.computeIfAbsent(entry.contentKey(), k -> ConcurrentHashMap.newKeySet()).add(entry.paymentId());
+        }
+    }
+
+    private boolean removeNow(Integer paymentId) {
+        PendingEntry entry = entries.remove(paymentId);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    private void unlink(PendingEntry entry) {
+        byAmountBucket.computeIfPresent(entry.amountBucket(), (k, ids) -> {
+            ids.remove(entry.paymentId());
+            return ids.isEmpty() ? null : ids;
+        });
+        if (!entry.contentKey().isEmpty()) {
+            byContentKey.computeIfPresent(entry.contentKey(), (k, ids) -> {
+                ids.remove(entry.paymentId());
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /**
+     * Bucket rộng bằng sai số cho phép khi so amount (0.01 USD quy ra VND)
+     */
+    private long bucketOf(long amountVnd) {
+        return Math.floorDiv(amountVnd, VietQRMatchKeys.toleranceVnd(usdToVndRate()));
+    }
+
+    private double usdToVndRate() {
+        return VietQRMatchKeys.effectiveRate(vietQRConfig.getUsdToVndRate());
+    }
+
+    private record PendingEntry(Integer paymentId, long amountVnd, long amountBucket, String contentKey,
+                                LocalDateTime expiresAt) {
+        boolean isExpired(LocalDateTime now) {
+            return expiresAt != null && expiresAt.isBefore(now);
+        }
+    }
+}
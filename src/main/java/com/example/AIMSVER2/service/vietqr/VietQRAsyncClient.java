@@ -0,0 +1,139 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import com.example.AIMSVER2.config.HttpClientPoolConfig;
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRGenerateRequest;
+import com.example.AIMSVER2.dto.vietqr.VietQRGenerateResponse;
+import com.example.AIMSVER2.dto.vietqr.VietQRTokenResponse;
+import com.example.AIMSVER2.service.token.ExpiringToken;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Client VietQR non-blocking trên java.net.http.HttpClient (bật bằng vietqr.client=async)
+ *
+ * - Cùng endpoint, header và DTO với VietQRService (bản RestTemplate), nhưng trả CompletableFuture:
+ *   không có thread nào bị giữ trong lúc chờ gateway, kết quả được xử lý trên executor của HttpClient
+ * - Không tự cache token: VietQRService dùng fetchToken() làm TokenFetcher.fetchAsync() cho token provider chung
+ * - Timeout lấy từ http-client.connect-timeout / read-timeout như pool của RestTemplate
+ * - Metrics: cùng timer gateway.request (gateway=vietqr, operation, outcome) với client blocking
+ */
+@Component
+@ConditionalOnProperty(name = "vietqr.client", havingValue = "async")
+@Slf4j
+public class VietQRAsyncClient {
+
+    private final VietQRConfig vietQRConfig;
+    private final JsonMapper jsonMapper;
+    private final MeterRegistry meterRegistry;
+    private final Duration readTimeout;
+    private final HttpClient httpClient;
+
+    public VietQRAsyncClient(VietQRConfig vietQRConfig,
+                             HttpClientPoolConfig httpClientPoolConfig,
+                             JsonMapper jsonMapper,
+                             MeterRegistry meterRegistry) {
+        this.vietQRConfig = vietQRConfig;
+        this.jsonMapper = jsonMapper;
+        this.meterRegistry = meterRegistry;
+        this.readTimeout = httpClientPoolConfig.getReadTimeout();
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(httpClientPoolConfig.getConnectTimeout())
+            .build();
+        log.info("VietQR async client enabled - Token API: {}, QR API: {}",
+            vietQRConfig.getTokenApiUrl(), vietQRConfig.getQrApiUrl());
+    }
+
+    /**
+     * Gọi /token_generate (grant_type=client_credentials, Basic Auth bằng client-id/client-secret)
+     */
+    public CompletableFuture<ExpiringToken<String>> fetchToken() {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(vietQRConfig.getTokenApiUrl() + "/token_generate"))
+            .timeout(readTimeout)
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString("grant_type=client_credentials"));
+        if (vietQRConfig.getClientId() != null && vietQRConfig.getClientSecret() != null) {
+            String auth = Base64.getEncoder().encodeToString(
+                (vietQRConfig.getClientId() + ":" + vietQRConfig.getClientSecret()).getBytes(StandardCharsets.UTF_8));
+            request.header("Authorization", "Basic " + auth);
+        }
+
+        return send("token", request.build(), VietQRTokenResponse.class)
+            .thenApply(tokenResponse -> {
+                log.info("VietQR token obtained successfully, expires in {} seconds", tokenResponse.getExpiresIn());
+                return new ExpiringToken<>(
+                    tokenResponse.getAccessToken(),
+                    Instant.now().plusSeconds(tokenResponse.getExpiresIn())
+                );
+            });
+    }
+
+    /**
+     * Gọi /qr/generate-customer với token đã có
+     *
+     * @param amount Số tiền VND (số nguyên)
+     * @param content Nội dung thanh toán
+     */
+    public CompletableFuture<VietQRGenerateResponse> generateQRCode(long amount, String content, String accessToken) {
+        // Không gửi orderId (xem VietQRService.generateQRCode)
+        VietQRGenerateRequest body = VietQRGenerateRequest.builder()
+            .bankCode(vietQRConfig.getBankCode())
+            .bankAccount(vietQRConfig.getBankAccount())
+            .userBankName(vietQRConfig.getUserBankName())
+            .amount(String.valueOf(amount))
+            .content(content)
+            .build();
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(vietQRConfig.getQrApiUrl() + "/qr/generate-customer"))
+            .timeout(readTimeout)
+            .header("Content-Type", "application/json")
+            .header("Authorization", "Bearer " + accessToken)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(jsonMapper.writeValueAsBytes(body)))
+            .build();
+
+        return send("generate-qr", request, VietQRGenerateResponse.class);
+    }
+
+    /**
+     * Gửi request, đọc body JSON khi status 200; status khác hoặc body rỗng thì future lỗi (4xx: HttpClientErrorException)
+     */
+    private <T> CompletableFuture<T> send(String operation, HttpRequest request, Class<T> responseType) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(response -> readBody(operation, response, responseType))
+            .whenComplete((result, error) -> sample.stop(meterRegistry.timer("gateway.request",
+                "gateway", "vietqr", "operation", operation, "outcome", error == null ? "success" : "error")));
+    }
+
+    private <T> T readBody(String operation, HttpResponse<byte[]> response, Class<T> responseType) {
+        byte[] body = response.body();
+        if (response.statusCode() != 200 || body == null || body.length == 0) {
+            if (log.isDebugEnabled() && body != null) {
+                log.debug("VietQR {} response body: {}", operation, new String(body, StandardCharsets.UTF_8));
+            }
+            if (response.statusCode() >= 400 && response.statusCode() < 500) {
+                // Giữ status để GatewayResilience phân biệt request sai (4xx) với gateway lỗi
+                throw new HttpClientErrorException(HttpStatusCode.valueOf(response.statusCode()),
+                    "VietQR " + operation + " failed: HTTP " + response.statusCode());
+            }
+            throw new RuntimeException("VietQR " + operation + " failed: HTTP " + response.statusCode());
+        }
+        return jsonMapper.readValue(body, responseType);
+    }
+}
@@ -3,28 +3,78 @@ package com.example.AIMSVER2.service.vietqr;
 import com.example.AIMSVER2.config.VietQRConfig;
 import com.example.AIMSVER2.dto.vietqr.VietQRCallbackRequest;
 import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.event.PaymentStatusChangedEvent;
 import com.example.AIMSVER2.repository.PaymentRepository;
+import com.example.AIMSVER2.repository.projection.PaymentMatchView;
+import com.example.AIMSVER2.util.RateLimitedLogger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Service xử lý callback từ VietQR khi có giao dịch thanh toán
+ *
+ * Log: mỗi callback một dòng INFO tóm tắt (key-value, ra JSON khi bật structured logging),
+ * chi tiết từng bước ở DEBUG (có guard), cảnh báo dữ liệu sai/không khớp qua RateLimitedLogger
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class VietQRCallbackService {
     
+    private static final RateLimitedLogger throttledLog = new RateLimitedLogger(log, 10, Duration.ofMinutes(1));
+    
     private final PaymentRepository paymentRepository;
     private final VietQRConfig vietQRConfig;
+    private final PendingVietQRPaymentIndex pendingPaymentIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    
+    /**
+     * Payment còn PENDING trong grace period sau expiresAt (xem PaymentExpirySweeper) vẫn là candidate
+     */
+    @Value("${payment.expiry.grace-period:5m}")
+    private Duration expiryGracePeriod = Duration.ofMinutes(5);
+    
+    private final Map<MatchTier, Counter> matchCounters = new EnumMap<>(MatchTier.class);
+    private DistributionSummary orderIdCandidates;
+    private DistributionSummary amountContentCandidates;
+    
+    @PostConstruct
+    public void init() {
+        for (MatchTier tier : MatchTier.values()) {
+            matchCounters.put(tier, Counter.builder("vietqr.callback.match")
+                .description("Kết quả tìm payment cho callback theo bước lookup")
+                .tag("tier", tier.tag)
+                .register(meterRegistry));
+        }
+        orderIdCandidates = candidateSummary(MatchTier.ORDER_ID);
+        amountContentCandidates = candidateSummary(MatchTier.AMOUNT_CONTENT);
+    }
+    
+    private DistributionSummary candidateSummary(MatchTier tier) {
+        return DistributionSummary.builder("vietqr.callback.match.candidates")
+            .description("Số payment phải so khớp cho mỗi callback")
+            .tag("tier", tier.tag)
+            .register(meterRegistry);
+    }
     
     /**
      * Xử lý callback từ VietQR khi có giao dịch thanh toán thành công
@@ -40,52 +90,65 @@ public class VietQRCallbackService {
             return false;
         }
         
-        log.info("Received VietQR callback: bankAccount={}, amount={}, content={}, transType={}, bankCode={}, transactionId={}, referenceNumber={}, transactionTime={}, orderId={}",
-            callbackRequest.getBankAccount() != null ? callbackRequest.getBankAccount() : "NULL",
-            callbackRequest.getAmount() != null ? callbackRequest.getAmount() : "NULL",
-            callbackRequest.getContent() != null ? callbackRequest.getContent() : "NULL",
-            callbackRequest.getTransType() != null ? callbackRequest.getTransType() : "NULL",
-            callbackRequest.getBankCode() != null ? callbackRequest.getBankCode() : "NULL",
-            callbackRequest.getTransactionId() != null ? callbackRequest.getTransactionId() : "NULL",
-            callbackRequest.getReferenceNumber() != null ? callbackRequest.getReferenceNumber() : "NULL",
-            callbackRequest.getTransactionTime() != null ? callbackRequest.getTransactionTime() : "NULL",
-            callbackRequest.getOrderId() != null ? callbackRequest.getOrderId() : "NULL");
+        long startNanos = System.nanoTime();
+        if (log.isDebugEnabled()) {
+            log.debug("Received VietQR callback: bankAccount={}, amount={}, content={}, transType={}, bankCode={}, transactionId={}, referenceNumber={}, transactionTime={}, orderId={}",
+                callbackRequest.getBankAccount(), callbackRequest.getAmount(), callbackRequest.getContent(),
+                callbackRequest.getTransType(), callbackRequest.getBankCode(), callbackRequest.getTransactionId(),
+                callbackRequest.getReferenceNumber(), callbackRequest.getTransactionTime(), callbackRequest.getOrderId());
+        }
         
         // Tìm payment dựa trên các thông tin
-        Optional<Payment> paymentOpt = findPaymentByCallback(callbackRequest);
-        
-        if (paymentOpt.isEmpty()) {
-            log.warn("Payment not found for callback: bankAccount={}, amount={}, content={}, bankCode={}",
-                callbackRequest.getBankAccount(),
-                callbackRequest.getAmount(),
-                callbackRequest.getContent(),
-                callbackRequest.getBankCode());
-            
-            // Log tất cả payments VIETQR PENDING để debug
-            List<Payment> allPendingPayments = paymentRepository.findAll().stream()
-                .filter(p -> "VIETQR".equals(p.getPaymentMethod()))
-                .filter(p -> "PENDING".equals(p.getStatus()))
-                .toList();
-            
-            log.warn("Available PENDING VIETQR payments in DB: {}", allPendingPayments.size());
-            allPendingPayments.forEach(p -> log.warn("  - Payment ID: {}, Amount: {} USD, Description: {}, TransactionId: {}",
-                p.getId(), p.getAmount(), p.getDescription(), p.getTransactionId()));
-            
+        Match match = findMatch(callbackRequest);
+        
+        if (match.tier() == MatchTier.AMBIGUOUS) {
+            logSummary(callbackRequest, "ambiguous", match, startNanos);
+            return false;
+        }
+        
+        if (match.payment().isEmpty()) {
+            throttledLog.warn("callback-not-found", "Payment not found for callback: bankAccount={}, amount={}, bankCode={}",
+                callbackRequest.getBankAccount(), callbackRequest.getAmount(), callbackRequest.getBankCode());
+            if (log.isDebugEnabled()) {
+                // Chỉ đếm số payment VIETQR PENDING khi cần debug (không load toàn bộ bảng)
+                log.debug("Available PENDING VIETQR payments in DB: {}, indexed: {}",
+                    paymentRepository.countByPaymentMethodAndStatus("VIETQR", "PENDING"),
+                    pendingPaymentIndex.size());
+            }
+            logSummary(callbackRequest, "notFound", match, startNanos);
             return false;
         }
         
-        Payment payment = paymentOpt.get();
+        Payment payment = match.payment().get();
         
         // Đối chiếu thông tin
         if (!validatePayment(callbackRequest, payment)) {
-            log.warn("Payment validation failed for paymentId={}, transactionId={}",
+            throttledLog.warn("callback-invalid", "Payment validation failed for paymentId={}, transactionId={}",
                 payment.getId(), payment.getTransactionId());
+            logSummary(callbackRequest, "invalid", match, startNanos);
             return false;
         }
         
-        // Chỉ xử lý nếu payment đang ở trạng thái PENDING
-        if (!"PENDING".equals(payment.getStatus())) {
-            log.info("Payment already processed: paymentId={}, status={}", payment.getId(), payment.getStatus());
+        // Tiền về sau khi sweeper đã expire payment (quá cả grace period): tiền đã bị trừ nên vẫn hoàn tất payment
+        String outcome = "completed";
+        if ("EXPIRED".equals(payment.getStatus())) {
+            log.warn("Completing VietQR payment received after expiry: paymentId={}, expiresAt={}, transactionId={}",
+                payment.getId(), payment.getExpiresAt(), callbackRequest.getTransactionId());
+            latePaymentCounter(payment.getStatus(), "completed").increment();
+            outcome = "completedLate";
+        } else if (!"PENDING".equals(payment.getStatus())) {
+            if (!"COMPLETED".equals(payment.getStatus())) {
+                // CANCELLED / FAILED: không tự mở lại payment, ghi lại để đối soát / hoàn tiền
+                log.warn("VietQR payment received for {} payment, needs reconcile/refund: paymentId={}, amount={} VND, transactionId={}",
+                    payment.getStatus(), payment.getId(), callbackRequest.getAmount(), callbackRequest.getTransactionId());
+                latePaymentCounter(payment.getStatus(), "reconcile").increment();
+                pendingPaymentIndex.remove(payment.getId());
+                logSummary(callbackRequest, "needsReconcile", match, startNanos);
+                return true; // Gateway gửi lại cũng không đổi kết quả
+            }
+            log.debug("Payment already processed: paymentId={}, status={}", payment.getId(), payment.getStatus());
+            pendingPaymentIndex.remove(payment.getId());
+            logSummary(callbackRequest, "alreadyProcessed", match, startNanos);
             return true; // Trả về true vì payment đã được xử lý rồi
         }
         
@@ -93,26 +156,57 @@ public class VietQRCallbackService {
         payment.setStatus("COMPLETED");
         payment.setPaidAt(LocalDateTime.now());
         paymentRepository.save(payment);
+        pendingPaymentIndex.remove(payment.getId());
+        eventPublisher.publishEvent(new PaymentStatusChangedEvent(payment.getId(), payment.getStatus()));
         
-        log.info("Payment updated successfully: paymentId={}, paymentCode={}, orderId={}, amount={}, status=COMPLETED",
-            payment.getId(),
-            payment.getPaymentCode() != null ? payment.getPaymentCode() : "NULL",
-            payment.getOrder() != null ? payment.getOrder().getId() : "NULL",
-            payment.getAmount());
-        
+        logSummary(callbackRequest, outcome, match, startNanos);
         return true;
     }
     
+    /**
+     * Tiền về cho payment không còn PENDING: action=completed (payment EXPIRED được hoàn tất muộn)
+     * hoặc reconcile (CANCELLED/FAILED, cần đối soát / hoàn tiền)
+     */
+    private Counter latePaymentCounter(String status, String action) {
+        return meterRegistry.counter("vietqr.callback.late.payments", "status", status.toLowerCase(), "action", action);
+    }
+    
+    /**
+     * Một dòng tóm tắt cho mỗi callback; các field đi dưới dạng key-value để structured logging (JSON) tách thành field riêng
+     */
+    private void logSummary(VietQRCallbackRequest request, String outcome, Match match, long startNanos) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        Payment payment = match.payment().orElse(null);
+        log.atInfo()
+            .addKeyValue("outcome", outcome)
+            .addKeyValue("tier", match.tier().tag)
+            .addKeyValue("paymentId", payment != null ? payment.getId() : null)
+            .addKeyValue("orderId", payment != null ? payment.getOrderId() : null)
+            .addKeyValue("transactionId", request.getTransactionId())
+            .addKeyValue("referenceNumber", request.getReferenceNumber())
+            .addKeyValue("bankCode", request.getBankCode())
+            .addKeyValue("amountVnd", request.getAmount())
+            .addKeyValue("durationMicros", (System.nanoTime() - startNanos) / 1_000)
+            .log("VietQR callback {}", outcome);
+    }
+    
     /**
      * Tìm payment dựa trên thông tin từ callback
+     * (package-private để benchmark đo riêng phần matching)
      */
-    private Optional<Payment> findPaymentByCallback(VietQRCallbackRequest callbackRequest) {
+    Optional<Payment> findPaymentByCallback(VietQRCallbackRequest callbackRequest) {
+        return findMatch(callbackRequest).payment();
+    }
+    
+    private Match findMatch(VietQRCallbackRequest callbackRequest) {
         // Ưu tiên tìm theo transactionId hoặc transactionRefId
         if (callbackRequest.getTransactionId() != null && !callbackRequest.getTransactionId().isEmpty()) {
             Optional<Payment> byTransactionId = paymentRepository.findByTransactionId(callbackRequest.getTransactionId());
             if (byTransactionId.isPresent()) {
-                log.info("Found payment by transactionId: {}", callbackRequest.getTransactionId());
-                return byTransactionId;
+                log.debug("Found payment by transactionId: {}", callbackRequest.getTransactionId());
+                return matched(MatchTier.TRANSACTION_ID, byTransactionId);
             }
         }
         
@@ -120,8 +214,20 @@ public class VietQRCallbackService {
         if (callbackRequest.getReferenceNumber() != null && !callbackRequest.getReferenceNumber().isEmpty()) {
             Optional<Payment> byReferenceNumber = paymentRepository.findByTransactionId(callbackRequest.getReferenceNumber());
             if (byReferenceNumber.isPresent()) {
-                log.info("Found payment by referenceNumber: {}", callbackRequest.getReferenceNumber());
-                return byReferenceNumber;
+                log.debug("Found payment by referenceNumber: {}", callbackRequest.getReferenceNumber());
+                return matched(MatchTier.REFERENCE_NUMBER, byReferenceNumber);
+            }
+        }
+        
+        // QR dựng local: mã tham chiếu "LQR..." trong nội dung chuyển khoản chính là transactionId của payment
+        if (callbackRequest.getContent() != null && !callbackRequest.getContent().isEmpty()) {
+            String reference = VietQRMatchKeys.localReference(VietQRMatchKeys.callbackContentKey(callbackRequest.getContent()));
+            if (reference != null) {
+                Optional<Payment> byReference = paymentRepository.findByTransactionId(reference);
+                if (byReference.isPresent()) {
+                    log.debug("Found payment by content reference: {}", reference);
+                    return matched(MatchTier.CONTENT_REFERENCE, byReference);
+                }
             }
         }
         
@@ -133,82 +239,135 @@ public class VietQRCallbackService {
                     orderId, "VIETQR", "PENDING");
                 
                 if (!payments.isEmpty()) {
-                    log.info("Found {} payment(s) by orderId: {}", payments.size(), orderId);
+                    log.debug("Found {} payment(s) by orderId: {}", payments.size(), orderId);
+                    orderIdCandidates.record(payments.size());
                     // Tìm payment khớp nhất với amount và content
-                    BigDecimal amountVnd = callbackRequest.getAmount() != null ? 
-                        BigDecimal.valueOf(callbackRequest.getAmount()) : null;
-                    BigDecimal amountInUSD = convertVndToUsd(amountVnd);
-                    return payments.stream()
-                        .filter(p -> p.getAmount() != null && amountVnd != null && matchesAmount(amountVnd, p.getAmount(), amountInUSD))
-                        .filter(p -> p.getDescription() != null && matchesContent(callbackRequest.getContent(), p.getDescription()))
-                        .findFirst();
+                    if (callbackRequest.getAmount() == null) {
+                        return notFound();
+                    }
+                    long callbackAmountVnd = callbackRequest.getAmount();
+                    long toleranceVnd = toleranceVnd();
+                    String callbackKey = VietQRMatchKeys.callbackContentKey(callbackRequest.getContent());
+                    for (Payment payment : payments) {
+                        if (matchesAmount(callbackAmountVnd, payment, toleranceVnd) && matchesContent(callbackKey, payment)) {
+                            return matched(MatchTier.ORDER_ID, Optional.of(payment));
+                        }
+                    }
+                    return notFound();
                 }
             } catch (NumberFormatException e) {
-                log.warn("Invalid orderId format: {}", callbackRequest.getOrderId());
+                throttledLog.warn("callback-invalid-order-id", "Invalid orderId format: {}", callbackRequest.getOrderId());
             }
         }
         
-        // Tìm theo amount và content (convert VND sang USD để so sánh)
+        // Tìm theo amount (VND) và content
         // Validate required fields trước
         if (callbackRequest.getAmount() == null) {
-            log.warn("Amount is null in callback request");
-            return Optional.empty();
+            throttledLog.warn("callback-missing-amount", "Amount is null in callback request");
+            return notFound();
         }
         
         if (callbackRequest.getContent() == null || callbackRequest.getContent().isEmpty()) {
-            log.warn("Content is null or empty in callback request");
-            return Optional.empty();
+            throttledLog.warn("callback-missing-content", "Content is null or empty in callback request");
+            return notFound();
+        }
+        
+        // Tính các khóa so khớp một lần cho cả callback, mỗi candidate chỉ còn so long + String
+        long callbackAmountVnd = callbackRequest.getAmount();
+        long toleranceVnd = toleranceVnd();
+        String callbackKey = VietQRMatchKeys.callbackContentKey(callbackRequest.getContent());
+        if (log.isDebugEnabled()) {
+            log.debug("Searching payments: amount={} VND, contentKey={}, bankAccount={}, bankCode={}",
+                callbackAmountVnd, callbackKey, callbackRequest.getBankAccount(), callbackRequest.getBankCode());
+        }
+        
+        List<Payment> candidates = findPendingCandidates(callbackAmountVnd, callbackKey, toleranceVnd);
+        amountContentCandidates.record(candidates.size());
+        List<Payment> allPayments = new ArrayList<>(candidates.size());
+        for (Payment payment : candidates) {
+            if (matchesAmount(callbackAmountVnd, payment, toleranceVnd) && matchesContent(callbackKey, payment)) {
+                allPayments.add(payment);
+            }
         }
         
-        // Convert Long amount to BigDecimal for comparison
-        BigDecimal amountVnd = callbackRequest.getAmount() != null ? 
-            BigDecimal.valueOf(callbackRequest.getAmount()) : null;
-        BigDecimal amountInUSD = convertVndToUsd(amountVnd);
-        log.info("Searching payments: amount={} VND ({} USD), content={}, bankAccount={}, bankCode={}",
-            callbackRequest.getAmount(), amountInUSD, 
-            callbackRequest.getContent() != null ? callbackRequest.getContent() : "NULL",
-            callbackRequest.getBankAccount() != null ? callbackRequest.getBankAccount() : "NULL",
-            callbackRequest.getBankCode() != null ? callbackRequest.getBankCode() : "NULL");
-        
-        List<Payment> allPayments = paymentRepository.findAll().stream()
-            .filter(p -> p.getPaymentMethod() != null && "VIETQR".equals(p.getPaymentMethod()))
-            .filter(p -> p.getStatus() != null && "PENDING".equals(p.getStatus()))
-            .peek(p -> log.debug("Checking payment: id={}, amount={}, description={}, status={}",
-                p.getId(), p.getAmount(), 
-                p.getDescription() != null ? p.getDescription() : "NULL", 
-                p.getStatus()))
-            .filter(p -> p.getAmount() != null && amountVnd != null && matchesAmount(amountVnd, p.getAmount(), amountInUSD))
-            .peek(p -> log.debug("Payment {} passed amount check", p.getId()))
-            .filter(p -> p.getDescription() != null && matchesContent(callbackRequest.getContent(), p.getDescription()))
-            .peek(p -> log.debug("Payment {} passed content check", p.getId()))
-            .toList();
-        
-        log.info("Found {} payment(s) matching amount and content", allPayments.size());
+        log.debug("Found {} payment(s) matching amount and content", allPayments.size());
         
         if (!allPayments.isEmpty()) {
-            // Nếu có nhiều payment khớp, ưu tiên payment có bankAccount trong description
-            // Chỉ filter nếu bankAccount không null
-            // Nếu có nhiều payment khớp, ưu tiên payment có bankAccount trong description
-            // Chỉ filter nếu bankAccount không null
-            if (callbackRequest.getBankAccount() != null && !callbackRequest.getBankAccount().isEmpty()) {
-                Optional<Payment> byBankAccount = allPayments.stream()
-                    .filter(p -> p.getDescription() != null && 
-                        p.getDescription().contains(callbackRequest.getBankAccount()))
-                    .findFirst();
-                
-                if (byBankAccount.isPresent()) {
-                    log.info("Found payment by bankAccount match: paymentId={}", byBankAccount.get().getId());
-                    return byBankAccount;
-                }
+            // Content key trùng hoàn toàn (QR có mã tham chiếu riêng trong nội dung, ví dụ QR từ VietQRQrPool)
+            // được ưu tiên hơn khớp kiểu contains
+            List<Payment> exact = allPayments.stream()
+                .filter(p -> callbackKey.equals(contentKeyOf(p)))
+                .toList();
+            List<Payment> selected = exact.isEmpty() ? allPayments : exact;
+            if (selected.size() == 1) {
+                return matched(MatchTier.AMOUNT_CONTENT, Optional.of(selected.get(0)));
             }
-            
-            // Nếu không có match theo bankAccount, lấy payment đầu tiên
-            log.info("Using first matching payment: paymentId={}", allPayments.get(0).getId());
-            return Optional.of(allPayments.get(0));
+            // Nhiều payment cùng số tiền + nội dung: không tự chọn vì có thể hoàn tất nhầm payment của khách khác
+            throttledLog.warn("callback-ambiguous", "Ambiguous VietQR callback, {} payments match amount={} VND, contentKey={}: paymentIds={}",
+                selected.size(), callbackAmountVnd, callbackKey, selected.stream().map(Payment::getId).toList());
+            matchCounters.get(MatchTier.AMBIGUOUS).increment();
+            return new Match(Optional.empty(), MatchTier.AMBIGUOUS);
+        }
+        
+        log.debug("No payment found matching all criteria");
+        return notFound();
+    }
+    
+    private Match matched(MatchTier tier, Optional<Payment> payment) {
+        matchCounters.get(tier).increment();
+        return new Match(payment, tier);
+    }
+    
+    private Match notFound() {
+        matchCounters.get(MatchTier.NOT_FOUND).increment();
+        return new Match(Optional.empty(), MatchTier.NOT_FOUND);
+    }
+    
+    /**
+     * Lấy các payment VIETQR PENDING có thể khớp với callback
+     * Dùng index in-memory nếu đã warm, nếu chưa thì để DB lọc theo method/status/amount/content
+     */
+    private List<Payment> findPendingCandidates(long amountVnd, String callbackKey, long toleranceVnd) {
+        List<Integer> candidateIds = pendingPaymentIndex.isWarm()
+            ? pendingPaymentIndex.findCandidates(amountVnd, callbackKey, LocalDateTime.now().minus(expiryGracePeriod))
+            : findPendingCandidateIdsInDatabase(amountVnd, callbackKey, toleranceVnd);
+        if (candidateIds.isEmpty()) {
+            return List.of();
         }
         
-        log.warn("No payment found matching all criteria");
-        return Optional.empty();
+        Map<Integer, Payment> paymentsById = paymentRepository.findAllById(candidateIds).stream()
+            .collect(Collectors.toMap(Payment::getId, Function.identity()));
+        
+        // Giữ thứ tự ưu tiên của index, bỏ các entry không còn PENDING
+        List<Payment> candidates = new ArrayList<>(candidateIds.size());
+        for (Integer id : candidateIds) {
+            Payment payment = paymentsById.get(id);
+            if (payment == null || !"VIETQR".equals(payment.getPaymentMethod()) || !"PENDING".equals(payment.getStatus())) {
+                pendingPaymentIndex.remove(id);
+                continue;
+            }
+            candidates.add(payment);
+        }
+        return candidates;
+    }
+    
+    /**
+     * Fallback khi index chưa warm: range scan theo (paymentMethod, status, expectedAmountVnd),
+     * ưu tiên các payment có contentKey bắt đầu bằng content key của callback, chỉ lấy projection
+     */
+    private List<Integer> findPendingCandidateIdsInDatabase(long amountVnd, String callbackKey, long toleranceVnd) {
+        long minAmountVnd = amountVnd - toleranceVnd;
+        long maxAmountVnd = amountVnd + toleranceVnd;
+        
+        List<PaymentMatchView> candidates = List.of();
+        if (!callbackKey.isEmpty()) {
+            candidates = paymentRepository.findMatchCandidatesByAmountAndContentKeyPrefix(
+                "VIETQR", "PENDING", minAmountVnd, maxAmountVnd, callbackKey);
+        }
+        if (candidates.isEmpty()) {
+            candidates = paymentRepository.findMatchCandidatesByAmount("VIETQR", "PENDING", minAmountVnd, maxAmountVnd);
+        }
+        return candidates.stream().map(PaymentMatchView::getId).toList();
     }
     
     /**
@@ -228,56 +387,51 @@ public class VietQRCallbackService {
         
         // Kiểm tra payment method phải là VIETQR
         if (payment.getPaymentMethod() == null || !"VIETQR".equals(payment.getPaymentMethod())) {
-            log.warn("Payment method mismatch: expected VIETQR, got {}", 
-                payment.getPaymentMethod() != null ? payment.getPaymentMethod() : "NULL");
+            throttledLog.warn("callback-method-mismatch", "Payment method mismatch: expected VIETQR, got {}",
+                payment.getPaymentMethod());
             return false;
         }
         
         // Kiểm tra amount (cho phép sai số nhỏ do làm tròn)
         if (callbackRequest.getAmount() == null || payment.getAmount() == null) {
-            log.warn("Amount is null: callback={}, payment={}", 
+            throttledLog.warn("callback-amount-null", "Amount is null: callback={}, payment={}",
                 callbackRequest.getAmount() != null, payment.getAmount() != null);
             return false;
         }
         
-        // Convert Long amount to BigDecimal
-        BigDecimal amountVnd = BigDecimal.valueOf(callbackRequest.getAmount());
-        BigDecimal amountInUSD = convertVndToUsd(amountVnd);
-        if (!matchesAmount(amountVnd, payment.getAmount(), amountInUSD)) {
-            log.warn("Amount mismatch: callback={} VND ({} USD), payment={} USD",
-                callbackRequest.getAmount(), amountInUSD, payment.getAmount());
+        if (!matchesAmount(callbackRequest.getAmount(), payment, toleranceVnd())) {
+            throttledLog.warn("callback-amount-mismatch", "Amount mismatch: callback={} VND, payment={} USD (expected {} VND)",
+                callbackRequest.getAmount(), payment.getAmount(), payment.getExpectedAmountVnd());
             return false;
         }
         
         // Kiểm tra content/description (cho phép không khớp hoàn toàn vì có thể có thêm thông tin)
         // Content từ callback có thể có prefix, nên cần extract phần thực sự
         if (callbackRequest.getContent() == null || payment.getDescription() == null) {
-            log.warn("Content or description is null: callbackContent={}, paymentDescription={}",
+            throttledLog.warn("callback-content-null", "Content or description is null: callbackContent={}, paymentDescription={}",
                 callbackRequest.getContent() != null, payment.getDescription() != null);
             // Không return false ngay, chỉ log warning
         } else {
-            String extractedContent = extractActualContent(callbackRequest.getContent());
-            if (!matchesContent(callbackRequest.getContent(), payment.getDescription())) {
-                log.warn("Content mismatch: callback={}, extracted={}, payment={}",
-                    callbackRequest.getContent(), extractedContent, payment.getDescription());
+            String callbackKey = VietQRMatchKeys.callbackContentKey(callbackRequest.getContent());
+            if (!matchesContent(callbackKey, payment)) {
+                throttledLog.warn("callback-content-mismatch", "Content mismatch: callback={}, callbackKey={}, payment={}",
+                    callbackRequest.getContent(), callbackKey, payment.getDescription());
                 // Không return false ngay, chỉ log warning vì description có thể có thêm thông tin
             } else {
-                log.info("Content matched: callback={}, extracted={}, payment={}",
-                    callbackRequest.getContent(), extractedContent, payment.getDescription());
+                log.debug("Content matched: callbackKey={}, paymentId={}", callbackKey, payment.getId());
             }
         }
         
         // Kiểm tra transType phải là "C" (Credit - nhận tiền)
         if (callbackRequest.getTransType() == null || !"C".equals(callbackRequest.getTransType())) {
-            log.warn("Invalid transType: expected C, got {}", 
-                callbackRequest.getTransType() != null ? callbackRequest.getTransType() : "NULL");
+            throttledLog.warn("callback-trans-type", "Invalid transType: expected C, got {}", callbackRequest.getTransType());
             return false;
         }
         
         // Kiểm tra bankCode và bankAccount (nếu có trong description)
         if (payment.getDescription() != null && callbackRequest.getBankAccount() != null && !callbackRequest.getBankAccount().isEmpty()) {
             if (!payment.getDescription().contains(callbackRequest.getBankAccount())) {
-                log.warn("Bank account mismatch: callback={}, payment description={}",
+                throttledLog.warn("callback-bank-account-mismatch", "Bank account mismatch: callback={}, payment description={}",
                     callbackRequest.getBankAccount(), payment.getDescription());
                 // Không return false, chỉ log warning
             }
@@ -287,91 +441,64 @@ public class VietQRCallbackService {
     }
     
     /**
-     * So sánh amount (cho phép sai số nhỏ)
+     * So sánh amount theo VND (cho phép sai số 0.01 USD quy đổi)
+     * Payment cũ chưa có expectedAmountVnd thì quy đổi từ amount USD
      */
-    private boolean matchesAmount(BigDecimal callbackAmountVnd, BigDecimal paymentAmountUsd) {
-        if (callbackAmountVnd == null || paymentAmountUsd == null) {
-            return false;
-        }
-        BigDecimal callbackAmountUsd = convertVndToUsd(callbackAmountVnd);
-        return matchesAmount(callbackAmountVnd, paymentAmountUsd, callbackAmountUsd);
-    }
-    
-    private boolean matchesAmount(BigDecimal callbackAmountVnd, BigDecimal paymentAmountUsd, BigDecimal callbackAmountUsd) {
-        if (callbackAmountVnd == null || paymentAmountUsd == null || callbackAmountUsd == null) {
-            return false;
+    private boolean matchesAmount(long callbackAmountVnd, Payment payment, long toleranceVnd) {
+        Long expectedAmountVnd = payment.getExpectedAmountVnd();
+        if (expectedAmountVnd == null) {
+            if (payment.getAmount() == null) {
+                return false;
+            }
+            expectedAmountVnd = VietQRMatchKeys.toVnd(payment.getAmount(), usdToVndRate());
         }
-        // So sánh với sai số cho phép 0.01 USD (tương đương ~250 VND)
-        BigDecimal difference = paymentAmountUsd.subtract(callbackAmountUsd).abs();
-        return difference.compareTo(new BigDecimal("0.01")) <= 0;
+        return VietQRMatchKeys.amountMatches(callbackAmountVnd, expectedAmountVnd, toleranceVnd);
     }
     
     /**
-     * So sánh content/description (cho phép description có thêm thông tin)
-     * Content từ callback có thể có prefix như "VQR26044A327PVJX THANH TOAN HOA DON"
-     * Cần extract phần content thực sự để so sánh
+     * So sánh content key của callback với content key của payment (cho phép description có thêm thông tin)
+     * Content từ callback có thể có prefix như "VQR26044A327PVJX THANH TOAN HOA DON", đã được bỏ khi tính callbackKey
      */
-    private boolean matchesContent(String callbackContent, String paymentDescription) {
-        if (callbackContent == null || paymentDescription == null) {
-            return false;
-        }
-        
-        // Extract phần content thực sự (bỏ prefix nếu có)
-        // Ví dụ: "VQR26044A327PVJX THANH TOAN HOA DON" -> "THANH TOAN HOA DON"
-        String actualContent = extractActualContent(callbackContent);
-        
-        // So sánh: description có thể chứa actualContent hoặc ngược lại
-        boolean matches = paymentDescription.contains(actualContent) || actualContent.contains(paymentDescription);
-        
-        if (!matches) {
-            log.debug("Content comparison: callback={}, extracted={}, payment={}, match={}",
-                callbackContent, actualContent, paymentDescription, matches);
-        }
-        
-        return matches;
+    private boolean matchesContent(String callbackKey, Payment payment) {
+        return VietQRMatchKeys.contentMatches(callbackKey, contentKeyOf(payment));
+    }
+    
+    private static String contentKeyOf(Payment payment) {
+        return payment.getContentKey() != null
+            ? payment.getContentKey()
+            : VietQRMatchKeys.paymentContentKey(payment.getDescription());
+    }
+    
+    private long toleranceVnd() {
+        return VietQRMatchKeys.toleranceVnd(usdToVndRate());
+    }
+    
+    private double usdToVndRate() {
+        return VietQRMatchKeys.effectiveRate(vietQRConfig.getUsdToVndRate());
     }
     
     /**
-     * Extract phần content thực sự từ callback content
-     * Content có thể có format: "VQR26044A5CCKYZA THANH TOAN HOA DON"
-     * Hoặc chỉ có: "THANH TOAN HOA DON"
-     * Prefix thường có format: "VQR" + 13 ký tự alphanumeric = 16 ký tự
+     * Kết quả lookup cùng bước đã tìm ra payment
      */
-    private String extractActualContent(String callbackContent) {
-        if (callbackContent == null || callbackContent.isEmpty()) {
-            return "";
-        }
-        
-        String trimmed = callbackContent.trim();
-        
-        // Nếu bắt đầu bằng "VQR" và có khoảng trắng, extract phần sau prefix
-        // Prefix format: "VQR" + 13 ký tự = 16 ký tự, sau đó là khoảng trắng
-        if (trimmed.startsWith("VQR") && trimmed.length() > 16) {
-            // Tìm khoảng trắng đầu tiên sau vị trí 16 (sau prefix)
-            int spaceIndex = trimmed.indexOf(' ', 16);
-            if (spaceIndex > 0 && spaceIndex < trimmed.length() - 1) {
-                String extracted = trimmed.substring(spaceIndex + 1).trim();
-                log.info("Extracted content: '{}' -> '{}'", callbackContent, extracted);
-                return extracted;
-            }
-        }
-        
-        // Nếu không có prefix hoặc không tìm thấy khoảng trắng, trả về nguyên content
-        log.debug("No prefix found, using original content: '{}'", trimmed);
-        return trimmed;
+    private record Match(Optional<Payment> payment, MatchTier tier) {
     }
     
     /**
-     * Convert VND sang USD
+     * Bước lookup tìm ra payment (tag "tier" của metrics vietqr.callback.match)
      */
-    private BigDecimal convertVndToUsd(BigDecimal amountVnd) {
-        if (amountVnd == null) {
-            return BigDecimal.ZERO;
-        }
-        if (vietQRConfig.getUsdToVndRate() == null || vietQRConfig.getUsdToVndRate() == 0) {
-            log.warn("USD to VND rate is null or zero, using default 25000");
-            return amountVnd.divide(BigDecimal.valueOf(25000.0), 2, RoundingMode.HALF_UP);
+    private enum MatchTier {
+        TRANSACTION_ID("transactionId"),
+        REFERENCE_NUMBER("referenceNumber"),
+        CONTENT_REFERENCE("contentReference"), // Mã tham chiếu QR local trong nội dung chuyển khoản
+        ORDER_ID("orderId"),
+        AMOUNT_CONTENT("amountContent"),
+        AMBIGUOUS("ambiguous"), // Nhiều payment khớp amount + content, không tự hoàn tất
+        NOT_FOUND("notFound");
+        
+        private final String tag;
+        
+        MatchTier(String tag) {
+            this.tag = tag;
         }
-        return amountVnd.divide(BigDecimal.valueOf(vietQRConfig.getUsdToVndRate()), 2, RoundingMode.HALF_UP);
     }
 }
@@ -0,0 +1,100 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRGenerateResponse;
+import com.example.AIMSVER2.service.code.PaymentCodeGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * vietqr.qr-mode=local: dựng QR chuyển khoản trong process bằng VietQRPayloadEncoder thay vì gọi
+ * token + /qr/generate-customer (hai round trip mạng)
+ *
+ * - QR trỏ tới cùng tài khoản vietqr.bank-account
+ * - Nội dung chuyển khoản = "<mã tham chiếu> <description đã chuẩn hóa>" (VietQRPayloadEncoder.purpose), mã tham chiếu
+ *   ("LQR" + PaymentCodeGenerator) đứng đầu nên không bị cắt và cũng là transactionRefId: ngân hàng trả lại nội dung
+ *   trong callback, VietQRCallbackService tìm payment theo mã này thay vì theo amount + content
+ * - Không có qrLink (trang hiển thị QR của VietQR): client tự render qrCode
+ */
+@Component
+@ConditionalOnProperty(name = "vietqr.qr-mode", havingValue = "local")
+@Slf4j
+public class VietQRLocalQrGenerator {
+
+    /**
+     * BIN NAPAS của các ngân hàng hay dùng; ngân hàng khác cấu hình vietqr.bank-bin
+     */
+    private static final Map<String, String> BANK_BINS = Map.of(
+        "BIDV", "970418",
+        "VCB", "970436",
+        "ICB", "970415",
+        "VBA", "970405",
+        "MB", "970422",
+        "TCB", "970407",
+        "ACB", "970416",
+        "VPB", "970432",
+        "TPB", "970423",
+        "STB", "970403");
+
+    private final VietQRConfig vietQRConfig;
+    private final PaymentCodeGenerator paymentCodeGenerator;
+    private final String bankBin;
+    private final Counter generated;
+
+    public VietQRLocalQrGenerator(VietQRConfig vietQRConfig, PaymentCodeGenerator paymentCodeGenerator,
+                                  MeterRegistry meterRegistry) {
+        this.vietQRConfig = vietQRConfig;
+        this.paymentCodeGenerator = paymentCodeGenerator;
+        this.bankBin = resolveBankBin(vietQRConfig);
+        if (vietQRConfig.getBankAccount() == null || vietQRConfig.getBankAccount().isBlank()) {
+            throw new IllegalStateException("vietqr.bank-account is required for vietqr.qr-mode=local");
+        }
+        this.generated = Counter.builder("vietqr.qr.generated")
+            .tag("mode", "local")
+            .register(meterRegistry);
+        log.info("VietQR local QR generation enabled - Bank: {} (BIN {})", vietQRConfig.getBankCode(), bankBin);
+    }
+
+    /**
+     * Tương đương VietQRService.generateQRCode nhưng không gọi mạng
+     *
+     * @param amount Số tiền (VND), lấy phần nguyên như khi gửi cho VietQR API
+     * @param content Nội dung thanh toán
+     */
+    public VietQRGenerateResponse generateQRCode(BigDecimal amount, String content) {
+        String reference = VietQRMatchKeys.LOCAL_REFERENCE_PREFIX + paymentCodeGenerator.next();
+        String purpose = VietQRPayloadEncoder.purpose(reference + " " + content);
+        long amountVnd = amount.longValue();
+
+        VietQRGenerateResponse response = new VietQRGenerateResponse();
+        response.setBankCode(vietQRConfig.getBankCode());
+        response.setBankName(vietQRConfig.getBankCode());
+        response.setBankAccount(vietQRConfig.getBankAccount());
+        response.setUserBankName(vietQRConfig.getUserBankName());
+        response.setAmount(String.valueOf(amountVnd));
+        response.setContent(purpose);
+        response.setQrCode(VietQRPayloadEncoder.encode(bankBin, vietQRConfig.getBankAccount(), amountVnd, purpose));
+        response.setTransactionRefId(reference);
+        generated.increment();
+        return response;
+    }
+
+    static String resolveBankBin(VietQRConfig vietQRConfig) {
+        if (vietQRConfig.getBankBin() != null && !vietQRConfig.getBankBin().isBlank()) {
+            return vietQRConfig.getBankBin().trim();
+        }
+        String bankCode = vietQRConfig.getBankCode();
+        String bin = bankCode == null ? null : BANK_BINS.get(bankCode.trim().toUpperCase());
+        if (bin == null) {
+            throw new IllegalStateException(
+                "vietqr.bank-bin is required for vietqr.qr-mode=local (unknown bank code: " + bankCode + ")");
+        }
+        return bin;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.Normalizer;
+
+/**
+ * Các khóa dùng để đối chiếu callback VietQR với Payment
+ * - expectedAmountVnd: số tiền VND (long) tính một lần khi tạo payment, so sánh bằng phép trừ long
+ * - contentKey: content đã chuẩn hóa, so sánh bằng equals/contains không cấp phát
+ */
+public final class VietQRMatchKeys {
+
+    public static final double DEFAULT_USD_TO_VND_RATE = 25000.0;
+
+    /**
+     * Độ dài tối đa của cột Payment.contentKey
+     */
+    public static final int CONTENT_KEY_MAX_LENGTH = 255;
+
+    /**
+     * Prefix mã tham chiếu của QR dựng local (vietqr.qr-mode=local), mã nằm đầu nội dung chuyển khoản
+     * và cũng là transactionId của Payment
+     */
+    public static final String LOCAL_REFERENCE_PREFIX = "LQR";
+
+    /**
+     * Độ dài prefix VietQR thêm vào content: "VQR" + 13 ký tự alphanumeric
+     */
+    private static final int VQR_PREFIX_LENGTH = 16;
+
+    private VietQRMatchKeys() {
+    }
+
+    public static double effectiveRate(Double usdToVndRate) {
+        return usdToVndRate == null || usdToVndRate == 0 ? DEFAULT_USD_TO_VND_RATE : usdToVndRate;
+    }
+
+    /**
+     * Quy đổi USD sang VND (làm tròn đến đồng)
+     */
+    public static long toVnd(BigDecimal amountUsd, double usdToVndRate) {
+        return amountUsd.multiply(BigDecimal.valueOf(usdToVndRate))
+            .setScale(0, RoundingMode.HALF_UP)
+            .longValue();
+    }
+
+    /**
+     * Sai số cho phép khi so amount: 0.01 USD quy ra VND (~250 VND với tỷ giá 25000)
+     */
+    public static long toleranceVnd(double usdToVndRate) {
+        return Math.max(1L, Math.round(usdToVndRate / 100));
+    }
+
+    public static boolean amountMatches(long callbackAmountVnd, long expectedAmountVnd, long toleranceVnd) {
+        return Math.abs(callbackAmountVnd - expectedAmountVnd) <= toleranceVnd;
+    }
+
+    /**
+     * Hai content key khớp khi một key chứa key còn lại (description có thể có thêm thông tin)
+     */
+    public static boolean contentMatches(String callbackKey, String paymentKey) {
+        if (callbackKey.isEmpty() || paymentKey.isEmpty()) {
+            return false;
+        }
+        return paymentKey.equals(callbackKey) || paymentKey.contains(callbackKey) || callbackKey.contains(paymentKey);
+    }
+
+    /**
+     * Extract phần content thực sự từ callback content
+     * Content có thể có format: "VQR26044A5CCKYZA THANH TOAN HOA DON"
+     * Hoặc chỉ có: "THANH TOAN HOA DON"
+     */
+    public static String extractActualContent(String callbackContent) {
+        if (callbackContent == null || callbackContent.isEmpty()) {
+            return "";
+        }
+
+        String trimmed = callbackContent.trim();
+
+        // Prefix format: "VQR" + 13 ký tự = 16 ký tự, sau đó là khoảng trắng
+        if (trimmed.startsWith("VQR") && trimmed.length() > VQR_PREFIX_LENGTH) {
+            int spaceIndex = trimmed.indexOf(' ', VQR_PREFIX_LENGTH);
+            if (spaceIndex > 0 && spaceIndex < trimmed.length() - 1) {
+                return trimmed.substring(spaceIndex + 1).trim();
+            }
+        }
+        return trimmed;
+    }
+
+    /**
+     * Mã tham chiếu QR local (từ "LQR" đến hết từ) trong content key của callback; null nếu không có
+     */
+    public static String localReference(String callbackKey) {
+        int from = 0;
+        while ((from = callbackKey.indexOf(LOCAL_REFERENCE_PREFIX, from)) >= 0) {
+            int end = callbackKey.indexOf(' ', from);
+            if (end < 0) {
+                end = callbackKey.length();
+            }
+            if ((from == 0 || callbackKey.charAt(from - 1) == ' ') && end > from + LOCAL_REFERENCE_PREFIX.length()) {
+                return callbackKey.substring(from, end);
+            }
+            from = end;
+        }
+        return null;
+    }
+
+    /**
+     * Content key của callback: bỏ prefix VQR rồi chuẩn hóa
+     */
+    public static String callbackContentKey(String callbackContent) {
+        return normalizeContent(extractActualContent(callbackContent));
+    }
+
+    /**
+     * Content key lưu trên Payment (cắt theo độ dài cột)
+     */
+    public static String paymentContentKey(String description) {
+        String key = normalizeContent(description);
+        return key.length() > CONTENT_KEY_MAX_LENGTH ? key.substring(0, CONTENT_KEY_MAX_LENGTH) : key;
+    }
+
+    /**
+     * Chuẩn hóa content để so khớp: bỏ phần thông tin bank được nối vào description,
+     * bỏ dấu tiếng Việt, viết hoa và gộp các ký tự không phải chữ/số thành một khoảng trắng
+     */
+    public static String normalizeContent(String content) {
+        if (content == null || content.isEmpty()) {
+            return "";
+        }
+        int bankInfoIndex = content.indexOf(" | Bank:");
+        String raw = bankInfoIndex >= 0 ? content.substring(0, bankInfoIndex) : content;
+        String decomposed = Normalizer.normalize(raw, Normalizer.Form.NFD);
+
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (c == 'đ' || c == 'Đ') {
+                c = 'D';
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                sb.append(Character.toUpperCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return sb.toString();
+    }
+}
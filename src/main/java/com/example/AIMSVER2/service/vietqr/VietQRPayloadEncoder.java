@@ -0,0 +1,175 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Dựng payload QR chuyển khoản VietQR (EMVCo Merchant-Presented Mode, chuẩn NAPAS) ngay trong process
+ *
+ * Payload = các field TLV [id 2 chữ số][độ dài 2 chữ số][giá trị]:
+ * - 00 Payload format "01", 01 Point of initiation "12" (có số tiền) / "11" (không có số tiền)
+ * - 38 Merchant account: 00 GUID NAPAS "A000000727", 01 (00 BIN ngân hàng, 01 số tài khoản), 02 dịch vụ "QRIBFTTA"
+ * - 53 Tiền tệ "704" (VND), 54 Số tiền, 58 Quốc gia "VN", 62 Additional data: 08 nội dung chuyển khoản
+ * - 63 CRC16-CCITT-FALSE (poly 0x1021, init 0xFFFF) của toàn bộ payload tính cả "6304", 4 ký tự hex viết hoa
+ *
+ * encode tính trước độ dài payload và ghi các field thẳng vào một byte[] (không StringBuilder / String trung gian);
+ * ngoài buffer đó chỉ còn String kết quả (constructor của String copy buffer)
+ */
+public final class VietQRPayloadEncoder {
+
+    /**
+     * Độ dài tối đa nội dung chuyển khoản đưa vào QR (các ngân hàng cắt nội dung dài hơn)
+     */
+    public static final int MAX_PURPOSE_LENGTH = 50;
+
+    private static final String NAPAS_GUID = "A000000727";
+    private static final String SERVICE_TRANSFER_TO_ACCOUNT = "QRIBFTTA";
+    private static final String CURRENCY_VND = "704";
+    private static final String COUNTRY_VN = "VN";
+    private static final int MAX_FIELD_LENGTH = 99;
+    private static final int CRC_FIELD_LENGTH = 8; // "6304" + 4 hex
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final char[] CRC_TABLE = crcTable();
+
+    private VietQRPayloadEncoder() {
+    }
+
+    /**
+     * @param bankBin BIN NAPAS 6 chữ số của ngân hàng nhận (BIDV: 970418)
+     * @param accountNumber Số tài khoản nhận
+     * @param amountVnd Số tiền VND; <= 0 thì tạo QR không kèm số tiền
+     * @param purpose Nội dung chuyển khoản, chỉ gồm ký tự ASCII in được (xem {@link #purpose(String)}); null/rỗng thì bỏ field 62
+     */
+    public static String encode(String bankBin, String accountNumber, long amountVnd, String purpose) {
+        int beneficiaryLength = field(bankBin) + field(accountNumber);
+        int merchantAccountLength = field(NAPAS_GUID) + 4 + beneficiaryLength + field(SERVICE_TRANSFER_TO_ACCOUNT);
+        int amountDigits = amountVnd > 0 ? digits(amountVnd) : 0;
+        int purposeLength = purpose == null ? 0 : purpose.length();
+        int additionalDataLength = purposeLength > 0 ? 4 + purposeLength : 0;
+        checkLength("38", merchantAccountLength);
+        checkLength("62", additionalDataLength);
+
+        int length = 6 + 6 + 4 + merchantAccountLength + field(CURRENCY_VND)
+            + (amountDigits > 0 ? 4 + amountDigits : 0)
+            + field(COUNTRY_VN)
+            + (additionalDataLength > 0 ? 4 + additionalDataLength : 0)
+            + CRC_FIELD_LENGTH;
+        byte[] buffer = new byte[length];
+
+        int pos = writeField(buffer, 0, "00", "01");
+        pos = writeField(buffer, pos, "01", amountDigits > 0 ? "12" : "11");
+        pos = writeHeader(buffer, pos, "38", merchantAccountLength);
+        pos = writeField(buffer, pos, "00", NAPAS_GUID);
+        pos = writeHeader(buffer, pos, "01", beneficiaryLength);
+        pos = writeField(buffer, pos, "00", bankBin);
+        pos = writeField(buffer, pos, "01", accountNumber);
+        pos = writeField(buffer, pos, "02", SERVICE_TRANSFER_TO_ACCOUNT);
+        pos = writeField(buffer, pos, "53", CURRENCY_VND);
+        if (amountDigits > 0) {
+            pos = writeHeader(buffer, pos, "54", amountDigits);
+            pos = writeDigits(buffer, pos, amountVnd, amountDigits);
+        }
+        pos = writeField(buffer, pos, "58", COUNTRY_VN);
+        if (additionalDataLength > 0) {
+            pos = writeHeader(buffer, pos, "62", additionalDataLength);
+            pos = writeField(buffer, pos, "08", purpose);
+        }
+        pos = writeHeader(buffer, pos, "63", 4);
+
+        int crc = crc16(buffer, 0, pos);
+        buffer[pos++] = HEX[(crc >>> 12) & 0xF];
+        buffer[pos++] = HEX[(crc >>> 8) & 0xF];
+        buffer[pos++] = HEX[(crc >>> 4) & 0xF];
+        buffer[pos] = HEX[crc & 0xF];
+        return new String(buffer, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Nội dung chuyển khoản an toàn cho QR: chuẩn hóa như content key (bỏ dấu, viết hoa, chỉ chữ/số và khoảng trắng)
+     * để callback khớp được với Payment, bỏ ký tự ngoài ASCII và cắt còn MAX_PURPOSE_LENGTH
+     */
+    public static String purpose(String description) {
+        String normalized = VietQRMatchKeys.normalizeContent(description);
+        StringBuilder sb = new StringBuilder(Math.min(normalized.length(), MAX_PURPOSE_LENGTH));
+        for (int i = 0; i < normalized.length() && sb.length() < MAX_PURPOSE_LENGTH; i++) {
+            char c = normalized.charAt(i);
+            if (c >= 0x20 && c < 0x7F) {
+                sb.append(c);
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * CRC16-CCITT-FALSE của data[from, to) (check value của "123456789" là 0x29B1)
+     */
+    public static int crc16(byte[] data, int from, int to) {
+        int crc = 0xFFFF;
+        for (int i = from; i < to; i++) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    private static int field(String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("VietQR field must not be empty");
+        }
+        checkLength("value", value.length());
+        return 4 + value.length();
+    }
+
+    private static void checkLength(String id, int length) {
+        if (length > MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException("VietQR field " + id + " too long: " + length);
+        }
+    }
+
+    private static int writeHeader(byte[] buffer, int pos, String id, int length) {
+        buffer[pos++] = (byte) id.charAt(0);
+        buffer[pos++] = (byte) id.charAt(1);
+        buffer[pos++] = (byte) ('0' + length / 10);
+        buffer[pos++] = (byte) ('0' + length % 10);
+        return pos;
+    }
+
+    private static int writeField(byte[] buffer, int pos, String id, String value) {
+        pos = writeHeader(buffer, pos, id, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c >= 0x7F) {
+                throw new IllegalArgumentException("VietQR field " + id + " contains non-ASCII character at " + i);
+            }
+            buffer[pos++] = (byte) c;
+        }
+        return pos;
+    }
+
+    private static int writeDigits(byte[] buffer, int pos, long value, int digits) {
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static char[] crcTable() {
+        char[] table = new char[256];
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            table[i] = (char) (crc & 0xFFFF);
+        }
+        return table;
+    }
+}
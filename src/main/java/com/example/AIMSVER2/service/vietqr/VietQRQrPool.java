@@ -0,0 +1,232 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.config.VietQRQrPoolConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRGenerateResponse;
+import com.example.AIMSVER2.service.code.PaymentCodeGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pool QR VietQR tạo sẵn cho các khoản thanh toán (số tiền, nội dung) cố định (vietqr.qr-pool.entries)
+ *
+ * - Mỗi entry giữ tối đa size QR đã tạo sẵn; createPayment khớp đúng số tiền + description thì lấy một QR
+ *   từ pool (tra cứu local) thay vì gọi token + generate-customer
+ * - Mỗi QR chỉ được lease một lần; nội dung QR = "<mã tham chiếu> <description>" với mã sinh bởi PaymentCodeGenerator,
+ *   nên các payment cùng entry vẫn có content key khác nhau và callback khớp đúng payment (không chỉ theo amount + content)
+ * - QR tạo quá maxAge bị bỏ khi lease hoặc khi refill; expiresAt của payment = lúc tạo QR + qrLifetime
+ * - Refill trên thread riêng: định kỳ theo refillInterval và ngay sau mỗi lần lease/miss
+ * - Metrics: vietqr.qr.pool.requests{result=hit|miss}, vietqr.qr.pool.expired, vietqr.qr.pool.generated,
+ *   vietqr.qr.pool.refill.failures, vietqr.qr.pool.size / vietqr.qr.pool.capacity
+ */
+@Component
+@ConditionalOnProperty(name = "vietqr.qr-pool.enabled", havingValue = "true")
+@Slf4j
+public class VietQRQrPool {
+
+    private final VietQRService vietQRService;
+    private final PaymentCodeGenerator paymentCodeGenerator;
+    private final Duration maxAge;
+    private final Duration qrLifetime;
+    private final Duration refillInterval;
+    private final double usdToVndRate;
+    private final Clock clock;
+    private final Map<Key, Slot> slots = new LinkedHashMap<>();
+    private final ScheduledExecutorService refiller;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter expired;
+    private final Counter generated;
+    private final Counter refillFailures;
+
+    public VietQRQrPool(VietQRQrPoolConfig poolConfig, VietQRConfig vietQRConfig, VietQRService vietQRService,
+                        PaymentCodeGenerator paymentCodeGenerator, MeterRegistry meterRegistry) {
+        this(poolConfig, vietQRConfig, vietQRService, paymentCodeGenerator, meterRegistry, Clock.systemDefaultZone());
+    }
+
+    VietQRQrPool(VietQRQrPoolConfig poolConfig, VietQRConfig vietQRConfig, VietQRService vietQRService,
+                 PaymentCodeGenerator paymentCodeGenerator, MeterRegistry meterRegistry, Clock clock) {
+        this.vietQRService = vietQRService;
+        this.paymentCodeGenerator = paymentCodeGenerator;
+        this.maxAge = poolConfig.getMaxAge();
+        this.qrLifetime = poolConfig.getQrLifetime();
+        this.refillInterval = poolConfig.getRefillInterval();
+        this.usdToVndRate = VietQRMatchKeys.effectiveRate(vietQRConfig.getUsdToVndRate());
+        this.clock = clock;
+        for (VietQRQrPoolConfig.Entry entry : poolConfig.getEntries()) {
+            Key key = new Key(VietQRMatchKeys.toVnd(entry.getAmount(), usdToVndRate), entry.getDescription());
+            int size = entry.getSize() != null ? entry.getSize() : poolConfig.getSize();
+            slots.put(key, new Slot(key, size));
+        }
+        this.refiller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vietqr-qr-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.hits = Counter.builder("vietqr.qr.pool.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("vietqr.qr.pool.requests").tag("result", "miss").register(meterRegistry);
+        this.expired = Counter.builder("vietqr.qr.pool.expired")
+            .description("Số QR tạo sẵn bị bỏ vì quá max-age")
+            .register(meterRegistry);
+        this.generated = Counter.builder("vietqr.qr.pool.generated").register(meterRegistry);
+        this.refillFailures = Counter.builder("vietqr.qr.pool.refill.failures").register(meterRegistry);
+        Gauge.builder("vietqr.qr.pool.size", this, VietQRQrPool::readyCount)
+            .description("Số QR đang sẵn sàng trong pool")
+            .register(meterRegistry);
+        Gauge.builder("vietqr.qr.pool.capacity", this, VietQRQrPool::capacity)
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        log.info("VietQR QR pool enabled - {} entry(ies), capacity {}", slots.size(), capacity());
+        refiller.scheduleWithFixedDelay(this::refillAll, 0, refillInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refiller.shutdownNow();
+    }
+
+    /**
+     * Lấy một QR tạo sẵn cho (số tiền, description) của request; empty nếu không phải entry của pool hoặc pool đang rỗng
+     *
+     * @param amount Số tiền theo đơn vị của PaymentRequest (USD)
+     */
+    public Optional<Lease> lease(BigDecimal amount, String description) {
+        if (amount == null || description == null) {
+            return Optional.empty();
+        }
+        Slot slot = slots.get(new Key(VietQRMatchKeys.toVnd(amount, usdToVndRate), description));
+        if (slot == null) {
+            return Optional.empty();
+        }
+        LocalDateTime now = LocalDateTime.now(clock);
+        Pooled pooled;
+        while ((pooled = slot.ready.poll()) != null) {
+            if (isFresh(pooled, now)) {
+                hits.increment();
+                requestRefill(slot);
+                return Optional.of(new Lease(pooled.response(), pooled.content(), pooled.generatedAt().plus(qrLifetime)));
+            }
+            expired.increment();
+        }
+        misses.increment();
+        requestRefill(slot);
+        return Optional.empty();
+    }
+
+    /**
+     * Bỏ QR quá hạn và bù cho đủ size ở mọi entry (package-private để test gọi đồng bộ)
+     */
+    void refillAll() {
+        slots.values().forEach(this::refill);
+    }
+
+    private void requestRefill(Slot slot) {
+        try {
+            refiller.execute(() -> refill(slot));
+        } catch (RejectedExecutionException e) {
+            // Đang shutdown
+        }
+    }
+
+    private void refill(Slot slot) {
+        Key key = slot.key;
+        if (!slot.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now(clock);
+            Pooled oldest;
+            while ((oldest = slot.ready.peek()) != null && !isFresh(oldest, now)) {
+                if (slot.ready.remove(oldest)) {
+                    expired.increment();
+                }
+            }
+            while (slot.ready.remainingCapacity() > 0) {
+                String content = paymentCodeGenerator.next() + " " + key.description();
+                VietQRGenerateResponse response;
+                try {
+                    response = vietQRService.generateQRCode(BigDecimal.valueOf(key.amountVnd()), content, "qr-pool");
+                } catch (RuntimeException e) {
+                    refillFailures.increment();
+                    log.warn("Failed to pre-generate VietQR QR code for {} VND '{}': {}",
+                        key.amountVnd(), key.description(), e.getMessage());
+                    return;
+                }
+                if (!slot.ready.offer(new Pooled(response, content, LocalDateTime.now(clock)))) {
+                    return;
+                }
+                generated.increment();
+            }
+        } finally {
+            slot.refilling.set(false);
+        }
+    }
+
+    private boolean isFresh(Pooled pooled, LocalDateTime now) {
+        return pooled.generatedAt().plus(maxAge).isAfter(now);
+    }
+
+    private double readyCount() {
+        return slots.values().stream().mapToInt(slot -> slot.ready.size()).sum();
+    }
+
+    private double capacity() {
+        return slots.values().stream().mapToInt(slot -> slot.capacity).sum();
+    }
+
+    /**
+     * QR lấy từ pool
+     *
+     * @param response QR đã tạo sẵn
+     * @param content Nội dung của QR (có mã tham chiếu riêng), dùng làm description của payment để callback khớp đúng
+     * @param expiresAt Hạn của QR (tính từ lúc tạo, không phải lúc lease)
+     */
+    public record Lease(VietQRGenerateResponse response, String content, LocalDateTime expiresAt) {
+    }
+
+    private record Key(long amountVnd, String description) {
+    }
+
+    private record Pooled(VietQRGenerateResponse response, String content, LocalDateTime generatedAt) {
+    }
+
+    private static final class Slot {
+
+        private final Key key;
+        private final int capacity;
+        private final BlockingQueue<Pooled> ready;
+        private final AtomicBoolean refilling = new AtomicBoolean();
+
+        private Slot(Key key, int capacity) {
+            this.key = key;
+            this.capacity = capacity;
+            this.ready = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
@@ -4,8 +4,16 @@ import com.example.AIMSVER2.config.VietQRConfig;
 import com.example.AIMSVER2.dto.vietqr.VietQRGenerateRequest;
 import com.example.AIMSVER2.dto.vietqr.VietQRGenerateResponse;
 import com.example.AIMSVER2.dto.vietqr.VietQRTokenResponse;
+import com.example.AIMSVER2.service.token.AccessTokenManager;
+import com.example.AIMSVER2.service.token.CachedTokenProvider;
+import com.example.AIMSVER2.service.token.ExpiringToken;
+import com.example.AIMSVER2.service.token.TokenFetcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
@@ -14,8 +22,16 @@ import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
+/**
+ * Client VietQR (token + generate QR) trên RestTemplate
+ * Khi vietqr.client=async có thêm VietQRAsyncClient: token provider refresh qua client đó
+ * và generateQRCodeAsync() không giữ thread trong lúc chờ gateway
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -23,21 +39,53 @@ public class VietQRService {
     
     private final VietQRConfig vietQRConfig;
     private final RestTemplate restTemplate;
+    private final AccessTokenManager accessTokenManager;
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<VietQRAsyncClient> asyncClientProvider;
     
-    private String cachedToken;
-    private long tokenExpiresAt;
+    private CachedTokenProvider<String> tokenProvider;
+    private VietQRAsyncClient asyncClient;
+    
+    @PostConstruct
+    public void init() {
+        asyncClient = asyncClientProvider.getIfAvailable();
+        if (asyncClient == null) {
+            tokenProvider = accessTokenManager.register("vietqr", this::fetchAccessToken);
+            return;
+        }
+        // Dùng chung một token cho cả hai client; refresh (kể cả refresh nền) đi qua client non-blocking
+        tokenProvider = accessTokenManager.register("vietqr", new TokenFetcher<>() {
+            @Override
+            public ExpiringToken<String> fetch() {
+                return fetchAccessToken();
+            }
+            
+            @Override
+            public CompletableFuture<ExpiringToken<String>> fetchAsync() {
+                return asyncClient.fetchToken();
+            }
+        });
+    }
+    
+    /**
+     * Có client non-blocking (vietqr.client=async) hay không
+     */
+    public boolean isAsync() {
+        return asyncClient != null;
+    }
     
     /**
      * Lấy access token từ VietQR API
-     * Token được cache để tránh gọi API nhiều lần
+     * Token được cache dùng chung giữa các thread, refresh nền trước khi hết hạn
      */
     public String getAccessToken() {
-        // Kiểm tra token cache còn hợp lệ không
-        if (cachedToken != null && System.currentTimeMillis() < tokenExpiresAt) {
-            log.debug("Using cached VietQR token");
-            return cachedToken;
-        }
-        
+        return tokenProvider.get();
+    }
+    
+    /**
+     * Gọi /token_generate để lấy token mới (chỉ được gọi bởi token provider)
+     */
+    private ExpiringToken<String> fetchAccessToken() {
         try {
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
@@ -59,19 +107,19 @@ public class VietQRService {
             // Token API dùng dev.vietqr.org
             String url = vietQRConfig.getTokenApiUrl() + "/token_generate";
             
-            ResponseEntity<VietQRTokenResponse> response = restTemplate.postForEntity(
+            ResponseEntity<VietQRTokenResponse> response = timed("token", () -> restTemplate.postForEntity(
                 url,
                 request,
                 VietQRTokenResponse.class
-            );
+            ));
             
             if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
                 VietQRTokenResponse tokenResponse = response.getBody();
-                cachedToken = tokenResponse.getAccessToken();
-                // Cache token với thời gian hết hạn (trừ 10 giây để đảm bảo an toàn)
-                tokenExpiresAt = System.currentTimeMillis() + ((tokenResponse.getExpiresIn() - 10) * 1000L);
                 log.info("VietQR token obtained successfully, expires in {} seconds", tokenResponse.getExpiresIn());
-                return cachedToken;
+                return new ExpiringToken<>(
+                    tokenResponse.getAccessToken(),
+                    Instant.now().plusSeconds(tokenResponse.getExpiresIn())
+                );
             } else {
                 throw new RuntimeException("Failed to get VietQR token: " + response.getStatusCode());
             }
@@ -91,7 +139,7 @@ public class VietQRService {
      */
     public VietQRGenerateResponse generateQRCode(BigDecimal amount, String content, String orderId) {
         try {
-            log.info("Generating VietQR QR code for order: {}, amount: {} VND, content: {}", orderId, amount, content);
+            log.debug("Generating VietQR QR code for order: {}, amount: {} VND, content: {}", orderId, amount, content);
             String accessToken = getAccessToken();
             
             HttpHeaders headers = new HttpHeaders();
@@ -115,24 +163,24 @@ public class VietQRService {
             // QR Generate API dùng api.vietqr.org
             String url = vietQRConfig.getQrApiUrl() + "/qr/generate-customer";
             
-            ResponseEntity<VietQRGenerateResponse> response = restTemplate.postForEntity(
+            ResponseEntity<VietQRGenerateResponse> response = timed("generate-qr", () -> restTemplate.postForEntity(
                 url,
                 httpEntity,
                 VietQRGenerateResponse.class
-            );
+            ));
             
             if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
                 VietQRGenerateResponse qrResponse = response.getBody();
-                log.info("VietQR QR code generated successfully for order: {}", orderId);
-                log.info("QR Response details - qrLink: {}, qrCode length: {}, bankName: {}, bankAccount: {}", 
-                    qrResponse.getQrLink() != null ? qrResponse.getQrLink() : "NULL",
-                    qrResponse.getQrCode() != null ? qrResponse.getQrCode().length() : 0,
-                    qrResponse.getBankName(),
-                    qrResponse.getBankAccount());
+                if (log.isDebugEnabled()) {
+                    log.debug("VietQR QR code generated for order: {} - qrLink: {}, qrCode length: {}, bankName: {}, bankAccount: {}",
+                        orderId, qrResponse.getQrLink(),
+                        qrResponse.getQrCode() != null ? qrResponse.getQrCode().length() : 0,
+                        qrResponse.getBankName(), qrResponse.getBankAccount());
+                }
                 return qrResponse;
             } else {
-                log.error("Failed to generate VietQR QR code - Status: {}, Body: {}", 
-                    response.getStatusCode(), response.getBody());
+                log.error("Failed to generate VietQR QR code - Status: {}", response.getStatusCode());
+                log.debug("VietQR QR generate response body: {}", response.getBody());
                 throw new RuntimeException("Failed to generate VietQR QR code: " + response.getStatusCode());
             }
             
@@ -141,4 +189,33 @@ public class VietQRService {
             throw new RuntimeException("Failed to generate VietQR QR code: " + e.getMessage(), e);
         }
     }
+    
+    /**
+     * Như generateQRCode nhưng không chặn thread gọi (chỉ dùng khi isAsync())
+     * Future hoàn thành trên thread của HttpClient, caller nên chuyển sang executor của mình trước khi làm việc nặng
+     */
+    public CompletableFuture<VietQRGenerateResponse> generateQRCodeAsync(BigDecimal amount, String content, String orderId) {
+        if (asyncClient == null) {
+            throw new IllegalStateException("VietQR async client is not enabled (vietqr.client=async)");
+        }
+        log.debug("Generating VietQR QR code (async) for order: {}, amount: {} VND, content: {}", orderId, amount, content);
+        return tokenProvider.getAsync()
+            .thenCompose(accessToken -> asyncClient.generateQRCode(amount.intValue(), content, accessToken));
+    }
+    
+    /**
+     * Đo latency lời gọi ra VietQR (timer gateway.request, tag operation + outcome)
+     */
+    private <T> T timed(String operation, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = call.get();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(meterRegistry.timer("gateway.request",
+                "gateway", "vietqr", "operation", operation, "outcome", outcome));
+        }
+    }
 }
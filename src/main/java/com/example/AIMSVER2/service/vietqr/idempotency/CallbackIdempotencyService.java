@@ -0,0 +1,67 @@
+package com.example.AIMSVER2.service.vietqr.idempotency;
+
+import com.example.AIMSVER2.config.VietQRCallbackConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackRequest;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Dedup callback VietQR bị bank gửi lại, key = (bankCode, transactionId, referenceNumber)
+ * Được gọi ở controller trước khi xử lý để retry không phải match lại payment trong DB
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CallbackIdempotencyService {
+    
+    private final VietQRCallbackConfig vietQRCallbackConfig;
+    private final CallbackIdempotencyStore callbackIdempotencyStore;
+    
+    /**
+     * Tìm response đã trả trước đó cho cùng callback
+     */
+    public Optional<VietQRCallbackResponse> findPreviousResponse(VietQRCallbackRequest request) {
+        String key = keyOf(request);
+        if (key == null) {
+            return Optional.empty();
+        }
+        return callbackIdempotencyStore.find(key);
+    }
+    
+    /**
+     * Lưu response đã trả, chỉ khi thành công (errorReason 00)
+     * "01" (chưa tìm thấy payment / khớp mơ hồ) và "99" (lỗi hệ thống) không được lưu: bank retry sau khi payment
+     * được tạo hoặc đối soát xong phải được xử lý lại thay vì nhận lại lỗi cũ trong suốt ttl
+     */
+    public void remember(VietQRCallbackRequest request, VietQRCallbackResponse response) {
+        String key = keyOf(request);
+        if (key == null || response == null || !"00".equals(response.getErrorReason())) {
+            return;
+        }
+        callbackIdempotencyStore.save(key, response);
+    }
+    
+    /**
+     * Key idempotency, null nếu tắt dedup hoặc callback không có transactionId lẫn referenceNumber
+     */
+    private String keyOf(VietQRCallbackRequest request) {
+        if (!vietQRCallbackConfig.getIdempotency().isEnabled() || request == null) {
+            return null;
+        }
+        if (isBlank(request.getTransactionId()) && isBlank(request.getReferenceNumber())) {
+            return null;
+        }
+        return String.join("|",
+            request.getBankCode() != null ? request.getBankCode() : "",
+            request.getTransactionId() != null ? request.getTransactionId() : "",
+            request.getReferenceNumber() != null ? request.getReferenceNumber() : "");
+    }
+    
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.AIMSVER2.service.vietqr.idempotency;
+
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackResponse;
+
+import java.util.Optional;
+
+/**
+ * Nơi lưu response đã trả cho một callback VietQR, theo idempotency key
+ * Implementation được chọn qua vietqr.callback.idempotency.store
+ */
+public interface CallbackIdempotencyStore {
+    
+    /**
+     * Lấy response đã lưu (nếu còn hạn)
+     */
+    Optional<VietQRCallbackResponse> find(String key);
+    
+    /**
+     * Lưu response cho key
+     */
+    void save(String key, VietQRCallbackResponse response);
+}
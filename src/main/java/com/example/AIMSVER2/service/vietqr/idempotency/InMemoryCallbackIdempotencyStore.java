@@ -0,0 +1,34 @@
+package com.example.AIMSVER2.service.vietqr.idempotency;
+
+import com.example.AIMSVER2.config.VietQRCallbackConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackResponse;
+import com.example.AIMSVER2.util.BoundedTtlCache;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Idempotency store chỉ nằm trong bộ nhớ (mất khi restart)
+ */
+@Component
+@ConditionalOnProperty(prefix = "vietqr.callback.idempotency", name = "store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryCallbackIdempotencyStore implements CallbackIdempotencyStore {
+    
+    private final BoundedTtlCache<String, VietQRCallbackResponse> cache;
+    
+    public InMemoryCallbackIdempotencyStore(VietQRCallbackConfig vietQRCallbackConfig) {
+        VietQRCallbackConfig.Idempotency idempotency = vietQRCallbackConfig.getIdempotency();
+        this.cache = new BoundedTtlCache<>(idempotency.getMaxEntries(), idempotency.getTtl());
+    }
+    
+    @Override
+    public Optional<VietQRCallbackResponse> find(String key) {
+        return cache.get(key);
+    }
+    
+    @Override
+    public void save(String key, VietQRCallbackResponse response) {
+        cache.put(key, response);
+    }
+}
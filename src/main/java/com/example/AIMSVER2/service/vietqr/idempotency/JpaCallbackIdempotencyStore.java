@@ -0,0 +1,93 @@
+package com.example.AIMSVER2.service.vietqr.idempotency;
+
+import com.example.AIMSVER2.config.VietQRCallbackConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackResponse;
+import com.example.AIMSVER2.entity.CallbackIdempotencyRecord;
+import com.example.AIMSVER2.repository.CallbackIdempotencyRepository;
+import com.example.AIMSVER2.util.BoundedTtlCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Idempotency store lưu trong bảng VietQRCallbackIdempotency để dedup vẫn hoạt động sau khi restart
+ * Có cache in-memory phía trước để callback lặp lại không phải query DB
+ */
+@Component
+@ConditionalOnProperty(prefix = "vietqr.callback.idempotency", name = "store", havingValue = "jpa")
+@Slf4j
+public class JpaCallbackIdempotencyStore implements CallbackIdempotencyStore {
+    
+    private final CallbackIdempotencyRepository callbackIdempotencyRepository;
+    private final BoundedTtlCache<String, VietQRCallbackResponse> cache;
+    private final Duration ttl;
+    
+    public JpaCallbackIdempotencyStore(CallbackIdempotencyRepository callbackIdempotencyRepository,
+                                       VietQRCallbackConfig vietQRCallbackConfig) {
+        VietQRCallbackConfig.Idempotency idempotency = vietQRCallbackConfig.getIdempotency();
+        this.callbackIdempotencyRepository = callbackIdempotencyRepository;
+        this.ttl = idempotency.getTtl();
+        this.cache = new BoundedTtlCache<>(idempotency.getMaxEntries(), ttl);
+    }
+    
+    @Override
+    public Optional<VietQRCallbackResponse> find(String key) {
+        Optional<VietQRCallbackResponse> cached = cache.get(key);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        
+        Optional<VietQRCallbackResponse> stored = callbackIdempotencyRepository.findById(key)
+            .filter(record -> record.getCreatedAt().isAfter(LocalDateTime.now().minus(ttl)))
+            .map(JpaCallbackIdempotencyStore::toResponse);
+        stored.ifPresent(response -> cache.put(key, response));
+        return stored;
+    }
+    
+    @Override
+    public void save(String key, VietQRCallbackResponse response) {
+        cache.put(key, response);
+        CallbackIdempotencyRecord record = new CallbackIdempotencyRecord(
+            key,
+            response.isError(),
+            response.getErrorReason(),
+            response.getToastMessage(),
+            response.getObject() != null ? response.getObject().getRefTransactionId() : null,
+            LocalDateTime.now()
+        );
+        try {
+            callbackIdempotencyRepository.save(record);
+        } catch (DataIntegrityViolationException e) {
+            // Một retry khác đã lưu cùng key trước
+            log.debug("Idempotency key already stored: {}", key);
+        }
+    }
+    
+    /**
+     * Xóa các key đã hết hạn
+     */
+    @Scheduled(fixedDelayString = "${vietqr.callback.idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        int deleted = callbackIdempotencyRepository.deleteByCreatedAtBefore(LocalDateTime.now().minus(ttl));
+        if (deleted > 0) {
+            log.info("Purged {} expired VietQR callback idempotency key(s)", deleted);
+        }
+    }
+    
+    private static VietQRCallbackResponse toResponse(CallbackIdempotencyRecord record) {
+        return VietQRCallbackResponse.builder()
+            .error(record.isError())
+            .errorReason(record.getErrorReason())
+            .toastMessage(record.getToastMessage())
+            .object(record.getRefTransactionId() != null
+                ? VietQRCallbackResponse.ResponseObject.builder().refTransactionId(record.getRefTransactionId()).build()
+                : null)
+            .build();
+    }
+}
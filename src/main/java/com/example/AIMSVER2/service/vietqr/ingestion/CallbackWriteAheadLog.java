@@ -0,0 +1,302 @@
+package com.example.AIMSVER2.service.vietqr.ingestion;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Write-ahead log append-only cho callback VietQR, mỗi segment là một file memory-mapped
+ *
+ * Format một record: [int length][byte state][payload UTF-8]
+ * length được ghi sau cùng nên length = 0 đánh dấu cuối segment (kể cả record ghi dở khi crash)
+ * state = 0 (PENDING) được worker đổi thành 1 (PROCESSED) tại chỗ sau khi xử lý xong
+ * Record xử lý lỗi quá số lần cho phép được chép sang dead-letter.jsonl (mỗi dòng một payload) rồi mới đánh dấu PROCESSED
+ */
+@Slf4j
+public class CallbackWriteAheadLog implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final int HEADER_SIZE = Integer.BYTES + 1;
+    private static final byte STATE_PENDING = 0;
+    private static final byte STATE_PROCESSED = 1;
+    private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock deadLetterLock = new ReentrantLock();
+    private final Map<Long, Segment> segments = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingRecords = new AtomicInteger();
+    private Segment active;
+
+    public CallbackWriteAheadLog(Path directory, int segmentSize, boolean fsync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Mở WAL: đọc lại các segment cũ và trả về các record chưa được xử lý (theo thứ tự ghi)
+     */
+    public List<WalRecord> open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream
+                .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .sorted()
+                .toList();
+        }
+
+        List<WalRecord> unprocessed = new ArrayList<>();
+        long lastId = 0;
+        for (Path file : files) {
+            Segment segment = mapSegment(file, segmentIdOf(file));
+            unprocessed.addAll(segment.recover());
+            segments.put(segment.id, segment);
+            lastId = segment.id;
+            active = segment;
+        }
+
+        if (active == null) {
+            active = createSegment(lastId + 1);
+        } else {
+            active.clearTail();
+        }
+        // Segment cũ đã xử lý hết thì xóa luôn
+        for (Segment segment : List.copyOf(segments.values())) {
+            if (segment != active) {
+                segment.sealed = true;
+                deleteIfDrained(segment);
+            }
+        }
+
+        pendingRecords.set(unprocessed.size());
+        log.info("Callback WAL opened at {} with {} segment(s), {} unprocessed record(s)",
+            directory, segments.size(), unprocessed.size());
+        return unprocessed;
+    }
+
+    /**
+     * Ghi payload vào cuối log; khi hàm trả về record đã nằm trên file (và đã force nếu bật fsync)
+     */
+    public WalRecord append(String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        int recordSize = HEADER_SIZE + bytes.length;
+        if (recordSize + Integer.BYTES > segmentSize) {
+            throw new IllegalArgumentException("Callback payload too large for WAL segment: " + bytes.length + " bytes");
+        }
+
+        appendLock.lock();
+        try {
+            // Chừa 4 byte cuối để luôn có chỗ cho marker length = 0
+            if (active.writePosition + recordSize + Integer.BYTES > segmentSize) {
+                rollSegment();
+            }
+            Segment segment = active;
+            int offset = segment.writePosition;
+            MappedByteBuffer buffer = segment.buffer;
+            buffer.put(offset + HEADER_SIZE, bytes);
+            buffer.put(offset + Integer.BYTES, STATE_PENDING);
+            buffer.putInt(offset, bytes.length);
+            if (fsync) {
+                buffer.force(offset, recordSize);
+            }
+            segment.writePosition = offset + recordSize;
+            segment.pending.incrementAndGet();
+            pendingRecords.incrementAndGet();
+            return new WalRecord(segment.id, offset, payload);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Đánh dấu record đã xử lý xong; segment cũ không còn record pending sẽ bị xóa
+     */
+    public void markProcessed(WalRecord record) {
+        Segment segment = segments.get(record.segmentId());
+        if (segment == null) {
+            return;
+        }
+        int stateIndex = record.offset() + Integer.BYTES;
+        if (segment.buffer.get(stateIndex) == STATE_PROCESSED) {
+            return;
+        }
+        segment.buffer.put(stateIndex, STATE_PROCESSED);
+        if (fsync) {
+            segment.buffer.force(stateIndex, 1);
+        }
+        pendingRecords.decrementAndGet();
+        if (segment.pending.decrementAndGet() == 0 && segment.sealed) {
+            deleteIfDrained(segment);
+        }
+    }
+
+    /**
+     * Chép payload của record sang file dead letter (để đối soát / xử lý tay) rồi đánh dấu PROCESSED
+     * Ghi file lỗi thì record vẫn PENDING và sẽ được replay ở lần khởi động sau
+     */
+    public void deadLetter(WalRecord record) {
+        byte[] line = (record.payload() + "\n").getBytes(StandardCharsets.UTF_8);
+        deadLetterLock.lock();
+        try (FileChannel channel = FileChannel.open(deadLetterFile(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(line));
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write callback dead letter", e);
+        } finally {
+            deadLetterLock.unlock();
+        }
+        markProcessed(record);
+    }
+
+    public Path deadLetterFile() {
+        return directory.resolve(DEAD_LETTER_FILE);
+    }
+
+    /**
+     * Số record đã ghi nhưng chưa xử lý xong
+     */
+    public int pendingCount() {
+        return pendingRecords.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+            segments.clear();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void rollSegment() {
+        Segment previous = active;
+        try {
+            active = createSegment(previous.id + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create callback WAL segment", e);
+        }
+        previous.buffer.force();
+        previous.sealed = true;
+        deleteIfDrained(previous);
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = mapSegment(file, id);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment mapSegment(Path file, long id) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(id, file, channel, buffer);
+    }
+
+    private void deleteIfDrained(Segment segment) {
+        if (segment.pending.get() > 0 || segments.remove(segment.id) == null) {
+            return;
+        }
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+            log.debug("Deleted drained callback WAL segment {}", segment.file);
+        } catch (IOException e) {
+            log.warn("Could not delete callback WAL segment {}: {}", segment.file, e.getMessage());
+        }
+    }
+
+    private static long segmentIdOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Vị trí của một callback trong WAL
+     */
+    public record WalRecord(long segmentId, int offset, String payload) {
+    }
+
+    private final class Segment {
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean sealed;
+        private int writePosition;
+
+        private Segment(long id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Quét segment từ đầu, đặt lại writePosition và trả về các record PENDING
+         */
+        private List<WalRecord> recover() {
+            List<WalRecord> unprocessed = new ArrayList<>();
+            int offset = 0;
+            while (offset + HEADER_SIZE <= segmentSize) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || offset + HEADER_SIZE + length > segmentSize) {
+                    break;
+                }
+                if (buffer.get(offset + Integer.BYTES) == STATE_PENDING) {
+                    byte[] bytes = new byte[length];
+                    buffer.get(offset + HEADER_SIZE, bytes);
+                    unprocessed.add(new WalRecord(id, offset, new String(bytes, StandardCharsets.UTF_8)));
+                    pending.incrementAndGet();
+                }
+                offset += HEADER_SIZE + length;
+            }
+            writePosition = offset;
+            return unprocessed;
+        }
+
+        /**
+         * Xóa phần sau writePosition (có thể còn dữ liệu của record ghi dở trước khi crash)
+         * để lần append tiếp theo không đọc nhầm byte cũ thành length
+         */
+        private void clearTail() {
+            for (int i = writePosition; i < segmentSize; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+    }
+}
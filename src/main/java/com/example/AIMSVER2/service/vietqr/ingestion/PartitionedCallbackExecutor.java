@@ -0,0 +1,121 @@
+package com.example.AIMSVER2.service.vietqr.ingestion;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Chạy task trên N lane, mỗi lane một thread và một hàng đợi riêng
+ *
+ * - Task cùng partition key luôn vào cùng lane nên chạy tuần tự theo thứ tự được gửi,
+ *   task khác key chạy song song trên các lane khác nhau
+ * - Lane đầy thì thread gửi phải chờ (backpressure); không cho thread gửi tự chạy task
+ *   vì như vậy task có thể chạy song song với task cùng key đang nằm trong lane
+ * - Task không có key được rải ngẫu nhiên vào các lane
+ */
+public class PartitionedCallbackExecutor {
+
+    private final ThreadPoolExecutor[] lanes;
+    private final LongAdder blockedSubmits = new LongAdder();
+
+    public PartitionedCallbackExecutor(int laneCount, int queueCapacityPerLane, String threadNamePrefix) {
+        if (laneCount < 1 || queueCapacityPerLane < 1) {
+            throw new IllegalArgumentException("laneCount and queueCapacityPerLane must be positive");
+        }
+        lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String threadName = threadNamePrefix + (i + 1);
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacityPerLane),
+                r -> {
+                    Thread thread = new Thread(r, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Callback lane " + threadName + " is shut down");
+                    }
+                    blockedSubmits.increment();
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for callback lane " + threadName, e);
+                    }
+                });
+        }
+    }
+
+    /**
+     * Gửi task vào lane của key; future hoàn thành (hoặc lỗi) khi task chạy xong
+     */
+    public <T> CompletableFuture<T> submit(String partitionKey, Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        lanes[laneOf(partitionKey)].execute(() -> {
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    int laneOf(String partitionKey) {
+        if (partitionKey == null) {
+            return ThreadLocalRandom.current().nextInt(lanes.length);
+        }
+        return Math.floorMod(partitionKey.hashCode(), lanes.length);
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Tổng số task đang chờ trong các lane
+     */
+    public int queuedCount() {
+        int queued = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            queued += lane.getQueue().size();
+        }
+        return queued;
+    }
+
+    /**
+     * Số lần thread gửi phải chờ vì lane đầy
+     */
+    public long blockedSubmitCount() {
+        return blockedSubmits.sum();
+    }
+
+    /**
+     * Ngừng nhận task và chờ các lane chạy hết task đang có
+     *
+     * @return true nếu mọi lane đã xong trong thời gian chờ
+     */
+    public boolean shutdown(Duration timeout) throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.nanoTime() + timeout.toNanos();
+        boolean drained = true;
+        for (ThreadPoolExecutor lane : lanes) {
+            drained &= lane.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        if (!drained) {
+            for (ThreadPoolExecutor lane : lanes) {
+                lane.shutdownNow();
+            }
+        }
+        return drained;
+    }
+}
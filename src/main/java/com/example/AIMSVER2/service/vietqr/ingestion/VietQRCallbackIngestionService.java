@@ -0,0 +1,263 @@
+package com.example.AIMSVER2.service.vietqr.ingestion;
+
+import com.example.AIMSVER2.config.VietQRCallbackConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackRequest;
+import com.example.AIMSVER2.service.vietqr.VietQRCallbackService;
+import com.example.AIMSVER2.service.vietqr.VietQRMatchKeys;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Điều phối xử lý callback VietQR qua các lane (PartitionedCallbackExecutor)
+ *
+ * - Callback cùng giao dịch (transactionId, referenceNumber, orderId...) luôn vào cùng lane nên không chạy song song,
+ *   callback của các payment khác nhau chạy song song trên các lane
+ * - Chế độ đồng bộ: thread nhận request chờ lane xử lý xong rồi trả kết quả
+ * - Chế độ bất đồng bộ: ghi request vào WAL, trả lời ngay cho VietQR, lane xử lý sau
+ * - @Version trên Payment là chốt chặn cuối (instance khác, expiry sweeper): xung đột thì xử lý lại một lần,
+ *   lần sau sẽ đọc được status mới
+ * - Callback trong WAL xử lý lỗi (DB down...) được thử lại với backoff lũy thừa; quá maxAttempts thì chuyển sang
+ *   dead letter (CallbackWriteAheadLog.deadLetter) và tăng vietqr.callback.ingestion.dead.lettered
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VietQRCallbackIngestionService {
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final VietQRCallbackConfig vietQRCallbackConfig;
+    private final VietQRCallbackService vietQRCallbackService;
+    private final MeterRegistry meterRegistry;
+
+    private final Gson gson = new Gson();
+
+    private CallbackWriteAheadLog writeAheadLog;
+    private PartitionedCallbackExecutor lanes;
+    private ScheduledExecutorService retryScheduler;
+    private List<CallbackWriteAheadLog.WalRecord> recoveredRecords = List.of();
+    private Counter acceptedCounter;
+    private Counter optimisticConflictCounter;
+    private Counter retryCounter;
+    private Counter deadLetterCounter;
+
+    @PostConstruct
+    public void init() {
+        VietQRCallbackConfig.Ingestion ingestion = vietQRCallbackConfig.getIngestion();
+        int laneCount = Math.max(1, ingestion.getWorkerThreads());
+        lanes = new PartitionedCallbackExecutor(laneCount,
+            Math.max(1, ingestion.getQueueCapacity() / laneCount), "vietqr-callback-lane-");
+
+        acceptedCounter = meterRegistry.counter("vietqr.callback.ingestion.accepted");
+        optimisticConflictCounter = Counter.builder("vietqr.callback.optimistic.conflicts")
+            .description("Callback phải xử lý lại vì Payment vừa được ghi ở nơi khác")
+            .register(meterRegistry);
+        FunctionCounter.builder("vietqr.callback.lanes.blocked", lanes, PartitionedCallbackExecutor::blockedSubmitCount)
+            .description("Số lần thread nhận callback phải chờ vì lane đầy")
+            .register(meterRegistry);
+        Gauge.builder("vietqr.callback.ingestion.queue.size", lanes, PartitionedCallbackExecutor::queuedCount)
+            .description("Callback đang chờ trong các lane")
+            .register(meterRegistry);
+
+        if (!ingestion.isAsync()) {
+            return;
+        }
+
+        writeAheadLog = new CallbackWriteAheadLog(
+            Path.of(ingestion.getWalDirectory()), ingestion.getSegmentSizeBytes(), ingestion.isFsync());
+        try {
+            recoveredRecords = writeAheadLog.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open VietQR callback WAL at " + ingestion.getWalDirectory(), e);
+        }
+        Gauge.builder("vietqr.callback.ingestion.wal.pending", writeAheadLog, CallbackWriteAheadLog::pendingCount)
+            .description("Callback đã ghi WAL nhưng chưa xử lý xong")
+            .register(meterRegistry);
+        retryCounter = Counter.builder("vietqr.callback.ingestion.retries")
+            .description("Số lần xử lý lại callback trong WAL sau khi lỗi")
+            .register(meterRegistry);
+        deadLetterCounter = Counter.builder("vietqr.callback.ingestion.dead.lettered")
+            .description("Callback xử lý lỗi quá max-attempts, đã chuyển sang dead letter")
+            .register(meterRegistry);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vietqr-callback-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Xử lý lại các callback còn PENDING trong WAL từ lần chạy trước
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOnStartup() {
+        if (!isAsync() || recoveredRecords.isEmpty()) {
+            return;
+        }
+        log.info("Replaying {} unprocessed VietQR callback(s) from WAL", recoveredRecords.size());
+        recoveredRecords.forEach(record -> dispatch(record, gson.fromJson(record.payload(), VietQRCallbackRequest.class)));
+        recoveredRecords = List.of();
+    }
+
+    public boolean isAsync() {
+        return writeAheadLog != null;
+    }
+
+    /**
+     * Ghi callback vào WAL và đưa vào lane xử lý
+     * Khi hàm trả về, callback đã được lưu bền vững và có thể ack cho VietQR
+     */
+    public void submit(VietQRCallbackRequest request) {
+        CallbackWriteAheadLog.WalRecord record = writeAheadLog.append(gson.toJson(request));
+        acceptedCounter.increment();
+        dispatch(record, request);
+    }
+
+    /**
+     * Xử lý callback trên lane của nó và chờ kết quả (chế độ đồng bộ)
+     *
+     * @return Kết quả của VietQRCallbackService.processCallback
+     */
+    public boolean process(VietQRCallbackRequest request) {
+        try {
+            return lanes.submit(partitionKey(request), () -> processWithRetry(request)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Khóa phân lane: các lần gửi lại của cùng một giao dịch mang cùng các field này
+     */
+    static String partitionKey(VietQRCallbackRequest request) {
+        if (hasText(request.getTransactionId())) {
+            return request.getTransactionId();
+        }
+        if (hasText(request.getReferenceNumber())) {
+            return request.getReferenceNumber();
+        }
+        if (hasText(request.getOrderId())) {
+            return "order:" + request.getOrderId();
+        }
+        if (request.getAmount() == null && !hasText(request.getContent())) {
+            return null;
+        }
+        return request.getAmount() + ":" + VietQRMatchKeys.callbackContentKey(request.getContent());
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    private void dispatch(CallbackWriteAheadLog.WalRecord record, VietQRCallbackRequest request) {
+        dispatch(record, request, 1);
+    }
+
+    private void dispatch(CallbackWriteAheadLog.WalRecord record, VietQRCallbackRequest request, int attempt) {
+        lanes.submit(partitionKey(request), () -> {
+            process(record, request, attempt);
+            return null;
+        });
+    }
+
+    private void process(CallbackWriteAheadLog.WalRecord record, VietQRCallbackRequest request, int attempt) {
+        try {
+            boolean success = processWithRetry(request);
+            if (!success) {
+                log.warn("Queued VietQR callback could not be matched: transactionId={}, referenceNumber={}",
+                    request.getTransactionId(), request.getReferenceNumber());
+            }
+            writeAheadLog.markProcessed(record);
+        } catch (Exception e) {
+            onFailure(record, request, attempt, e);
+        }
+    }
+
+    /**
+     * Hẹn xử lý lại sau backoff; hết số lần thì chuyển sang dead letter
+     * Record vẫn PENDING trong WAL suốt thời gian chờ nên restart giữa chừng sẽ replay nó
+     */
+    private void onFailure(CallbackWriteAheadLog.WalRecord record, VietQRCallbackRequest request, int attempt, Exception e) {
+        VietQRCallbackConfig.Ingestion ingestion = vietQRCallbackConfig.getIngestion();
+        if (attempt < ingestion.getMaxAttempts()) {
+            Duration delay = retryDelay(attempt, ingestion.getRetryBackoff(), ingestion.getRetryMaxBackoff());
+            log.warn("Error processing queued VietQR callback (segment={}, offset={}, attempt {}/{}), retrying in {}ms: {}",
+                record.segmentId(), record.offset(), attempt, ingestion.getMaxAttempts(), delay.toMillis(), e.getMessage());
+            try {
+                retryScheduler.schedule(() -> dispatch(record, request, attempt + 1), delay.toMillis(), TimeUnit.MILLISECONDS);
+                retryCounter.increment();
+            } catch (RejectedExecutionException shuttingDown) {
+                // Đang shutdown: record còn PENDING, replay ở lần khởi động sau
+            }
+            return;
+        }
+        log.error("Giving up on queued VietQR callback after {} attempt(s), moving to dead letter (segment={}, offset={}, transactionId={}): ",
+            attempt, record.segmentId(), record.offset(), request.getTransactionId(), e);
+        try {
+            writeAheadLog.deadLetter(record);
+            deadLetterCounter.increment();
+        } catch (UncheckedIOException ioe) {
+            log.error("Could not dead-letter VietQR callback, it stays pending in WAL: {}", ioe.getMessage());
+        }
+    }
+
+    /**
+     * backoff * 2^(attempt - 1), tối đa maxBackoff
+     */
+    static Duration retryDelay(int attempt, Duration backoff, Duration maxBackoff) {
+        Duration delay = backoff;
+        for (int i = 1; i < attempt && delay.compareTo(maxBackoff) < 0; i++) {
+            delay = delay.multipliedBy(2);
+        }
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    private boolean processWithRetry(VietQRCallbackRequest request) {
+        try {
+            return vietQRCallbackService.processCallback(request);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            optimisticConflictCounter.increment();
+            log.info("Payment changed while processing VietQR callback, retrying: transactionId={}, referenceNumber={}",
+                request.getTransactionId(), request.getReferenceNumber());
+            return vietQRCallbackService.processCallback(request);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, InterruptedException {
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+        }
+        if (lanes != null && !lanes.shutdown(SHUTDOWN_TIMEOUT)) {
+            log.warn("VietQR callback lanes did not drain in time, remaining callbacks will be replayed on restart");
+        }
+        if (isAsync()) {
+            writeAheadLog.close();
+        }
+    }
+}
@@ -3,12 +3,32 @@ package com.example.AIMSVER2.strategy;
 import com.example.AIMSVER2.dto.PaymentRequest;
 import com.example.AIMSVER2.dto.PaymentResponse;
 
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 public interface PaymentStrategy {
     /**
      * Tạo payment request và trả về payment response
      */
     PaymentResponse createPayment(PaymentRequest request);
     
+    /**
+     * Tạo payment không cần gọi gateway (ví dụ QR tạo sẵn); PaymentService gọi trước createPaymentAsync,
+     * empty thì mới gọi gateway. Decorator (circuit breaker, bulkhead) chỉ chuyển tiếp, không bọc lời gọi này
+     */
+    default Optional<PaymentResponse> createPaymentLocally(PaymentRequest request) {
+        return Optional.empty();
+    }
+    
+    /**
+     * Tạo payment bất đồng bộ trên executor cho gateway (không chạy trong transaction)
+     * Strategy có client non-blocking có thể override
+     */
+    default CompletableFuture<PaymentResponse> createPaymentAsync(PaymentRequest request, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> createPayment(request), executor);
+    }
+    
     /**
      * Xác nhận payment sau khi người dùng thanh toán
      */
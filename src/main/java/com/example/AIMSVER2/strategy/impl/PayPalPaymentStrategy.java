@@ -2,6 +2,7 @@ package com.example.AIMSVER2.strategy.impl;
 
 import com.example.AIMSVER2.dto.PaymentRequest;
 import com.example.AIMSVER2.dto.PaymentResponse;
+import com.example.AIMSVER2.resilience.ClientErrors;
 import com.example.AIMSVER2.service.paypal.PayPalService;
 import com.example.AIMSVER2.strategy.PaymentStrategy;
 import com.paypal.api.payments.Links;
@@ -86,6 +87,7 @@ public class PayPalPaymentStrategy implements PaymentStrategy {
             return PaymentResponse.builder()
                 .status("FAILED")
                 .message("Failed to create PayPal payment: " + e.getMessage())
+                .clientError(ClientErrors.isClientError(e.getResponsecode()))
                 .build();
         }
     }
@@ -124,6 +126,7 @@ public class PayPalPaymentStrategy implements PaymentStrategy {
             return PaymentResponse.builder()
                 .status("FAILED")
                 .message("Failed to confirm PayPal payment: " + e.getMessage())
+                .clientError(ClientErrors.isClientError(e.getResponsecode()))
                 .build();
         }
     }
@@ -3,14 +3,23 @@ package com.example.AIMSVER2.strategy.impl;
 import com.example.AIMSVER2.config.VietQRConfig;
 import com.example.AIMSVER2.dto.PaymentRequest;
 import com.example.AIMSVER2.dto.PaymentResponse;
+import com.example.AIMSVER2.dto.vietqr.VietQRGenerateResponse;
+import com.example.AIMSVER2.resilience.ClientErrors;
+import com.example.AIMSVER2.service.vietqr.VietQRLocalQrGenerator;
+import com.example.AIMSVER2.service.vietqr.VietQRQrPool;
 import com.example.AIMSVER2.service.vietqr.VietQRService;
 import com.example.AIMSVER2.strategy.PaymentStrategy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @Component
 @RequiredArgsConstructor
@@ -19,6 +28,38 @@ public class VietQRPaymentStrategy implements PaymentStrategy {
     
     private final VietQRService vietQRService;
     private final VietQRConfig vietQRConfig;
+    private final ObjectProvider<VietQRQrPool> qrPoolProvider; // Chỉ có khi vietqr.qr-pool.enabled=true
+    private final ObjectProvider<VietQRLocalQrGenerator> localQrGeneratorProvider; // Chỉ có khi vietqr.qr-mode=local
+    
+    /**
+     * Không cần gọi gateway khi:
+     * - (số tiền, description) là một entry của vietqr.qr-pool và pool còn QR tạo sẵn
+     * - vietqr.qr-mode=local: payload QR được dựng ngay trong process
+     */
+    @Override
+    public Optional<PaymentResponse> createPaymentLocally(PaymentRequest request) {
+        VietQRQrPool qrPool = qrPoolProvider.getIfAvailable();
+        if (qrPool != null) {
+            Optional<VietQRQrPool.Lease> lease = qrPool.lease(request.getAmount(), request.getDescription());
+            if (lease.isPresent()) {
+                log.info("Using pre-generated VietQR QR code for order: {}, amount: {}",
+                    request.getOrderId(), request.getAmount());
+                return Optional.of(toPaymentResponse(request, lease.get().response(), lease.get().content(),
+                    lease.get().expiresAt()));
+            }
+        }
+        VietQRLocalQrGenerator localQrGenerator = localQrGeneratorProvider.getIfAvailable();
+        if (localQrGenerator == null) {
+            return Optional.empty();
+        }
+        try {
+            var qrResponse = localQrGenerator.generateQRCode(toVnd(request), request.getDescription());
+            // Nội dung QR local có mã tham chiếu ở đầu, lưu làm description để content key của payment khớp callback
+            return Optional.of(toPaymentResponse(request, qrResponse, qrResponse.getContent(), newQrExpiresAt()));
+        } catch (RuntimeException e) {
+            return Optional.of(failedResponse(e));
+        }
+    }
     
     @Override
     public PaymentResponse createPayment(PaymentRequest request) {
@@ -26,66 +67,112 @@ public class VietQRPaymentStrategy implements PaymentStrategy {
             log.info("Creating VietQR payment for order: {}, amount: {}", 
                 request.getOrderId(), request.getAmount());
             
-            // Generate QR code từ VietQR API
-            // Lưu ý: VietQR API yêu cầu amount là VND (số nguyên)
-            // Convert amount từ USD sang VND nếu cần
-            BigDecimal amountInVND = request.getAmount().multiply(
-                BigDecimal.valueOf(vietQRConfig.getUsdToVndRate())
-            );
-            
-            log.info("Converting amount from USD {} to VND {}", request.getAmount(), amountInVND);
-            
             var qrResponse = vietQRService.generateQRCode(
-                amountInVND,
+                toVnd(request),
                 request.getDescription(),
                 String.valueOf(request.getOrderId())
             );
-            
-            // Log để debug
-            log.info("VietQR Response - qrLink: {}, qrCode: {}, bankName: {}, bankAccount: {}", 
-                qrResponse.getQrLink() != null ? qrResponse.getQrLink().substring(0, Math.min(50, qrResponse.getQrLink().length())) + "..." : "NULL",
-                qrResponse.getQrCode() != null ? "PRESENT" : "NULL",
-                qrResponse.getBankName(),
-                qrResponse.getBankAccount());
-            
-            // Convert amount từ VND sang BigDecimal (nếu cần)
-            // VietQR trả về amount là String (VND), nhưng request có thể là USD
-            // Giữ nguyên amount từ request
-            
-            PaymentResponse.PaymentResponseBuilder builder = PaymentResponse.builder()
-                .status("PENDING")
-                .amount(request.getAmount())
-                .description(request.getDescription())
-                .paymentMethod("VIETQR")
-                .qrCodeUrl(qrResponse.getQrLink()) // URL để hiển thị QR code page (https://pro.vietqr.vn/qr-generated?token=...)
-                .qrCode(qrResponse.getQrCode()) // QR code data string (EMV format, not base64 image)
-                .transactionId(qrResponse.getTransactionRefId()) // Transaction reference ID từ VietQR
-                .createdAt(LocalDateTime.now())
-                .expiresAt(LocalDateTime.now().plusMinutes(15)); // QR code thường expire sau 15 phút
-            
-            // Thêm thông tin bank nếu có
-            if (qrResponse.getBankName() != null) {
-                builder.bankName(qrResponse.getBankName());
-            }
-            if (qrResponse.getBankAccount() != null) {
-                builder.bankAccount(qrResponse.getBankAccount());
-            }
-            
-            builder.message(String.format("QR code generated. Bank: %s, Account: %s. Please scan QR code to pay.", 
-                qrResponse.getBankName() != null ? qrResponse.getBankName() : "N/A",
-                qrResponse.getBankAccount() != null ? qrResponse.getBankAccount() : "N/A"));
-            
-            return builder.build();
+            return toPaymentResponse(request, qrResponse, request.getDescription(), newQrExpiresAt());
                 
         } catch (Exception e) {
-            log.error("Error creating VietQR payment: ", e);
-            return PaymentResponse.builder()
-                .status("FAILED")
-                .message("Failed to create VietQR payment: " + e.getMessage())
-                .build();
+            return failedResponse(e);
         }
     }
     
+    /**
+     * vietqr.client=async: chờ gateway không giữ thread nào; phần dựng response (và finalize của PaymentService
+     * nối phía sau) được chuyển về executor thay vì chạy trên thread của HttpClient
+     */
+    @Override
+    public CompletableFuture<PaymentResponse> createPaymentAsync(PaymentRequest request, Executor executor) {
+        if (!vietQRService.isAsync()) {
+            return PaymentStrategy.super.createPaymentAsync(request, executor);
+        }
+        log.info("Creating VietQR payment (async) for order: {}, amount: {}", 
+            request.getOrderId(), request.getAmount());
+        try {
+            return vietQRService.generateQRCodeAsync(
+                    toVnd(request),
+                    request.getDescription(),
+                    String.valueOf(request.getOrderId()))
+                .handleAsync((qrResponse, error) -> error == null
+                    ? toPaymentResponse(request, qrResponse, request.getDescription(), newQrExpiresAt())
+                    : failedResponse(error instanceof CompletionException ? error.getCause() : error), executor);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(failedResponse(e));
+        }
+    }
+    
+    /**
+     * VietQR API yêu cầu amount là VND (số nguyên), request tính theo USD
+     */
+    private BigDecimal toVnd(PaymentRequest request) {
+        BigDecimal amountInVND = request.getAmount().multiply(
+            BigDecimal.valueOf(vietQRConfig.getUsdToVndRate())
+        );
+        log.info("Converting amount from USD {} to VND {}", request.getAmount(), amountInVND);
+        return amountInVND;
+    }
+    
+    /**
+     * @param description Nội dung đã đưa vào QR (QR từ pool có thêm mã tham chiếu), PaymentService lấy content key từ đây
+     * @param expiresAt QR mới tạo: newQrExpiresAt(); QR lấy từ pool tính hạn từ lúc tạo
+     */
+    private PaymentResponse toPaymentResponse(PaymentRequest request, VietQRGenerateResponse qrResponse,
+                                              String description, LocalDateTime expiresAt) {
+        // Log để debug
+        log.info("VietQR Response - qrLink: {}, qrCode: {}, bankName: {}, bankAccount: {}", 
+            qrResponse.getQrLink() != null ? qrResponse.getQrLink().substring(0, Math.min(50, qrResponse.getQrLink().length())) + "..." : "NULL",
+            qrResponse.getQrCode() != null ? "PRESENT" : "NULL",
+            qrResponse.getBankName(),
+            qrResponse.getBankAccount());
+        
+        // Convert amount từ VND sang BigDecimal (nếu cần)
+        // VietQR trả về amount là String (VND), nhưng request có thể là USD
+        // Giữ nguyên amount từ request
+        
+        PaymentResponse.PaymentResponseBuilder builder = PaymentResponse.builder()
+            .status("PENDING")
+            .amount(request.getAmount())
+            .description(description)
+            .paymentMethod("VIETQR")
+            .qrCodeUrl(qrResponse.getQrLink()) // URL để hiển thị QR code page (https://pro.vietqr.vn/qr-generated?token=...)
+            .qrCode(qrResponse.getQrCode()) // QR code data string (EMV format, not base64 image)
+            .transactionId(qrResponse.getTransactionRefId()) // Transaction reference ID từ VietQR
+            .createdAt(LocalDateTime.now())
+            .expiresAt(expiresAt);
+        
+        // Thêm thông tin bank nếu có
+        if (qrResponse.getBankName() != null) {
+            builder.bankName(qrResponse.getBankName());
+        }
+        if (qrResponse.getBankAccount() != null) {
+            builder.bankAccount(qrResponse.getBankAccount());
+        }
+        
+        builder.message(String.format("QR code generated. Bank: %s, Account: %s. Please scan QR code to pay.", 
+            qrResponse.getBankName() != null ? qrResponse.getBankName() : "N/A",
+            qrResponse.getBankAccount() != null ? qrResponse.getBankAccount() : "N/A"));
+        
+        return builder.build();
+    }
+    
+    /**
+     * Hạn của QR vừa tạo (vietqr.qr-lifetime)
+     */
+    private LocalDateTime newQrExpiresAt() {
+        return LocalDateTime.now().plus(vietQRConfig.getQrLifetime());
+    }
+    
+    private PaymentResponse failedResponse(Throwable e) {
+        log.error("Error creating VietQR payment: ", e);
+        return PaymentResponse.builder()
+            .status("FAILED")
+            .message("Failed to create VietQR payment: " + e.getMessage())
+            .clientError(ClientErrors.isClientError(e))
+            .build();
+    }
+    
     @Override
     public PaymentResponse confirmPayment(String paymentId, String payerId) {
         // VietQR không có API để confirm payment tự động
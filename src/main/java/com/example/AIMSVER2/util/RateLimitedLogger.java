@@ -0,0 +1,76 @@
+package com.example.AIMSVER2.util;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * WARN có giới hạn tần suất cho các cảnh báo lặp lại theo từng request (callback không khớp, dữ liệu sai...)
+ *
+ * Mỗi key chỉ được log tối đa maxPerWindow lần trong một window; các lần bị bỏ được đếm
+ * và in kèm ở lần log kế tiếp của key đó, nên không mất thông tin về số lượng
+ */
+public final class RateLimitedLogger {
+
+    private final Logger logger;
+    private final int maxPerWindow;
+    private final long windowNanos;
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    public RateLimitedLogger(Logger logger, int maxPerWindow, Duration window) {
+        this.logger = logger;
+        this.maxPerWindow = maxPerWindow;
+        this.windowNanos = window.toNanos();
+    }
+
+    public void warn(String key, String format, Object... args) {
+        if (!logger.isWarnEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long suppressed = windows.computeIfAbsent(key, k -> new Window(now - windowNanos))
+            .tryAcquire(now, windowNanos, maxPerWindow);
+        if (suppressed < 0) {
+            return;
+        }
+        if (suppressed == 0) {
+            logger.warn(format, args);
+            return;
+        }
+        Object[] withSuppressed = new Object[args.length + 1];
+        System.arraycopy(args, 0, withSuppressed, 0, args.length);
+        withSuppressed[args.length] = suppressed;
+        logger.warn(format + " ({} similar warning(s) suppressed)", withSuppressed);
+    }
+
+    private static final class Window {
+
+        private long startNanos;
+        private int count;
+        private long suppressed;
+
+        private Window(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * @return Số lần bị bỏ từ lần log trước (>= 0) nếu được log, -1 nếu lần này bị bỏ
+         */
+        private synchronized long tryAcquire(long now, long windowNanos, int maxPerWindow) {
+            if (now - startNanos >= windowNanos) {
+                startNanos = now;
+                count = 0;
+            }
+            if (count < maxPerWindow) {
+                count++;
+                long previouslySuppressed = suppressed;
+                suppressed = 0;
+                return previouslySuppressed;
+            }
+            suppressed++;
+            return -1;
+        }
+    }
+}
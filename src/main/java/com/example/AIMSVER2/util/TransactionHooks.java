@@ -0,0 +1,30 @@
+package com.example.AIMSVER2.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tiện ích chạy action sau khi transaction hiện tại commit
+ * Dùng cho các cấu trúc in-memory (index, queue, cache) chỉ được cập nhật khi dữ liệu trong DB đã chắc chắn
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    /**
+     * Nếu đang trong transaction thì chạy action sau khi commit (rollback thì bỏ qua), nếu không thì chạy ngay
+     */
+    public static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
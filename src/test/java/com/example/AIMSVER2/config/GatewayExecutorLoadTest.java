@@ -0,0 +1,121 @@
+package com.example.AIMSVER2.config;
+
+import com.example.AIMSVER2.dto.PaymentRequest;
+import com.example.AIMSVER2.dto.PaymentResponse;
+import com.example.AIMSVER2.strategy.PaymentStrategy;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * So sánh số createPayment đồng thời (đang chờ gateway) giữa platform thread pool mặc định và virtual thread
+ */
+class GatewayExecutorLoadTest {
+
+	private static final int REQUESTS = 1000;
+	private static final long GATEWAY_LATENCY_MS = 200;
+	private static final int PLATFORM_MAX_IN_FLIGHT = 65; // Pool 64 thread + caller-runs của thread submit
+	// Thời gian tối thiểu khi chỉ PLATFORM_MAX_IN_FLIGHT lời gọi chạy cùng lúc
+	private static final long PLATFORM_MIN_ELAPSED_MS = (REQUESTS / PLATFORM_MAX_IN_FLIGHT) * GATEWAY_LATENCY_MS;
+
+	@Test
+	void platformPoolCapsInFlightGatewayCallsAtMaxPoolSize() throws Exception {
+		ThreadPoolTaskExecutor executor = GatewayExecutorConfig.platformThreadExecutor(16, 64, 500);
+		executor.initialize();
+		try {
+			LoadResult result = runLoad(executor);
+
+			assertEquals(REQUESTS, result.completed());
+			assertTrue(result.maxInFlight() <= PLATFORM_MAX_IN_FLIGHT, "maxInFlight=" + result.maxInFlight());
+			// Các lời gọi phải xếp hàng chờ thread
+			assertTrue(result.elapsedMillis() >= PLATFORM_MIN_ELAPSED_MS, "elapsed=" + result.elapsedMillis() + "ms");
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void virtualThreadsKeepAllGatewayCallsInFlight() throws Exception {
+		try (SimpleAsyncTaskExecutor executor = GatewayExecutorConfig.virtualThreadExecutor(-1)) {
+			LoadResult result = runLoad(executor);
+
+			assertEquals(REQUESTS, result.completed());
+			assertTrue(result.maxInFlight() > PLATFORM_MAX_IN_FLIGHT, "maxInFlight=" + result.maxInFlight());
+			// Không xếp hàng: xong nhanh hơn hẳn mức tối thiểu của platform pool
+			assertTrue(result.elapsedMillis() < PLATFORM_MIN_ELAPSED_MS, "elapsed=" + result.elapsedMillis() + "ms");
+		}
+	}
+
+	@Test
+	void virtualThreadConcurrencyLimitBoundsInFlightGatewayCalls() throws Exception {
+		try (SimpleAsyncTaskExecutor executor = GatewayExecutorConfig.virtualThreadExecutor(100)) {
+			LoadResult result = runLoad(executor);
+
+			assertEquals(REQUESTS, result.completed());
+			assertTrue(result.maxInFlight() <= 100, "maxInFlight=" + result.maxInFlight());
+		}
+	}
+
+	private static LoadResult runLoad(Executor executor) {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+		PaymentStrategy slowGateway = new SlowGatewayStrategy(inFlight, maxInFlight);
+
+		long start = System.nanoTime();
+		List<CompletableFuture<PaymentResponse>> futures = new ArrayList<>();
+		for (int i = 0; i < REQUESTS; i++) {
+			futures.add(slowGateway.createPaymentAsync(new PaymentRequest(), executor));
+		}
+		CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+		int completed = (int) futures.stream().filter(f -> "PENDING".equals(f.join().getStatus())).count();
+		return new LoadResult(completed, maxInFlight.get(), elapsedMillis);
+	}
+
+	private record LoadResult(int completed, int maxInFlight, long elapsedMillis) {
+	}
+
+	/**
+	 * Strategy giả lập gateway chậm (blocking sleep như RestTemplate chờ response)
+	 */
+	private record SlowGatewayStrategy(AtomicInteger inFlight, AtomicInteger maxInFlight) implements PaymentStrategy {
+
+		@Override
+		public PaymentResponse createPayment(PaymentRequest request) {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(GATEWAY_LATENCY_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				inFlight.decrementAndGet();
+			}
+			return PaymentResponse.builder().status("PENDING").build();
+		}
+
+		@Override
+		public PaymentResponse confirmPayment(String paymentId, String payerId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public PaymentResponse cancelPayment(String paymentId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getPaymentMethod() {
+			return "SLOW";
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.example.AIMSVER2.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+	private final AtomicLong now = new AtomicLong();
+	private final CircuitBreaker breaker = new CircuitBreaker("test", 50, 10, 4, Duration.ofSeconds(30), 2, now::get);
+
+	@Test
+	void opensOnceFailureRateReachesThresholdAfterMinimumCalls() {
+		succeedCall();
+		failCall();
+		failCall();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+		failCall();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+		assertFalse(breaker.tryAcquirePermission());
+	}
+
+	@Test
+	void halfOpenProbesCloseTheCircuitWhenTheyAllSucceed() {
+		open();
+		now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+		assertTrue(breaker.tryAcquirePermission());
+		assertTrue(breaker.tryAcquirePermission());
+		assertFalse(breaker.tryAcquirePermission());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+		breaker.onSuccess();
+		breaker.onSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+		assertTrue(breaker.tryAcquirePermission());
+	}
+
+	@Test
+	void failedProbeReopensAndReleasedPermitCanBeReused() {
+		open();
+		now.addAndGet(Duration.ofSeconds(31).toNanos());
+
+		assertTrue(breaker.tryAcquirePermission());
+		assertTrue(breaker.tryAcquirePermission());
+		breaker.releasePermission();
+		assertTrue(breaker.tryAcquirePermission());
+
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+		assertFalse(breaker.tryAcquirePermission());
+	}
+
+	@Test
+	void oldFailuresLeaveTheSlidingWindow() {
+		failCall();
+		failCall();
+		for (int i = 0; i < 10; i++) {
+			succeedCall();
+		}
+		failCall();
+		failCall();
+		failCall();
+
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+	}
+
+	private void open() {
+		for (int i = 0; i < 4; i++) {
+			failCall();
+		}
+		assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+	}
+
+	private void failCall() {
+		assertTrue(breaker.tryAcquirePermission());
+		breaker.onFailure();
+	}
+
+	private void succeedCall() {
+		assertTrue(breaker.tryAcquirePermission());
+		breaker.onSuccess();
+	}
+}
@@ -0,0 +1,33 @@
+package com.example.AIMSVER2.resilience;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientErrorsTest {
+
+	@Test
+	void badRequestsAreClientErrorsButThrottlingAndAuthAreNot() {
+		assertTrue(ClientErrors.isClientError(400));
+		assertTrue(ClientErrors.isClientError(422));
+		assertFalse(ClientErrors.isClientError(401));
+		assertFalse(ClientErrors.isClientError(408));
+		assertFalse(ClientErrors.isClientError(429));
+		assertFalse(ClientErrors.isClientError(503));
+		assertFalse(ClientErrors.isClientError(0)); // Không có HTTP response (lỗi mạng)
+	}
+
+	@Test
+	void causeChainIsInspected() {
+		assertTrue(ClientErrors.isClientError(new RuntimeException("Failed to generate VietQR QR code",
+			new HttpClientErrorException(HttpStatus.BAD_REQUEST))));
+		assertTrue(ClientErrors.isClientError(new IllegalArgumentException("VietQR field 62 too long: 120")));
+		assertFalse(ClientErrors.isClientError(new RuntimeException("Failed to generate VietQR QR code",
+			new HttpServerErrorException(HttpStatus.BAD_GATEWAY))));
+		assertFalse(ClientErrors.isClientError(new RuntimeException("VietQR down")));
+	}
+}
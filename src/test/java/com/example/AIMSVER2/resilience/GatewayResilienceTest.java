@@ -0,0 +1,174 @@
+package com.example.AIMSVER2.resilience;
+
+import com.example.AIMSVER2.dto.PaymentResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GatewayResilienceTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void failedCreateIsRetriedWithBackoffButConfirmIsNot() {
+		GatewayResilience resilience = resilience(2, 10);
+		AtomicInteger calls = new AtomicInteger();
+
+		PaymentResponse created = resilience.execute("create", true,
+			() -> calls.incrementAndGet() == 1 ? response("FAILED") : response("PENDING"));
+		assertEquals("PENDING", created.getStatus());
+		assertEquals(2, calls.get());
+
+		calls.set(0);
+		PaymentResponse confirmed = resilience.execute("confirm", false, () -> {
+			calls.incrementAndGet();
+			return response("FAILED");
+		});
+		assertEquals("FAILED", confirmed.getStatus());
+		assertEquals(1, calls.get());
+		assertEquals(1.0, meterRegistry.get("gateway.retries").tag("operation", "create").counter().count());
+	}
+
+	@Test
+	void openCircuitFailsFastWithoutCallingTheGateway() {
+		GatewayResilience resilience = resilience(1, 10);
+		for (int i = 0; i < 4; i++) {
+			resilience.execute("create", true, () -> response("FAILED"));
+		}
+		assertEquals(CircuitBreaker.State.OPEN, resilience.circuitState());
+
+		AtomicInteger calls = new AtomicInteger();
+		PaymentResponse rejected = resilience.execute("create", true, () -> {
+			calls.incrementAndGet();
+			return response("PENDING");
+		});
+
+		assertEquals("FAILED", rejected.getStatus());
+		assertTrue(rejected.getMessage().contains("circuit open"));
+		assertEquals(0, calls.get());
+		assertEquals(1.0, meterRegistry.get("gateway.calls.rejected").tag("reason", "circuit_open").counter().count());
+		assertEquals(1.0, meterRegistry.get("gateway.circuit.state").tag("state", "open").gauge().value());
+	}
+
+	@Test
+	void clientErrorsAreNotRetriedAndDoNotOpenTheCircuit() {
+		GatewayResilience resilience = resilience(3, 10);
+		AtomicInteger calls = new AtomicInteger();
+
+		for (int i = 0; i < 10; i++) {
+			PaymentResponse rejected = resilience.execute("create", true, () -> {
+				calls.incrementAndGet();
+				return PaymentResponse.builder().status("FAILED").clientError(true).build();
+			});
+			assertEquals("FAILED", rejected.getStatus());
+		}
+		assertThrows(IllegalArgumentException.class, () -> resilience.execute("create", true, () -> {
+			calls.incrementAndGet();
+			throw new IllegalArgumentException("invalid amount");
+		}));
+
+		assertEquals(11, calls.get());
+		assertEquals(CircuitBreaker.State.CLOSED, resilience.circuitState());
+		assertTrue(meterRegistry.find("gateway.retries").counters().isEmpty());
+
+		// Failure rate chỉ tính các lỗi thật của gateway
+		for (int i = 0; i < 4; i++) {
+			resilience.execute("confirm", false, () -> response("FAILED"));
+		}
+		assertEquals(CircuitBreaker.State.OPEN, resilience.circuitState());
+	}
+
+	@Test
+	void asyncClientErrorIsNotRetried() {
+		GatewayResilience resilience = resilience(3, 10);
+		AtomicInteger calls = new AtomicInteger();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CompletableFuture<PaymentResponse> result = resilience.executeAsync("create", true, () -> {
+				calls.incrementAndGet();
+				return CompletableFuture.failedFuture(
+					new RuntimeException("VietQR generate-qr failed", new IllegalArgumentException("bad content")));
+			}, executor);
+
+			assertThrows(CompletionException.class, result::join);
+			assertEquals(1, calls.get());
+			assertEquals(CircuitBreaker.State.CLOSED, resilience.circuitState());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void bulkheadRejectsCallsOverTheConcurrencyLimit() {
+		GatewayResilience resilience = resilience(1, 1);
+		CompletableFuture<PaymentResponse> slowGateway = new CompletableFuture<>();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CompletableFuture<PaymentResponse> first = resilience.executeAsync("create", true, () -> slowGateway, executor);
+			CompletableFuture<PaymentResponse> second = resilience.executeAsync("create", true,
+				() -> CompletableFuture.completedFuture(response("PENDING")), executor);
+
+			assertTrue(second.join().getMessage().contains("too many concurrent calls"));
+			assertEquals(1.0, meterRegistry.get("gateway.bulkhead.in.flight").gauge().value());
+
+			slowGateway.complete(response("PENDING"));
+			assertEquals("PENDING", first.join().getStatus());
+			assertEquals(0.0, meterRegistry.get("gateway.bulkhead.in.flight").gauge().value());
+			assertEquals(1.0, meterRegistry.get("gateway.calls.rejected").tag("reason", "bulkhead_full").counter().count());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void asyncRetryRunsAfterBackoffOnTheGivenExecutor() {
+		GatewayResilience resilience = resilience(3, 10);
+		AtomicInteger calls = new AtomicInteger();
+		ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "gateway-test"));
+		try {
+			PaymentResponse response = resilience.executeAsync("create", true, () -> CompletableFuture.supplyAsync(
+				() -> calls.incrementAndGet() < 3 ? response("FAILED") : response("PENDING"), executor), executor).join();
+
+			assertEquals("PENDING", response.getStatus());
+			assertEquals(3, calls.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void backoffGrowsWithJitterUpToTheCap() {
+		RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(100), Duration.ofMillis(300));
+
+		for (int i = 0; i < 100; i++) {
+			long first = policy.backoff(1).toMillis();
+			long second = policy.backoff(2).toMillis();
+			long capped = policy.backoff(4).toMillis();
+			assertTrue(first >= 50 && first <= 100, "first=" + first);
+			assertTrue(second >= 100 && second <= 200, "second=" + second);
+			assertTrue(capped >= 150 && capped <= 300, "capped=" + capped);
+		}
+	}
+
+	private GatewayResilience resilience(int maxAttempts, int maxConcurrentCalls) {
+		return new GatewayResilience("test",
+			new CircuitBreaker("test", 50, 10, 4, Duration.ofMinutes(1), 1),
+			new Bulkhead(maxConcurrentCalls, Duration.ZERO),
+			new RetryPolicy(maxAttempts, Duration.ofMillis(1), Duration.ofMillis(5)),
+			meterRegistry);
+	}
+
+	private static PaymentResponse response(String status) {
+		return PaymentResponse.builder().status(status).build();
+	}
+}
@@ -0,0 +1,151 @@
+package com.example.AIMSVER2.service;
+
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.event.PaymentStatusChangedEvent;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import com.example.AIMSVER2.service.vietqr.PendingVietQRPaymentIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentExpirySweeperTest {
+
+	private final List<List<Integer>> updates = new ArrayList<>();
+
+	private PaymentRepository paymentRepository;
+	private PendingVietQRPaymentIndex pendingPaymentIndex;
+	private ApplicationEventPublisher eventPublisher;
+	private SimpleMeterRegistry meterRegistry;
+	private PaymentExpirySweeper sweeper;
+
+	@BeforeEach
+	void setUp() {
+		paymentRepository = mock(PaymentRepository.class);
+		pendingPaymentIndex = mock(PendingVietQRPaymentIndex.class);
+		eventPublisher = mock(ApplicationEventPublisher.class);
+		meterRegistry = new SimpleMeterRegistry();
+		when(paymentRepository.expirePending(anyCollection(), any())).thenAnswer(invocation -> {
+			Collection<Integer> ids = invocation.getArgument(0);
+			updates.add(List.copyOf(ids));
+			return ids.size();
+		});
+		when(paymentRepository.findIdsByIdInAndStatus(anyCollection(), eq("EXPIRED")))
+			.thenAnswer(invocation -> List.copyOf(invocation.<Collection<Integer>>getArgument(0)));
+
+		sweeper = new PaymentExpirySweeper(paymentRepository, pendingPaymentIndex, eventPublisher,
+			new TransactionTemplate(mock(PlatformTransactionManager.class)), meterRegistry);
+		ReflectionTestUtils.setField(sweeper, "batchSize", 2);
+		ReflectionTestUtils.setField(sweeper, "gracePeriod", Duration.ZERO);
+		ReflectionTestUtils.setField(sweeper, "processingTimeout", Duration.ofMinutes(2));
+		sweeper.init();
+	}
+
+	@Test
+	void expiresOnlyDuePaymentsInChunks() {
+		for (int id = 1; id <= 5; id++) {
+			sweeper.track(pendingPayment(id, LocalDateTime.now().minusSeconds(id)));
+		}
+		sweeper.track(pendingPayment(6, LocalDateTime.now().plusMinutes(15)));
+
+		sweeper.sweep();
+
+		// 5 payment tới hạn -> 3 câu UPDATE (2 + 2 + 1), payment quá hạn lâu nhất trước
+		assertEquals(List.of(List.of(5, 4), List.of(3, 2), List.of(1)), updates);
+		assertEquals(1, sweeper.queueSize());
+		assertEquals(5.0, meterRegistry.counter("payment.expiry.expired").count());
+		assertEquals(3, meterRegistry.summary("payment.expiry.batch.size").count());
+		verify(pendingPaymentIndex).remove(1);
+		verify(pendingPaymentIndex, never()).remove(6);
+		verify(eventPublisher).publishEvent(new PaymentStatusChangedEvent(1, "EXPIRED"));
+		verify(eventPublisher, never()).publishEvent(new PaymentStatusChangedEvent(6, "EXPIRED"));
+	}
+
+	@Test
+	void publishesEventsOnlyForPaymentsThatWereActuallyExpired() {
+		// Payment 2 đã được thanh toán trước lúc sweep: UPDATE bỏ qua nó và không có event EXPIRED
+		when(paymentRepository.expirePending(anyCollection(), any())).thenReturn(1);
+		when(paymentRepository.findIdsByIdInAndStatus(anyCollection(), eq("EXPIRED"))).thenReturn(List.of(1));
+		sweeper.track(pendingPayment(1, LocalDateTime.now().minusSeconds(2)));
+		sweeper.track(pendingPayment(2, LocalDateTime.now().minusSeconds(1)));
+
+		sweeper.sweep();
+
+		verify(eventPublisher).publishEvent(new PaymentStatusChangedEvent(1, "EXPIRED"));
+		verify(eventPublisher, never()).publishEvent(new PaymentStatusChangedEvent(2, "EXPIRED"));
+		assertEquals(1.0, meterRegistry.counter("payment.expiry.expired").count());
+	}
+
+	@Test
+	void waitsForGracePeriodAfterExpiresAt() {
+		ReflectionTestUtils.setField(sweeper, "gracePeriod", Duration.ofMinutes(5));
+		sweeper.track(pendingPayment(1, LocalDateTime.now().minusMinutes(1)));
+		sweeper.track(pendingPayment(2, LocalDateTime.now().minusMinutes(6)));
+
+		sweeper.sweep();
+
+		assertEquals(List.of(List.of(2)), updates);
+		assertEquals(1, sweeper.queueSize());
+		verify(paymentRepository).expirePending(anyCollection(), argThat(cutoff -> cutoff.isBefore(LocalDateTime.now().minusMinutes(4))));
+	}
+
+	@Test
+	void ignoresPaymentsThatAreNotPendingOrHaveNoExpiry() {
+		Payment completed = pendingPayment(1, LocalDateTime.now().minusMinutes(1));
+		completed.setStatus("COMPLETED");
+		Payment noExpiry = pendingPayment(2, null);
+
+		sweeper.track(completed);
+		sweeper.track(noExpiry);
+		sweeper.sweep();
+
+		assertEquals(0, sweeper.queueSize());
+		verify(paymentRepository, never()).expirePending(anyCollection(), any());
+	}
+
+	@Test
+	void reconcileFailsPaymentsStuckInProcessing() {
+		when(paymentRepository.findIdsByStatusAndCreatedAtBefore(eq("PROCESSING"), any(), any()))
+			.thenReturn(List.of(7, 8), List.of(9));
+		// Payment 8 được finalize trong lúc reconcile: UPDATE bỏ qua nó
+		when(paymentRepository.failStaleProcessing(anyCollection(), any())).thenReturn(1, 1);
+		when(paymentRepository.findIdsByIdInAndStatus(List.of(7, 8), "FAILED")).thenReturn(List.of(7));
+		when(paymentRepository.findIdsByIdInAndStatus(List.of(9), "FAILED")).thenReturn(List.of(9));
+
+		sweeper.reconcile();
+
+		verify(paymentRepository).failStaleProcessing(eq(List.of(7, 8)),
+			argThat(before -> before.isBefore(LocalDateTime.now().minusSeconds(119))));
+		verify(eventPublisher).publishEvent(new PaymentStatusChangedEvent(7, "FAILED"));
+		verify(eventPublisher).publishEvent(new PaymentStatusChangedEvent(9, "FAILED"));
+		verify(eventPublisher, never()).publishEvent(new PaymentStatusChangedEvent(8, "FAILED"));
+		assertEquals(2.0, meterRegistry.counter("payment.expiry.processing.failed").count());
+	}
+
+	private static Payment pendingPayment(int id, LocalDateTime expiresAt) {
+		Payment payment = new Payment();
+		payment.setId(id);
+		payment.setStatus("PENDING");
+		payment.setExpiresAt(expiresAt);
+		return payment;
+	}
+}
@@ -0,0 +1,200 @@
+package com.example.AIMSVER2.service;
+
+import com.example.AIMSVER2.config.GatewayResilienceConfig;
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.dto.PaymentRequest;
+import com.example.AIMSVER2.dto.PaymentResponse;
+import com.example.AIMSVER2.entity.Order;
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.factory.PaymentStrategyFactory;
+import com.example.AIMSVER2.repository.OrderRepository;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import com.example.AIMSVER2.resilience.GatewayResilienceRegistry;
+import com.example.AIMSVER2.service.code.SnowflakePaymentCodeGenerator;
+import com.example.AIMSVER2.service.vietqr.PendingVietQRPaymentIndex;
+import com.example.AIMSVER2.strategy.PaymentStrategy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentServiceTest {
+
+	private final Map<Integer, Payment> paymentTable = new HashMap<>();
+	private final AtomicInteger nextId = new AtomicInteger(100);
+
+	private PaymentRepository paymentRepository;
+	private OrderRepository orderRepository;
+	private PaymentService paymentService;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		paymentRepository = mock(PaymentRepository.class);
+		orderRepository = mock(OrderRepository.class);
+		when(paymentRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+			List<Payment> saved = new ArrayList<>();
+			for (Payment payment : (Iterable<Payment>) invocation.getArgument(0)) {
+				if (payment.getId() == null) {
+					payment.setId(nextId.incrementAndGet());
+				}
+				paymentTable.put(payment.getId(), payment);
+				saved.add(payment);
+			}
+			return saved;
+		});
+		when(paymentRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+			List<Payment> found = new ArrayList<>();
+			((Iterable<Integer>) invocation.getArgument(0)).forEach(id -> found.add(paymentTable.get(id)));
+			return found;
+		});
+
+		GatewayResilienceConfig resilienceConfig = new GatewayResilienceConfig();
+		resilienceConfig.setEnabled(false);
+		PaymentStrategyFactory factory = new PaymentStrategyFactory(List.of(new StubStrategy()),
+			new GatewayResilienceRegistry(resilienceConfig, new SimpleMeterRegistry()));
+		TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+		paymentService = new PaymentService(paymentRepository, orderRepository, factory,
+			mock(PendingVietQRPaymentIndex.class), new VietQRConfig(), mock(PaymentExpirySweeper.class),
+			new SnowflakePaymentCodeGenerator(1), mock(ApplicationEventPublisher.class),
+			transactionTemplate, Executors.newFixedThreadPool(4), new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(paymentService, "batchMaxSize", 500);
+		ReflectionTestUtils.setField(paymentService, "batchParallelism", 2);
+	}
+
+	@Test
+	void createPaymentsReturnsPerItemResultsInRequestOrder() {
+		when(orderRepository.findAllById(anyIterable())).thenReturn(List.of(order(1), order(2)));
+
+		List<PaymentResponse> responses = paymentService.createPayments(List.of(
+			request(1, "STUB", "10.00"),
+			request(99, "STUB", "10.00"),
+			request(2, "BITCOIN", "10.00"),
+			request(2, "STUB", "-1")));
+
+		assertEquals(4, responses.size());
+		assertEquals("PENDING", responses.get(0).getStatus());
+		assertNotNull(responses.get(0).getPaymentId());
+		assertNotNull(responses.get(0).getPaymentCode());
+		assertEquals("Order not found: 99", responses.get(1).getMessage());
+		assertNull(responses.get(1).getPaymentId());
+		assertEquals("FAILED", responses.get(2).getStatus());
+		assertTrue(responses.get(2).getMessage().contains("not supported"));
+		// Gateway lỗi: payment vẫn được lưu, đánh dấu FAILED
+		assertEquals("FAILED", responses.get(3).getStatus());
+		assertEquals("FAILED", paymentTable.get(responses.get(3).getPaymentId()).getStatus());
+		assertEquals("PENDING", paymentTable.get(responses.get(0).getPaymentId()).getStatus());
+
+		// Một query cho Order, một saveAll reserve + một saveAll finalize
+		verify(orderRepository, times(1)).findAllById(anyIterable());
+		verify(paymentRepository, times(2)).saveAll(anyIterable());
+	}
+
+	@Test
+	void createPaymentsReportsMissingPaymentMethodPerItem() {
+		when(orderRepository.findAllById(anyIterable())).thenReturn(List.of(order(1)));
+
+		List<PaymentResponse> responses = paymentService.createPayments(List.of(
+			request(1, null, "10.00"),
+			request(1, "STUB", "10.00")));
+
+		assertEquals("FAILED", responses.get(0).getStatus());
+		assertEquals("Payment method is required", responses.get(0).getMessage());
+		assertEquals("PENDING", responses.get(1).getStatus());
+	}
+
+	@Test
+	@Timeout(10)
+	void synchronousStrategyFailureReleasesPermitAndFailsOnlyThatItem() {
+		when(orderRepository.findAllById(anyIterable())).thenReturn(List.of(order(1)));
+
+		// batchParallelism = 2: permit bị giữ lại thì item thứ ba chờ mãi
+		List<PaymentResponse> responses = paymentService.createPayments(List.of(
+			request(1, "STUB", "0"),
+			request(1, "STUB", "0"),
+			request(1, "STUB", "0"),
+			request(1, "STUB", "10.00")));
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("FAILED", responses.get(i).getStatus());
+			assertTrue(responses.get(i).getMessage().contains("Local QR rejected amount"));
+			assertEquals("FAILED", paymentTable.get(responses.get(i).getPaymentId()).getStatus());
+		}
+		assertEquals("PENDING", responses.get(3).getStatus());
+	}
+
+	private static PaymentRequest request(int orderId, String method, String amount) {
+		PaymentRequest request = new PaymentRequest();
+		request.setOrderId(orderId);
+		request.setPaymentMethod(method);
+		request.setAmount(new BigDecimal(amount));
+		request.setDescription("Thanh toan don hang " + orderId);
+		return request;
+	}
+
+	private static Order order(int id) {
+		Order order = new Order();
+		order.setId(id);
+		return order;
+	}
+
+	private static class StubStrategy implements PaymentStrategy {
+
+		@Override
+		public PaymentResponse createPayment(PaymentRequest request) {
+			if (request.getAmount().signum() < 0) {
+				throw new IllegalStateException("Gateway rejected amount");
+			}
+			return PaymentResponse.builder()
+				.status("PENDING")
+				.transactionId("TX-" + request.getOrderId())
+				.build();
+		}
+
+		@Override
+		public Optional<PaymentResponse> createPaymentLocally(PaymentRequest request) {
+			if (request.getAmount().signum() == 0) {
+				throw new IllegalStateException("Local QR rejected amount");
+			}
+			return Optional.empty();
+		}
+
+		@Override
+		public PaymentResponse confirmPayment(String paymentId, String payerId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public PaymentResponse cancelPayment(String paymentId) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getPaymentMethod() {
+			return "STUB";
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.example.AIMSVER2.service;
+
+import com.example.AIMSVER2.dto.PaymentStatusResponse;
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentStatusCacheTest {
+
+	private PaymentRepository paymentRepository;
+	private SimpleMeterRegistry meterRegistry;
+	private PaymentStatusCache cache;
+	private Payment payment;
+
+	@BeforeEach
+	void setUp() {
+		paymentRepository = mock(PaymentRepository.class);
+		meterRegistry = new SimpleMeterRegistry();
+		cache = new PaymentStatusCache(paymentRepository, meterRegistry, 100, Duration.ofMinutes(10));
+
+		payment = new Payment();
+		payment.setId(7);
+		payment.setPaymentCode("VIETQR-ABCD1234");
+		payment.setTransactionId("TX-7");
+		payment.setPaymentMethod("VIETQR");
+		payment.setStatus("PENDING");
+		when(paymentRepository.findByPaymentCode("VIETQR-ABCD1234")).thenAnswer(invocation -> Optional.of(payment));
+		when(paymentRepository.findByTransactionId("TX-7")).thenAnswer(invocation -> Optional.of(payment));
+	}
+
+	@Test
+	void repeatedPollsAreServedFromCacheUnderBothKeys() {
+		assertEquals("PENDING", cache.findByPaymentCode("VIETQR-ABCD1234").map(PaymentStatusResponse::getStatus).orElseThrow());
+		assertEquals("PENDING", cache.findByPaymentCode("VIETQR-ABCD1234").map(PaymentStatusResponse::getStatus).orElseThrow());
+		assertEquals("PENDING", cache.findByTransactionId("TX-7").map(PaymentStatusResponse::getStatus).orElseThrow());
+
+		verify(paymentRepository, times(1)).findByPaymentCode("VIETQR-ABCD1234");
+		verify(paymentRepository, times(0)).findByTransactionId("TX-7");
+		assertEquals(2.0, meterRegistry.get("payment.status.cache.requests").tag("result", "hit").functionCounter().count());
+		assertEquals(1.0, meterRegistry.get("payment.status.cache.requests").tag("result", "miss").functionCounter().count());
+	}
+
+	@Test
+	void invalidateForcesReloadOfNewStatus() {
+		cache.findByPaymentCode("VIETQR-ABCD1234");
+
+		payment.setStatus("COMPLETED");
+		cache.invalidate(7);
+
+		assertEquals("COMPLETED", cache.findByTransactionId("TX-7").map(PaymentStatusResponse::getStatus).orElseThrow());
+		verify(paymentRepository, times(1)).findByTransactionId("TX-7");
+	}
+
+	@Test
+	void loadRacingWithStatusWriteIsNotCached() {
+		// Status được ghi (và invalidate) trong lúc load đang chạy: kết quả load có thể là status cũ
+		when(paymentRepository.findByPaymentCode("VIETQR-ABCD1234")).thenAnswer(invocation -> {
+			Payment stale = new Payment();
+			stale.setId(7);
+			stale.setPaymentCode("VIETQR-ABCD1234");
+			stale.setStatus("PENDING");
+			payment.setStatus("COMPLETED");
+			cache.invalidate(7);
+			return Optional.of(stale);
+		}).thenAnswer(invocation -> Optional.of(payment));
+
+		assertEquals("PENDING", cache.findByPaymentCode("VIETQR-ABCD1234").map(PaymentStatusResponse::getStatus).orElseThrow());
+		assertEquals("COMPLETED", cache.findByPaymentCode("VIETQR-ABCD1234").map(PaymentStatusResponse::getStatus).orElseThrow());
+		verify(paymentRepository, times(2)).findByPaymentCode("VIETQR-ABCD1234");
+	}
+
+	@Test
+	void invalidateOfAnotherPaymentDuringLoadStillCaches() {
+		when(paymentRepository.findByPaymentCode("VIETQR-ABCD1234")).thenAnswer(invocation -> {
+			cache.invalidate(8);
+			return Optional.of(payment);
+		});
+
+		cache.findByPaymentCode("VIETQR-ABCD1234");
+		cache.findByPaymentCode("VIETQR-ABCD1234");
+
+		verify(paymentRepository, times(1)).findByPaymentCode("VIETQR-ABCD1234");
+	}
+
+	@Test
+	void unknownPaymentIsNotCached() {
+		when(paymentRepository.findByPaymentCode("MISSING")).thenReturn(Optional.empty());
+
+		assertTrue(cache.findByPaymentCode("MISSING").isEmpty());
+		assertTrue(cache.findByPaymentCode("MISSING").isEmpty());
+		verify(paymentRepository, times(2)).findByPaymentCode("MISSING");
+	}
+}
@@ -0,0 +1,100 @@
+package com.example.AIMSVER2.service;
+
+import com.example.AIMSVER2.dto.PaymentStatusResponse;
+import com.example.AIMSVER2.event.PaymentStatusChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentStatusSubscriptionsTest {
+
+	private PaymentStatusCache paymentStatusCache;
+	private PaymentStatusSubscriptions subscriptions;
+
+	@BeforeEach
+	void setUp() {
+		paymentStatusCache = mock(PaymentStatusCache.class);
+		subscriptions = new PaymentStatusSubscriptions(paymentStatusCache, new SimpleMeterRegistry(), 2);
+	}
+
+	@AfterEach
+	void tearDown() {
+		subscriptions.shutdown();
+	}
+
+	@Test
+	void subscribersOfChangedPaymentReceiveNewStatus() throws InterruptedException {
+		when(paymentStatusCache.findById(1)).thenReturn(Optional.of(status(1, "COMPLETED")));
+		BlockingQueue<PaymentStatusResponse> received = new LinkedBlockingQueue<>();
+		BlockingQueue<PaymentStatusResponse> other = new LinkedBlockingQueue<>();
+		subscriptions.subscribe(1, received::add);
+		subscriptions.subscribe(2, other::add);
+
+		subscriptions.onStatusChanged(new PaymentStatusChangedEvent(1, "COMPLETED"));
+
+		PaymentStatusResponse delivered = received.poll(5, TimeUnit.SECONDS);
+		assertEquals("COMPLETED", delivered.getStatus());
+		assertNull(other.poll(100, TimeUnit.MILLISECONDS));
+		verify(paymentStatusCache, never()).findById(2);
+	}
+
+	@Test
+	void eventsWithoutSubscribersDoNotTouchTheCache() {
+		subscriptions.onStatusChanged(new PaymentStatusChangedEvent(9, "EXPIRED"));
+
+		verify(paymentStatusCache, never()).findById(any());
+	}
+
+	@Test
+	void cancelledAndFailingSubscriptionsAreRemoved() {
+		PaymentStatusSubscriptions.Subscription cancelled = subscriptions.subscribe(1, status -> { });
+		PaymentStatusSubscriptions.Subscription failing = subscriptions.subscribe(1, status -> {
+			throw new IllegalStateException("client disconnected");
+		});
+		assertEquals(2, subscriptions.activeCount());
+
+		cancelled.cancel();
+		cancelled.cancel();
+		failing.deliver(status(1, "PENDING"));
+
+		assertEquals(0, subscriptions.activeCount());
+	}
+
+	@Test
+	void rejectsSubscriptionsOverTheLimit() {
+		subscriptions.subscribe(1, status -> { });
+		subscriptions.subscribe(2, status -> { });
+
+		assertThrows(IllegalStateException.class, () -> subscriptions.subscribe(3, status -> { }));
+		assertEquals(2, subscriptions.activeCount());
+	}
+
+	@Test
+	void finalStatuses() {
+		assertTrue(PaymentStatusSubscriptions.isFinal("COMPLETED"));
+		assertTrue(PaymentStatusSubscriptions.isFinal("EXPIRED"));
+		assertFalse(PaymentStatusSubscriptions.isFinal("PENDING"));
+		assertFalse(PaymentStatusSubscriptions.isFinal(null));
+	}
+
+	private static PaymentStatusResponse status(int paymentId, String status) {
+		return PaymentStatusResponse.builder().paymentId(paymentId).status(status).build();
+	}
+}
@@ -0,0 +1,110 @@
+package com.example.AIMSVER2.service.code;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakePaymentCodeGeneratorTest {
+
+	private static final long NOW = SnowflakePaymentCodeGenerator.EPOCH_MILLIS + 1_000_000L;
+
+	@Test
+	void concurrentCallersNeverGetDuplicateOrDecreasingCodes() throws Exception {
+		SnowflakePaymentCodeGenerator generator = new SnowflakePaymentCodeGenerator(7, System::currentTimeMillis);
+		int threads = 16;
+		int perThread = 20_000;
+		Set<String> codes = ConcurrentHashMap.newKeySet();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				results.add(pool.submit(() -> {
+					start.await();
+					String previous = "";
+					boolean increasing = true;
+					for (int i = 0; i < perThread; i++) {
+						String code = generator.next();
+						increasing &= code.compareTo(previous) > 0;
+						codes.add(code);
+						previous = code;
+					}
+					return increasing;
+				}));
+			}
+			start.countDown();
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		assertEquals(threads * perThread, codes.size());
+	}
+
+	@Test
+	void sequenceOverflowBorrowsNextMillisecondInsteadOfRepeating() {
+		SnowflakePaymentCodeGenerator generator = new SnowflakePaymentCodeGenerator(1, () -> NOW);
+
+		long previous = -1;
+		for (int i = 0; i < 10_000; i++) {
+			long id = generator.nextId();
+			assertTrue(id > previous);
+			assertEquals(1, SnowflakePaymentCodeGenerator.nodeIdOf(id));
+			previous = id;
+		}
+	}
+
+	@Test
+	void clockGoingBackwardsKeepsCodesIncreasing() {
+		AtomicLong clock = new AtomicLong(NOW);
+		SnowflakePaymentCodeGenerator generator = new SnowflakePaymentCodeGenerator(3, clock::get);
+
+		String beforeStep = generator.next();
+		clock.addAndGet(-5_000);
+		String afterStep = generator.next();
+
+		assertTrue(afterStep.compareTo(beforeStep) > 0);
+	}
+
+	@Test
+	void differentNodesNeverCollideAtSameInstant() {
+		SnowflakePaymentCodeGenerator first = new SnowflakePaymentCodeGenerator(1, () -> NOW);
+		SnowflakePaymentCodeGenerator second = new SnowflakePaymentCodeGenerator(2, () -> NOW);
+		Set<String> codes = ConcurrentHashMap.newKeySet();
+
+		for (int i = 0; i < 5_000; i++) {
+			codes.add(first.next());
+			codes.add(second.next());
+		}
+
+		assertEquals(10_000, codes.size());
+		assertEquals(SnowflakePaymentCodeGenerator.CODE_LENGTH, first.next().length());
+	}
+
+	@Test
+	void rejectsNodeIdOutsideTenBits() {
+		assertThrows(IllegalArgumentException.class, () -> new SnowflakePaymentCodeGenerator(1024, () -> NOW));
+	}
+
+	@Test
+	void missingNodeIdFailsStartupWhenRequired() {
+		assertThrows(IllegalStateException.class, () -> new SnowflakePaymentCodeGenerator(-1, true));
+		assertEquals(5, SnowflakePaymentCodeGenerator.resolveNodeId(5, true));
+		int fromHostname = SnowflakePaymentCodeGenerator.resolveNodeId(-1, false);
+		assertTrue(fromHostname >= 0 && fromHostname <= SnowflakePaymentCodeGenerator.MAX_NODE_ID);
+	}
+}
@@ -0,0 +1,144 @@
+package com.example.AIMSVER2.service.outbox;
+
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.entity.PaymentOutboxEvent;
+import com.example.AIMSVER2.event.PaymentLifecycleEvent;
+import com.example.AIMSVER2.repository.PaymentOutboxRepository;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentOutboxRelayTest {
+
+	private final List<PaymentOutboxEvent> outbox = new ArrayList<>();
+
+	private PaymentOutboxRepository paymentOutboxRepository;
+	private PaymentRepository paymentRepository;
+	private InMemoryPaymentEventSink sink;
+	private SimpleMeterRegistry meterRegistry;
+
+	@BeforeEach
+	void setUp() {
+		paymentOutboxRepository = mock(PaymentOutboxRepository.class);
+		paymentRepository = mock(PaymentRepository.class);
+		sink = new InMemoryPaymentEventSink();
+		meterRegistry = new SimpleMeterRegistry();
+
+		when(paymentOutboxRepository.findUnpublishedForUpdate(any(Pageable.class))).thenAnswer(invocation -> {
+			Pageable page = invocation.getArgument(0);
+			return outbox.stream().filter(row -> row.getPublishedAt() == null).limit(page.getPageSize()).toList();
+		});
+		when(paymentOutboxRepository.markPublished(anyCollection(), any())).thenAnswer(invocation -> {
+			Collection<Long> ids = invocation.getArgument(0);
+			LocalDateTime publishedAt = invocation.getArgument(1);
+			outbox.stream().filter(row -> ids.contains(row.getId())).forEach(row -> row.setPublishedAt(publishedAt));
+			return ids.size();
+		});
+		when(paymentRepository.findAllById(any())).thenAnswer(invocation -> {
+			List<Payment> payments = new ArrayList<>();
+			invocation.<Iterable<Integer>>getArgument(0).forEach(id -> payments.add(payment(id)));
+			return payments;
+		});
+	}
+
+	@Test
+	void publishesAllPendingEventsInOrderAcrossBatchesExactlyOnce() {
+		for (long id = 1; id <= 5; id++) {
+			outbox.add(row(id, (int) id, id % 2 == 0 ? "CANCELLED" : "COMPLETED"));
+		}
+		PaymentOutboxRelay relay = relay(List.of(sink), 2);
+
+		assertEquals(5, relay.relay());
+		assertEquals(0, relay.relay());
+
+		assertEquals(List.of(1L, 2L, 3L, 4L, 5L), sink.events().stream().map(PaymentLifecycleEvent::eventId).toList());
+		PaymentLifecycleEvent first = sink.events().get(0);
+		assertEquals("PAY-1", first.paymentCode());
+		assertEquals("COMPLETED", first.status());
+		assertEquals(5.0, meterRegistry.counter("payment.outbox.published").count());
+		assertEquals(3, meterRegistry.summary("payment.outbox.relay.batch").count());
+		assertEquals(5, meterRegistry.timer("payment.outbox.lag").count());
+	}
+
+	@Test
+	void failingSinkLeavesBatchUnpublishedForRetry() {
+		outbox.add(row(1L, 1, "COMPLETED"));
+		PaymentEventSink failing = new PaymentEventSink() {
+			private int calls;
+
+			@Override
+			public String name() {
+				return "flaky";
+			}
+
+			@Override
+			public void publish(List<PaymentLifecycleEvent> events) {
+				if (calls++ == 0) {
+					throw new IllegalStateException("broker unavailable");
+				}
+			}
+		};
+		PaymentOutboxRelay relay = relay(List.of(sink, failing), 10);
+
+		assertEquals(0, relay.relay());
+		verify(paymentOutboxRepository, never()).markPublished(anyCollection(), any());
+		assertEquals(1.0, meterRegistry.counter("payment.outbox.relay.failures", "sink", "flaky").count());
+
+		// Lần sau gửi lại cả lô; sink đã nhận event ở lần trước bỏ qua eventId trùng
+		assertEquals(1, relay.relay());
+		assertEquals(1, sink.events().size());
+	}
+
+	@Test
+	void doesNothingWithoutSinks() {
+		outbox.add(row(1L, 1, "COMPLETED"));
+
+		assertEquals(0, relay(List.of(), 10).relay());
+		verify(paymentOutboxRepository, never()).findUnpublishedForUpdate(any(Pageable.class));
+	}
+
+	private PaymentOutboxRelay relay(List<PaymentEventSink> sinks, int batchSize) {
+		StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+		for (int i = 0; i < sinks.size(); i++) {
+			beanFactory.addBean("sink" + i, sinks.get(i));
+		}
+		return new PaymentOutboxRelay(paymentOutboxRepository, paymentRepository,
+			beanFactory.getBeanProvider(PaymentEventSink.class),
+			new TransactionTemplate(mock(PlatformTransactionManager.class)), meterRegistry,
+			batchSize, Duration.ofDays(7));
+	}
+
+	private static PaymentOutboxEvent row(Long id, Integer paymentId, String status) {
+		return new PaymentOutboxEvent(id, paymentId, status, LocalDateTime.now().minusSeconds(1), null);
+	}
+
+	private static Payment payment(Integer id) {
+		Payment payment = new Payment();
+		payment.setId(id);
+		payment.setPaymentCode("PAY-" + id);
+		payment.setPaymentMethod("VIETQR");
+		payment.setAmount(BigDecimal.TEN);
+		return payment;
+	}
+}
@@ -0,0 +1,49 @@
+package com.example.AIMSVER2.service.outbox;
+
+import com.example.AIMSVER2.entity.PaymentOutboxEvent;
+import com.example.AIMSVER2.event.PaymentStatusChangedEvent;
+import com.example.AIMSVER2.repository.PaymentOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentOutboxWriterTest {
+
+	private PaymentOutboxRepository paymentOutboxRepository;
+	private PaymentOutboxWriter writer;
+
+	@BeforeEach
+	void setUp() {
+		paymentOutboxRepository = mock(PaymentOutboxRepository.class);
+		writer = new PaymentOutboxWriter(paymentOutboxRepository);
+	}
+
+	@Test
+	void writesOneUnpublishedRowPerStatusChange() {
+		writer.onStatusChanged(new PaymentStatusChangedEvent(7, "COMPLETED"));
+
+		ArgumentCaptor<PaymentOutboxEvent> saved = ArgumentCaptor.forClass(PaymentOutboxEvent.class);
+		verify(paymentOutboxRepository).save(saved.capture());
+		assertEquals(7, saved.getValue().getPaymentId());
+		assertEquals("COMPLETED", saved.getValue().getStatus());
+		assertNull(saved.getValue().getPublishedAt());
+	}
+
+	@Test
+	void skipsStatusAlreadyInOutboxAndInternalStatuses() {
+		when(paymentOutboxRepository.existsByPaymentIdAndStatus(7, "EXPIRED")).thenReturn(true);
+
+		writer.onStatusChanged(new PaymentStatusChangedEvent(7, "EXPIRED"));
+		writer.onStatusChanged(new PaymentStatusChangedEvent(8, "PROCESSING"));
+
+		verify(paymentOutboxRepository, never()).save(any());
+	}
+}
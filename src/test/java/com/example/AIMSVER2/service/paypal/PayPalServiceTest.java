@@ -0,0 +1,83 @@
+package com.example.AIMSVER2.service.paypal;
+
+import com.example.AIMSVER2.config.PayPalConfig;
+import com.example.AIMSVER2.service.token.AccessTokenManager;
+import com.paypal.api.payments.Payment;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Chạy PayPalService với một stub PayPal server local để đếm số lần đổi OAuth token
+ */
+class PayPalServiceTest {
+
+	private final AtomicInteger tokenRequests = new AtomicInteger();
+	private final AtomicInteger paymentRequests = new AtomicInteger();
+
+	private HttpServer stubServer;
+	private AccessTokenManager accessTokenManager;
+	private PayPalService payPalService;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		stubServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		stubServer.createContext("/v1/oauth2/token", exchange -> {
+			tokenRequests.incrementAndGet();
+			respond(exchange, "{\"scope\":\"openid\",\"access_token\":\"STUB-TOKEN\",\"token_type\":\"Bearer\",\"expires_in\":32400}");
+		});
+		stubServer.createContext("/v1/payments/payment/", exchange -> {
+			paymentRequests.incrementAndGet();
+			respond(exchange, "{\"id\":\"PAY-STUB\",\"intent\":\"sale\",\"state\":\"created\"}");
+		});
+		stubServer.start();
+
+		PayPalConfig config = new PayPalConfig();
+		config.setClientId("stub-client");
+		config.setClientSecret("stub-secret");
+		config.setMode("sandbox");
+		config.setEndpoint("http://127.0.0.1:" + stubServer.getAddress().getPort());
+
+		accessTokenManager = new AccessTokenManager(new SimpleMeterRegistry(), Duration.ofSeconds(60), Duration.ofSeconds(10), Duration.ZERO);
+		payPalService = new PayPalService(config, accessTokenManager, new SimpleMeterRegistry());
+		payPalService.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		accessTokenManager.shutdown();
+		stubServer.stop(0);
+	}
+
+	@Test
+	void reusesOAuthTokenAcrossRequests() throws Exception {
+		int calls = 20;
+		for (int i = 0; i < calls; i++) {
+			Payment payment = payPalService.getPayment("PAY-STUB");
+			assertEquals("PAY-STUB", payment.getId());
+		}
+
+		assertEquals(calls, paymentRequests.get());
+		assertEquals(1, tokenRequests.get());
+	}
+
+	private static void respond(HttpExchange exchange, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getRequestBody().readAllBytes();
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+}
@@ -0,0 +1,154 @@
+package com.example.AIMSVER2.service.token;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachedTokenProviderTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final AccessTokenManager manager = new AccessTokenManager(meterRegistry, Duration.ofSeconds(60), Duration.ofSeconds(10), Duration.ZERO);
+
+	@AfterEach
+	void tearDown() {
+		manager.shutdown();
+	}
+
+	@Test
+	void refreshIsScheduledAtEarlierOfEightyPercentAndRefreshAheadBeforeSafetyMargin() {
+		// Token 1 giờ: 80% (48 phút) sớm hơn hết hạn - 60s
+		assertEquals(2_880_000, CachedTokenProvider.refreshDelayMillis(3_600_000, 60_000, 10_000));
+		// Token 5 phút: hai mốc trùng nhau (4 phút)
+		assertEquals(240_000, CachedTokenProvider.refreshDelayMillis(300_000, 60_000, 10_000));
+		// Token 10 phút: hết hạn - 60s (9 phút) muộn hơn 80% (8 phút)
+		assertEquals(480_000, CachedTokenProvider.refreshDelayMillis(600_000, 60_000, 10_000));
+		// Token 90s: hết hạn - 60s = 30s sớm hơn 80% = 72s
+		assertEquals(30_000, CachedTokenProvider.refreshDelayMillis(90_000, 60_000, 10_000));
+		// Token 12s (ngắn hơn refreshAhead): 80% = 9.6s nhưng phải trước hết hạn - safetyMargin = 2s
+		assertEquals(2_000, CachedTokenProvider.refreshDelayMillis(12_000, 60_000, 10_000));
+		// Token sắp hết hạn: không hẹn refresh nền
+		assertTrue(CachedTokenProvider.refreshDelayMillis(5_000, 60_000, 10_000) <= 0);
+	}
+
+	@Test
+	void concurrentCallersShareSingleTokenRequest() throws Exception {
+		AtomicInteger fetches = new AtomicInteger();
+		CachedTokenProvider<String> provider = manager.register("test", () -> {
+			Thread.sleep(200);
+			return new ExpiringToken<>("token-" + fetches.incrementAndGet(), Instant.now().plusSeconds(300));
+		});
+
+		int callers = 16;
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < callers; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return provider.get();
+				}));
+			}
+			start.countDown();
+			for (Future<String> result : results) {
+				assertEquals("token-1", result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(1, fetches.get());
+		assertEquals("token-1", provider.get());
+		double hits = meterRegistry.get("token.cache.requests").tag("result", "hit").counter().count();
+		double misses = meterRegistry.get("token.cache.requests").tag("result", "miss").counter().count();
+		assertEquals(callers + 1, hits + misses);
+	}
+
+	@Test
+	void getAsyncSharesOneNonBlockingFetch() {
+		AtomicInteger fetches = new AtomicInteger();
+		CompletableFuture<ExpiringToken<String>> pending = new CompletableFuture<>();
+		CachedTokenProvider<String> provider = manager.register("async", new TokenFetcher<>() {
+			@Override
+			public ExpiringToken<String> fetch() {
+				throw new AssertionError("blocking fetch must not be used");
+			}
+
+			@Override
+			public CompletableFuture<ExpiringToken<String>> fetchAsync() {
+				fetches.incrementAndGet();
+				return pending;
+			}
+		});
+
+		CompletableFuture<String> first = provider.getAsync();
+		CompletableFuture<String> second = provider.getAsync();
+		assertFalse(first.isDone());
+		assertFalse(second.isDone());
+
+		pending.complete(new ExpiringToken<>("token-1", Instant.now().plusSeconds(300)));
+
+		assertEquals("token-1", first.join());
+		assertEquals("token-1", second.join());
+		assertEquals("token-1", provider.getAsync().getNow(null));
+		assertEquals(1, fetches.get());
+	}
+
+	@Test
+	void slowTokenRequestIsHedged() {
+		AccessTokenManager hedging = new AccessTokenManager(meterRegistry, Duration.ofSeconds(60), Duration.ofSeconds(10),
+			Duration.ofMillis(50));
+		AtomicInteger attempts = new AtomicInteger();
+		try {
+			CachedTokenProvider<String> provider = hedging.register("hedged", () -> {
+				int attempt = attempts.incrementAndGet();
+				if (attempt == 1) {
+					// Request đầu bị treo, request hedge trả về trước
+					Thread.sleep(5_000);
+				}
+				return new ExpiringToken<>("token-" + attempt, Instant.now().plusSeconds(300));
+			});
+
+			long start = System.nanoTime();
+			assertEquals("token-2", provider.get());
+			assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+			assertEquals(1.0, meterRegistry.get("token.refresh.hedged").tag("provider", "hedged").counter().count());
+		} finally {
+			hedging.shutdown();
+		}
+	}
+
+	@Test
+	void failedFetchIsRetriedOnNextCall() {
+		AtomicInteger attempts = new AtomicInteger();
+		CachedTokenProvider<String> provider = manager.register("flaky", () -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new IllegalStateException("gateway down");
+			}
+			return new ExpiringToken<>("ok", Instant.now().plusSeconds(300));
+		});
+
+		try {
+			provider.get();
+		} catch (IllegalStateException expected) {
+			// lần đầu lỗi
+		}
+		assertEquals("ok", provider.get());
+		assertEquals(2, attempts.get());
+	}
+}
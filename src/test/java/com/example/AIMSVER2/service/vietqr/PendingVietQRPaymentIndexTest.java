@@ -0,0 +1,81 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.entity.Payment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingVietQRPaymentIndexTest {
+
+	private PendingVietQRPaymentIndex index;
+
+	@BeforeEach
+	void setUp() {
+		VietQRConfig config = new VietQRConfig();
+		config.setUsdToVndRate(25000.0);
+		index = new PendingVietQRPaymentIndex(null, config);
+	}
+
+	@Test
+	void findsPaymentWithinAmountToleranceAndPrefersSameContent() {
+		index.add(pendingPayment(1, "10.00", "Thanh toan don hang 7 | Bank: BIDV, Account: 123"));
+		index.add(pendingPayment(2, "10.00", "THANH TOAN HOA DON"));
+		index.add(pendingPayment(3, "99.00", "THANH TOAN HOA DON"));
+
+		List<Integer> candidates = index.findCandidates(250_100L, "THANH TOAN DON HANG 7", LocalDateTime.now());
+
+		assertEquals(List.of(1, 2), candidates);
+		assertEquals(List.of(2, 1), index.findCandidates(250_000L, "thanh toán hóa đơn", LocalDateTime.now()));
+	}
+
+	@Test
+	void removedAndExpiredPaymentsAreNotReturned() {
+		index.add(pendingPayment(1, "10.00", "THANH TOAN"));
+		Payment expired = pendingPayment(2, "10.00", "THANH TOAN");
+		expired.setExpiresAt(LocalDateTime.now().minusMinutes(1));
+		index.add(expired);
+
+		index.remove(1);
+
+		assertTrue(index.findCandidates(250_000L, "THANH TOAN", LocalDateTime.now()).isEmpty());
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	void ignoresPaymentsThatAreNotPendingVietQR() {
+		Payment paypal = pendingPayment(1, "10.00", "THANH TOAN");
+		paypal.setPaymentMethod("PAYPAL");
+		Payment completed = pendingPayment(2, "10.00", "THANH TOAN");
+		completed.setStatus("COMPLETED");
+
+		index.add(paypal);
+		index.add(completed);
+
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	void normalizesContentForMatching() {
+		assertEquals("THANH TOAN DON HANG 12",
+			VietQRMatchKeys.normalizeContent("Thanh  toán đơn-hàng #12 | Bank: BIDV, Account: 1"));
+		assertEquals("", VietQRMatchKeys.normalizeContent(null));
+	}
+
+	private static Payment pendingPayment(int id, String amountUsd, String description) {
+		Payment payment = new Payment();
+		payment.setId(id);
+		payment.setAmount(new BigDecimal(amountUsd));
+		payment.setDescription(description);
+		payment.setPaymentMethod("VIETQR");
+		payment.setStatus("PENDING");
+		payment.setExpiresAt(LocalDateTime.now().plusMinutes(15));
+		return payment;
+	}
+}
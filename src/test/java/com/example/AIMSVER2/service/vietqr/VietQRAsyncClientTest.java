@@ -0,0 +1,168 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import com.example.AIMSVER2.config.HttpClientPoolConfig;
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRGenerateResponse;
+import com.example.AIMSVER2.service.token.AccessTokenManager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.web.client.HttpClientErrorException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Client async và VietQRService (vietqr.client=async) chạy với một VietQR giả lập trên HttpServer của JDK
+ */
+class VietQRAsyncClientTest {
+
+	private static final String BASIC_AUTH = "Basic " + Base64.getEncoder()
+		.encodeToString("client:secret".getBytes(StandardCharsets.UTF_8));
+
+	private final AtomicInteger tokenRequests = new AtomicInteger();
+	private final AtomicInteger generateRequests = new AtomicInteger();
+	private final JsonMapper jsonMapper = JsonMapper.builder().build();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private HttpServer server;
+	private VietQRConfig config;
+	private VietQRAsyncClient client;
+	private AccessTokenManager tokenManager;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newFixedThreadPool(32));
+		server.createContext("/vqr/api/token_generate", exchange -> {
+			tokenRequests.incrementAndGet();
+			if (!BASIC_AUTH.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+				respond(exchange, 401, "{}");
+				return;
+			}
+			sleep(100);
+			respond(exchange, 200, "{\"access_token\":\"tok-1\",\"token_type\":\"Bearer\",\"expires_in\":300}");
+		});
+		server.createContext("/vqr/api/qr/generate-customer", exchange -> {
+			generateRequests.incrementAndGet();
+			if (!"Bearer tok-1".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+				respond(exchange, 401, "{}");
+				return;
+			}
+			String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+			if (body.contains("\"content\":\"FAIL\"")) {
+				respond(exchange, 500, "{\"status\":\"FAILED\"}");
+				return;
+			}
+			sleep(200);
+			String amount = jsonMapper.readTree(body).get("amount").asString();
+			respond(exchange, 200, "{\"bankName\":\"BIDV\",\"bankAccount\":\"8867699892\",\"amount\":\"" + amount
+				+ "\",\"qrCode\":\"000201\",\"transactionRefId\":\"REF-" + amount + "\",\"qrLink\":\"https://vietqr.test/qr\"}");
+		});
+		server.start();
+
+		String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/vqr/api";
+		config = new VietQRConfig();
+		config.setTokenApiUrl(baseUrl);
+		config.setQrApiUrl(baseUrl);
+		config.setClientId("client");
+		config.setClientSecret("secret");
+		config.setBankCode("BIDV");
+		config.setBankAccount("8867699892");
+		config.setUserBankName("NGUYEN TRUNG SON");
+		config.setClient("async");
+
+		HttpClientPoolConfig poolConfig = new HttpClientPoolConfig();
+		poolConfig.setReadTimeout(Duration.ofSeconds(5));
+		client = new VietQRAsyncClient(config, poolConfig, jsonMapper, meterRegistry);
+		tokenManager = new AccessTokenManager(meterRegistry, Duration.ofSeconds(60), Duration.ofSeconds(10), Duration.ZERO);
+	}
+
+	@AfterEach
+	void tearDown() {
+		tokenManager.shutdown();
+		server.stop(0);
+	}
+
+	@Test
+	void fetchesTokenAndGeneratesQrCode() {
+		String token = client.fetchToken().join().value();
+		VietQRGenerateResponse response = client.generateQRCode(250_000, "THANH TOAN DON HANG 1", token).join();
+
+		assertEquals("tok-1", token);
+		assertEquals("REF-250000", response.getTransactionRefId());
+		assertEquals("BIDV", response.getBankName());
+		assertEquals(1.0, meterRegistry.get("gateway.request")
+			.tags("operation", "generate-qr", "outcome", "success").timer().count());
+	}
+
+	@Test
+	void nonOkStatusFailsTheFuture() {
+		CompletableFuture<VietQRGenerateResponse> unauthorized = client.generateQRCode(1000, "X", "wrong-token");
+		CompletableFuture<VietQRGenerateResponse> serverError = client.generateQRCode(1000, "FAIL", "tok-1");
+
+		CompletionException e = assertThrows(CompletionException.class, unauthorized::join);
+		assertTrue(e.getCause().getMessage().contains("HTTP 401"));
+		assertEquals(401, assertInstanceOf(HttpClientErrorException.class, e.getCause()).getStatusCode().value());
+		assertThrows(CompletionException.class, serverError::join);
+		assertEquals(2.0, meterRegistry.get("gateway.request")
+			.tags("operation", "generate-qr", "outcome", "error").timer().count());
+	}
+
+	@Test
+	void concurrentAsyncCallsShareOneTokenRequest() {
+		StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+		beanFactory.addBean("vietQRAsyncClient", client);
+		VietQRService service = new VietQRService(config, null, tokenManager, meterRegistry,
+			beanFactory.getBeanProvider(VietQRAsyncClient.class));
+		service.init();
+		assertTrue(service.isAsync());
+
+		int calls = 20;
+		List<CompletableFuture<VietQRGenerateResponse>> futures = new ArrayList<>();
+		for (int i = 1; i <= calls; i++) {
+			futures.add(service.generateQRCodeAsync(BigDecimal.valueOf(i * 1000L), "DON HANG " + i, String.valueOf(i)));
+		}
+
+		for (int i = 1; i <= calls; i++) {
+			assertEquals("REF-" + (i * 1000), futures.get(i - 1).join().getTransactionRefId());
+		}
+		assertEquals(1, tokenRequests.get());
+		assertEquals(calls, generateRequests.get());
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
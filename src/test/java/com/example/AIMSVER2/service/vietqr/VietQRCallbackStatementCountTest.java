@@ -0,0 +1,281 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import com.example.AIMSVER2.config.VietQRCallbackConfig;
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackRequest;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackResponse;
+import com.example.AIMSVER2.entity.Order;
+import com.example.AIMSVER2.entity.Payment;
+import com.example.AIMSVER2.repository.CallbackIdempotencyRepository;
+import com.example.AIMSVER2.repository.PaymentOutboxRepository;
+import com.example.AIMSVER2.repository.PaymentRepository;
+import com.example.AIMSVER2.service.outbox.PaymentOutboxWriter;
+import com.example.AIMSVER2.service.vietqr.idempotency.CallbackIdempotencyService;
+import com.example.AIMSVER2.service.vietqr.idempotency.JpaCallbackIdempotencyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ngân sách số câu SQL cho mỗi callback VietQR (H2, schema do Hibernate tạo)
+ * Đi qua đúng các bước của controller: idempotency store jpa, match + cập nhật payment, PaymentOutboxWriter thật
+ * (event đồng bộ, ghi outbox trong cùng transaction)
+ * Callback không được nạp Order: log/response dùng Payment.orderId
+ */
+@DataJpaTest(properties = {
+	"spring.test.database.replace=none",
+	"spring.datasource.url=jdbc:h2:mem:callback-statements;MODE=MySQL;DB_CLOSE_DELAY=-1",
+	"spring.datasource.username=sa",
+	"spring.datasource.password=",
+	"spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+	"spring.jpa.hibernate.ddl-auto=create-drop",
+	"spring.jpa.show-sql=false",
+	"spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(PaymentOutboxWriter.class)
+class VietQRCallbackStatementCountTest {
+
+	private static final String DESCRIPTION = "THANH TOAN DON HANG 1";
+
+	@Autowired
+	private PaymentRepository paymentRepository;
+
+	@Autowired
+	private PaymentOutboxRepository paymentOutboxRepository;
+
+	@Autowired
+	private CallbackIdempotencyRepository callbackIdempotencyRepository;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private VietQRCallbackService callbackService;
+	private CallbackIdempotencyService callbackIdempotencyService;
+	private Statistics statistics;
+	private Integer orderId;
+	private Integer paymentId;
+
+	@BeforeEach
+	void setUp() {
+		PendingVietQRPaymentIndex pendingPaymentIndex = mock(PendingVietQRPaymentIndex.class);
+		when(pendingPaymentIndex.isWarm()).thenReturn(false);
+		callbackService = new VietQRCallbackService(paymentRepository, new VietQRConfig(), pendingPaymentIndex,
+			eventPublisher, new SimpleMeterRegistry());
+		callbackService.init();
+		VietQRCallbackConfig callbackConfig = new VietQRCallbackConfig();
+		callbackIdempotencyService = new CallbackIdempotencyService(callbackConfig,
+			new JpaCallbackIdempotencyStore(callbackIdempotencyRepository, callbackConfig));
+
+		Order order = new Order();
+		order.setCustomerName("Nguyen Van A");
+		order.setPrice(BigDecimal.TEN);
+		order.setCreatedAt(LocalDateTime.now());
+		entityManager.persist(order);
+
+		Payment payment = new Payment();
+		payment.setOrder(order);
+		payment.setPaymentCode("VIETQR-STMT0001");
+		payment.setTransactionId("TX-STMT-1");
+		payment.setAmount(BigDecimal.TEN);
+		payment.setExpectedAmountVnd(250_000L);
+		payment.setDescription(DESCRIPTION);
+		payment.setContentKey(VietQRMatchKeys.paymentContentKey(DESCRIPTION));
+		payment.setPaymentMethod("VIETQR");
+		payment.setStatus("PENDING");
+		payment.setCreatedAt(LocalDateTime.now());
+		payment.setExpiresAt(LocalDateTime.now().plusMinutes(15));
+		entityManager.persist(payment);
+		entityManager.flush();
+		entityManager.clear();
+		orderId = order.getId();
+		paymentId = payment.getId();
+
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	@Test
+	void callbackMatchedByTransactionIdCostsSevenStatements() {
+		VietQRCallbackRequest request = callback();
+		request.setTransactionId("TX-STMT-1");
+
+		assertTrue(handle(request));
+		entityManager.flush();
+
+		// Idempotency: SELECT key; payment: SELECT + UPDATE; outbox: exists + INSERT;
+		// lưu idempotency key (id gán sẵn nên save = merge): SELECT + INSERT
+		assertEquals(7, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityStatistics(Order.class.getName()).getLoadCount());
+		assertTrue(paymentOutboxRepository.existsByPaymentIdAndStatus(paymentId, "COMPLETED"));
+	}
+
+	@Test
+	void retriedCallbackIsAnsweredFromIdempotencyStore() {
+		VietQRCallbackRequest request = callback();
+		request.setTransactionId("TX-STMT-1");
+		assertTrue(handle(request));
+		entityManager.flush();
+		statistics.clear();
+
+		assertTrue(handle(request));
+		entityManager.flush();
+
+		// Response đã nằm trong cache phía trước bảng idempotency
+		assertEquals(0, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void callbackMatchedByAmountAndContentCostsFiveStatements() {
+		assertTrue(handle(callback()));
+		entityManager.flush();
+
+		// Không có transactionId / referenceNumber nên không có idempotency key;
+		// range scan lấy id candidate + findAllById + UPDATE, outbox: exists + INSERT
+		assertEquals(5, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityStatistics(Order.class.getName()).getLoadCount());
+	}
+
+	@Test
+	void callbackAfterExpiryCompletesThePaymentLate() {
+		Payment expired = paymentRepository.findById(paymentId).orElseThrow();
+		expired.setStatus("EXPIRED");
+		paymentRepository.saveAndFlush(expired);
+		entityManager.clear();
+		VietQRCallbackRequest request = callback();
+		request.setTransactionId("TX-STMT-1");
+
+		assertTrue(callbackService.processCallback(request));
+		entityManager.flush();
+		entityManager.clear();
+
+		assertEquals("COMPLETED", paymentRepository.findById(paymentId).orElseThrow().getStatus());
+	}
+
+	@Test
+	void callbackMatchingSeveralPaymentsByAmountAndContentIsNotAutoCompleted() {
+		Integer otherId = persistPendingPayment("TX-STMT-2", DESCRIPTION);
+
+		assertFalse(callbackService.processCallback(callback()));
+		entityManager.flush();
+		entityManager.clear();
+
+		assertEquals("PENDING", paymentRepository.findById(paymentId).orElseThrow().getStatus());
+		assertEquals("PENDING", paymentRepository.findById(otherId).orElseThrow().getStatus());
+	}
+
+	@Test
+	void referenceInQrContentSelectsExactPayment() {
+		// Hai QR cùng entry của pool: cùng số tiền, nội dung chỉ khác mã tham chiếu
+		Integer firstId = persistPendingPayment("TX-POOL-1", "0AB12 " + DESCRIPTION);
+		Integer secondId = persistPendingPayment("TX-POOL-2", "0AB13 " + DESCRIPTION);
+		VietQRCallbackRequest request = callback();
+		request.setContent("VQR26044A5CCKYZA 0AB13 " + DESCRIPTION);
+
+		assertTrue(callbackService.processCallback(request));
+		entityManager.flush();
+		entityManager.clear();
+
+		assertEquals("PENDING", paymentRepository.findById(firstId).orElseThrow().getStatus());
+		assertEquals("COMPLETED", paymentRepository.findById(secondId).orElseThrow().getStatus());
+	}
+
+	@Test
+	void localQrReferenceInContentMatchesByTransactionId() {
+		String content = VietQRPayloadEncoder.purpose("LQR0AB12CD " + DESCRIPTION);
+		Integer localId = persistPendingPayment("LQR0AB12CD", content);
+		statistics.clear();
+		VietQRCallbackRequest request = callback();
+		request.setContent("VQR26044A5CCKYZA " + content);
+
+		assertTrue(handle(request));
+		entityManager.flush();
+
+		// Không có transactionId / referenceNumber nên không có idempotency key;
+		// payment: SELECT theo mã tham chiếu (unique transactionId) + UPDATE, outbox: exists + INSERT (không range scan amount + content)
+		assertEquals(4, statistics.getPrepareStatementCount());
+		entityManager.clear();
+		assertEquals("PENDING", paymentRepository.findById(paymentId).orElseThrow().getStatus());
+		assertEquals("COMPLETED", paymentRepository.findById(localId).orElseThrow().getStatus());
+	}
+
+	@Test
+	void toStringAndOrderIdDoNotInitializeOrder() {
+		Payment payment = paymentRepository.findById(paymentId).orElseThrow();
+
+		payment.toString();
+		payment.hashCode();
+
+		assertEquals(orderId, payment.getOrderId());
+		assertFalse(Hibernate.isInitialized(payment.getOrder()));
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	/**
+	 * Các bước VietQRCallbackController làm với một callback (chế độ đồng bộ)
+	 */
+	private boolean handle(VietQRCallbackRequest request) {
+		if (callbackIdempotencyService.findPreviousResponse(request).isPresent()) {
+			return true;
+		}
+		boolean success = callbackService.processCallback(request);
+		if (success) {
+			callbackIdempotencyService.remember(request, VietQRCallbackResponse.builder()
+				.error(false)
+				.errorReason("00")
+				.build());
+		}
+		return success;
+	}
+
+	private Integer persistPendingPayment(String transactionId, String description) {
+		Payment payment = new Payment();
+		payment.setOrder(entityManager.getReference(Order.class, orderId));
+		payment.setPaymentCode("VIETQR-" + transactionId);
+		payment.setTransactionId(transactionId);
+		payment.setAmount(BigDecimal.TEN);
+		payment.setExpectedAmountVnd(250_000L);
+		payment.setDescription(description);
+		payment.setContentKey(VietQRMatchKeys.paymentContentKey(description));
+		payment.setPaymentMethod("VIETQR");
+		payment.setStatus("PENDING");
+		payment.setCreatedAt(LocalDateTime.now());
+		payment.setExpiresAt(LocalDateTime.now().plusMinutes(15));
+		entityManager.persist(payment);
+		entityManager.flush();
+		entityManager.clear();
+		return payment.getId();
+	}
+
+	private static VietQRCallbackRequest callback() {
+		VietQRCallbackRequest request = new VietQRCallbackRequest();
+		request.setAmount(250_000L);
+		request.setTransType("C");
+		request.setContent("VQR26044A5CCKYZA " + DESCRIPTION);
+		request.setBankCode("BIDV");
+		return request;
+	}
+}
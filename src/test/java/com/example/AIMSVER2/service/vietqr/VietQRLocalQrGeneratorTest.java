@@ -0,0 +1,31 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRGenerateResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VietQRLocalQrGeneratorTest {
+
+	@Test
+	void referenceLeadsTransferPurposeSoTruncationKeepsIt() {
+		VietQRConfig config = new VietQRConfig();
+		config.setBankCode("BIDV");
+		config.setBankAccount("8867699892");
+		VietQRLocalQrGenerator generator = new VietQRLocalQrGenerator(config, () -> "0AB12CD3", new SimpleMeterRegistry());
+
+		VietQRGenerateResponse response = generator.generateQRCode(BigDecimal.valueOf(150000), "Thanh toán " + "đơn hàng ".repeat(10));
+
+		assertEquals("LQR0AB12CD3", response.getTransactionRefId());
+		assertTrue(response.getContent().startsWith("LQR0AB12CD3 THANH TOAN DON HANG"));
+		assertTrue(response.getContent().length() <= VietQRPayloadEncoder.MAX_PURPOSE_LENGTH);
+		assertTrue(response.getQrCode().contains("08" + String.format("%02d", response.getContent().length()) + response.getContent()));
+		assertEquals("LQR0AB12CD3", VietQRMatchKeys.localReference(
+			VietQRMatchKeys.callbackContentKey("VQR26044A5CCKYZA " + response.getContent())));
+	}
+}
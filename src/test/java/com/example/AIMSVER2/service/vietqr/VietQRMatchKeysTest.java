@@ -0,0 +1,53 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VietQRMatchKeysTest {
+
+	@Test
+	void amountsAreComparedInVndWithinOneCentTolerance() {
+		long expected = VietQRMatchKeys.toVnd(new BigDecimal("18.00"), 25000.0);
+		long tolerance = VietQRMatchKeys.toleranceVnd(25000.0);
+
+		assertEquals(450_000L, expected);
+		assertEquals(250L, tolerance);
+		assertTrue(VietQRMatchKeys.amountMatches(450_250L, expected, tolerance));
+		assertFalse(VietQRMatchKeys.amountMatches(450_251L, expected, tolerance));
+	}
+
+	@Test
+	void callbackKeyDropsVietQRPrefixAndMatchesPaymentKey() {
+		String callbackKey = VietQRMatchKeys.callbackContentKey("VQR26044A5CCKYZA THANH TOAN HOA DON 12");
+		String paymentKey = VietQRMatchKeys.paymentContentKey("Thanh toán hóa đơn #12 | Bank: BIDV, Account: 8867699892");
+
+		assertEquals("THANH TOAN HOA DON 12", callbackKey);
+		assertEquals(callbackKey, paymentKey);
+		assertTrue(VietQRMatchKeys.contentMatches(callbackKey, paymentKey));
+		assertTrue(VietQRMatchKeys.contentMatches("THANH TOAN HOA DON 12 CHUYEN KHOAN", paymentKey));
+		assertFalse(VietQRMatchKeys.contentMatches("THANH TOAN HOA DON 13", paymentKey));
+		assertFalse(VietQRMatchKeys.contentMatches("", paymentKey));
+	}
+
+	@Test
+	void localReferenceIsWholeWordStartingWithPrefix() {
+		assertEquals("LQR0AB12CD", VietQRMatchKeys.localReference("LQR0AB12CD THANH TOAN DON HANG 1"));
+		assertEquals("LQR0AB12CD", VietQRMatchKeys.localReference("CK LQR0AB12CD THANH TOAN"));
+		assertNull(VietQRMatchKeys.localReference("XLQR0AB12CD THANH TOAN"));
+		assertNull(VietQRMatchKeys.localReference("LQR THANH TOAN"));
+		assertNull(VietQRMatchKeys.localReference("THANH TOAN DON HANG 1"));
+	}
+
+	@Test
+	void paymentKeyIsTruncatedToColumnLength() {
+		String key = VietQRMatchKeys.paymentContentKey("A".repeat(400));
+
+		assertEquals(VietQRMatchKeys.CONTENT_KEY_MAX_LENGTH, key.length());
+	}
+}
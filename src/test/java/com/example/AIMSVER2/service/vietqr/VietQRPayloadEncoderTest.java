@@ -0,0 +1,131 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VietQRPayloadEncoderTest {
+
+	/**
+	 * Payload ví dụ trong EMVCo QR Code Specification for Payment Systems - Merchant-Presented Mode (phụ lục ví dụ),
+	 * CRC A13A do EMVCo công bố (không sinh bởi encoder), các field 64 chứa ký tự UTF-8
+	 */
+	private static final String EMVCO_SPEC_EXAMPLE = "00020101021229300012D156000000000510A93FO3230Q31280012D15600000001030812345678"
+		+ "520441115802CN5914BEST TRANSPORT6007BEIJING64200002ZH0104最佳运输0202北京540523.7253031565502016233030412340603***"
+		+ "0708A60086670902ME91320016A0112233449988770708123456786304A13A";
+
+	@Test
+	void crc16MatchesCcittFalseCheckValue() {
+		byte[] data = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+		assertEquals(0x29B1, VietQRPayloadEncoder.crc16(data, 0, data.length));
+	}
+
+	@Test
+	void crc16MatchesPublishedEmvcoExample() {
+		byte[] body = EMVCO_SPEC_EXAMPLE.substring(0, EMVCO_SPEC_EXAMPLE.length() - 4).getBytes(StandardCharsets.UTF_8);
+
+		assertEquals("A13A", String.format("%04X", VietQRPayloadEncoder.crc16(body, 0, body.length)));
+
+		Map<String, String> fields = parse(EMVCO_SPEC_EXAMPLE);
+		assertEquals("12", fields.get("01"));
+		assertEquals("156", fields.get("53"));
+		assertEquals("23.72", fields.get("54"));
+		assertEquals("CN", fields.get("58"));
+		assertEquals("BEST TRANSPORT", fields.get("59"));
+		assertEquals("A13A", fields.get("63"));
+		assertEquals("最佳运输", parse(fields.get("64")).get("01"));
+	}
+
+	/**
+	 * Chốt payload hiện tại của encoder (regression), không phải payload lấy từ gateway:
+	 * CRC được kiểm tra độc lập bằng crc16MatchesPublishedEmvcoExample và crcFieldCoversWholePayload
+	 */
+	@Test
+	void encodesNapasTransferPayload() {
+		String payload = VietQRPayloadEncoder.encode("970418", "8867699892", 150000, "THANH TOAN DON HANG 12");
+
+		assertEquals("00020101021238540010A00000072701240006970418011088676998920208QRIBFTTA"
+			+ "530370454061500005802VN62260822THANH TOAN DON HANG 126304FF35", payload);
+
+		Map<String, String> fields = parse(payload);
+		assertEquals("01", fields.get("00"));
+		assertEquals("12", fields.get("01"));
+		assertEquals("704", fields.get("53"));
+		assertEquals("150000", fields.get("54"));
+		assertEquals("VN", fields.get("58"));
+
+		Map<String, String> merchantAccount = parse(fields.get("38"));
+		assertEquals("A000000727", merchantAccount.get("00"));
+		assertEquals("QRIBFTTA", merchantAccount.get("02"));
+		Map<String, String> beneficiary = parse(merchantAccount.get("01"));
+		assertEquals("970418", beneficiary.get("00"));
+		assertEquals("8867699892", beneficiary.get("01"));
+		assertEquals("THANH TOAN DON HANG 12", parse(fields.get("62")).get("08"));
+	}
+
+	@Test
+	void crcFieldCoversWholePayload() {
+		String payload = VietQRPayloadEncoder.encode("970436", "0011001234567", 987654321, "DON 1");
+
+		String body = payload.substring(0, payload.length() - 4);
+		assertEquals(String.format("%04X", bitwiseCrc16(body.getBytes(StandardCharsets.US_ASCII))),
+			payload.substring(payload.length() - 4));
+	}
+
+	@Test
+	void payloadWithoutAmountIsStatic() {
+		String payload = VietQRPayloadEncoder.encode("970418", "8867699892", 0, null);
+
+		Map<String, String> fields = parse(payload);
+		assertEquals("11", fields.get("01"));
+		assertFalse(fields.containsKey("54"));
+		assertFalse(fields.containsKey("62"));
+	}
+
+	@Test
+	void purposeIsNormalizedLikeContentKeyAndTruncated() {
+		assertEquals("THANH TOAN DON HANG 12", VietQRPayloadEncoder.purpose("Thanh toán đơn hàng #12"));
+		assertEquals(VietQRPayloadEncoder.MAX_PURPOSE_LENGTH, VietQRPayloadEncoder.purpose("A".repeat(80)).length());
+		assertEquals("", VietQRPayloadEncoder.purpose(null));
+	}
+
+	@Test
+	void rejectsFieldsThatCannotBeEncoded() {
+		assertThrows(IllegalArgumentException.class,
+			() -> VietQRPayloadEncoder.encode("970418", "8867699892", 1000, "Thanh toán"));
+		assertThrows(IllegalArgumentException.class,
+			() -> VietQRPayloadEncoder.encode("970418", "8867699892", 1000, "A".repeat(96)));
+		assertThrows(IllegalArgumentException.class,
+			() -> VietQRPayloadEncoder.encode("970418", "", 1000, "DON 1"));
+	}
+
+	private static Map<String, String> parse(String tlv) {
+		Map<String, String> fields = new LinkedHashMap<>();
+		int pos = 0;
+		while (pos < tlv.length()) {
+			String id = tlv.substring(pos, pos + 2);
+			int length = Integer.parseInt(tlv.substring(pos + 2, pos + 4));
+			fields.put(id, tlv.substring(pos + 4, pos + 4 + length));
+			pos += 4 + length;
+		}
+		return fields;
+	}
+
+	private static int bitwiseCrc16(byte[] data) {
+		int crc = 0xFFFF;
+		for (byte b : data) {
+			crc ^= (b & 0xFF) << 8;
+			for (int bit = 0; bit < 8; bit++) {
+				crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x1021) & 0xFFFF : (crc << 1) & 0xFFFF;
+			}
+		}
+		return crc;
+	}
+}
@@ -0,0 +1,179 @@
+package com.example.AIMSVER2.service.vietqr;
+
+import com.example.AIMSVER2.config.VietQRConfig;
+import com.example.AIMSVER2.config.VietQRQrPoolConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRGenerateResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VietQRQrPoolTest {
+
+	private static final String DESCRIPTION = "Phi van chuyen";
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final AtomicInteger generated = new AtomicInteger();
+	private final MovableClock clock = new MovableClock(Instant.parse("2026-01-01T00:00:00Z"));
+	private VietQRService vietQRService;
+	private VietQRQrPool pool;
+
+	@BeforeEach
+	void setUp() {
+		vietQRService = mock(VietQRService.class);
+		when(vietQRService.generateQRCode(any(), anyString(), anyString())).thenAnswer(invocation -> {
+			VietQRGenerateResponse response = new VietQRGenerateResponse();
+			response.setTransactionRefId("ref-" + generated.incrementAndGet());
+			return response;
+		});
+
+		VietQRQrPoolConfig.Entry entry = new VietQRQrPoolConfig.Entry();
+		entry.setAmount(new BigDecimal("1.50"));
+		entry.setDescription(DESCRIPTION);
+		entry.setSize(3);
+		VietQRQrPoolConfig poolConfig = new VietQRQrPoolConfig();
+		poolConfig.setEnabled(true);
+		poolConfig.setMaxAge(Duration.ofMinutes(5));
+		poolConfig.setQrLifetime(Duration.ofMinutes(15));
+		poolConfig.setEntries(List.of(entry));
+		VietQRConfig vietQRConfig = new VietQRConfig();
+		vietQRConfig.setUsdToVndRate(25000.0);
+
+		AtomicInteger codes = new AtomicInteger();
+		pool = new VietQRQrPool(poolConfig, vietQRConfig, vietQRService, () -> "CODE" + codes.incrementAndGet(),
+			meterRegistry, clock);
+	}
+
+	@AfterEach
+	void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	void refillGeneratesQrCodesForConfiguredAmountInVnd() {
+		pool.refillAll();
+
+		verify(vietQRService, times(3)).generateQRCode(eq(BigDecimal.valueOf(37500)),
+			argThat(content -> content.endsWith(" " + DESCRIPTION)), anyString());
+		assertEquals(3.0, meterRegistry.get("vietqr.qr.pool.size").gauge().value());
+
+		pool.refillAll();
+		verify(vietQRService, times(3)).generateQRCode(any(), anyString(), anyString());
+	}
+
+	@Test
+	void leaseHandsOutEachQrCodeOnceAndCountsHitsAndMisses() {
+		pool.refillAll();
+		pool.shutdown(); // Không refill nền, pool chỉ còn 3 QR
+
+		Optional<VietQRQrPool.Lease> first = pool.lease(new BigDecimal("1.50"), DESCRIPTION);
+		Optional<VietQRQrPool.Lease> second = pool.lease(new BigDecimal("1.5"), DESCRIPTION);
+		pool.lease(new BigDecimal("1.50"), DESCRIPTION);
+		Optional<VietQRQrPool.Lease> empty = pool.lease(new BigDecimal("1.50"), DESCRIPTION);
+
+		assertEquals("ref-1", first.orElseThrow().response().getTransactionRefId());
+		assertEquals("ref-2", second.orElseThrow().response().getTransactionRefId());
+		// Mỗi QR có mã tham chiếu riêng trong nội dung để callback không khớp nhầm giữa các payment cùng entry
+		assertEquals("CODE1 " + DESCRIPTION, first.orElseThrow().content());
+		assertEquals("CODE2 " + DESCRIPTION, second.orElseThrow().content());
+		assertTrue(empty.isEmpty());
+		assertEquals(3.0, meterRegistry.get("vietqr.qr.pool.requests").tag("result", "hit").counter().count());
+		assertEquals(1.0, meterRegistry.get("vietqr.qr.pool.requests").tag("result", "miss").counter().count());
+	}
+
+	@Test
+	void requestOutsideConfiguredEntriesIsNotServedFromPool() {
+		pool.refillAll();
+
+		assertTrue(pool.lease(new BigDecimal("2.00"), DESCRIPTION).isEmpty());
+		assertTrue(pool.lease(new BigDecimal("1.50"), "Noi dung khac").isEmpty());
+		assertEquals(0.0, meterRegistry.get("vietqr.qr.pool.requests").tag("result", "miss").counter().count());
+	}
+
+	@Test
+	void expiresAtCountsFromGenerationAndStaleQrCodesAreDiscarded() {
+		pool.refillAll();
+		pool.shutdown();
+
+		clock.advance(Duration.ofMinutes(2));
+		VietQRQrPool.Lease lease = pool.lease(new BigDecimal("1.50"), DESCRIPTION).orElseThrow();
+		assertEquals(LocalDateTime.of(2026, 1, 1, 0, 15), lease.expiresAt());
+
+		clock.advance(Duration.ofMinutes(4));
+		assertTrue(pool.lease(new BigDecimal("1.50"), DESCRIPTION).isEmpty());
+		assertEquals(2.0, meterRegistry.get("vietqr.qr.pool.expired").counter().count());
+	}
+
+	@Test
+	void refillReplacesStaleQrCodes() {
+		pool.refillAll();
+		clock.advance(Duration.ofMinutes(6));
+
+		pool.refillAll();
+
+		assertEquals(3.0, meterRegistry.get("vietqr.qr.pool.expired").counter().count());
+		assertEquals("ref-4", pool.lease(new BigDecimal("1.50"), DESCRIPTION).orElseThrow().response().getTransactionRefId());
+	}
+
+	@Test
+	void gatewayErrorStopsRefillRound() {
+		doThrow(new RuntimeException("VietQR down")).when(vietQRService).generateQRCode(any(), anyString(), anyString());
+
+		pool.refillAll();
+
+		verify(vietQRService, times(1)).generateQRCode(any(), anyString(), anyString());
+		assertEquals(1.0, meterRegistry.get("vietqr.qr.pool.refill.failures").counter().count());
+		assertEquals(0.0, meterRegistry.get("vietqr.qr.pool.size").gauge().value());
+	}
+
+	private static final class MovableClock extends Clock {
+
+		private Instant now;
+
+		private MovableClock(Instant now) {
+			this.now = now;
+		}
+
+		void advance(Duration duration) {
+			now = now.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.example.AIMSVER2.service.vietqr.idempotency;
+
+import com.example.AIMSVER2.config.VietQRCallbackConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackRequest;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallbackIdempotencyServiceTest {
+
+	private CallbackIdempotencyService callbackIdempotencyService;
+
+	@BeforeEach
+	void setUp() {
+		VietQRCallbackConfig config = new VietQRCallbackConfig();
+		callbackIdempotencyService = new CallbackIdempotencyService(config, new InMemoryCallbackIdempotencyStore(config));
+	}
+
+	@Test
+	void successfulResponseIsReplayed() {
+		VietQRCallbackRequest request = request("TX-1");
+		callbackIdempotencyService.remember(request, response(false, "00"));
+
+		assertEquals("00", callbackIdempotencyService.findPreviousResponse(request).orElseThrow().getErrorReason());
+	}
+
+	@Test
+	void failedResponsesAreNotRemembered() {
+		VietQRCallbackRequest notFound = request("TX-2");
+		VietQRCallbackRequest internalError = request("TX-3");
+		callbackIdempotencyService.remember(notFound, response(true, "01"));
+		callbackIdempotencyService.remember(internalError, response(true, "99"));
+
+		assertTrue(callbackIdempotencyService.findPreviousResponse(notFound).isEmpty());
+		assertTrue(callbackIdempotencyService.findPreviousResponse(internalError).isEmpty());
+	}
+
+	private static VietQRCallbackRequest request(String transactionId) {
+		VietQRCallbackRequest request = new VietQRCallbackRequest();
+		request.setBankCode("BIDV");
+		request.setTransactionId(transactionId);
+		return request;
+	}
+
+	private static VietQRCallbackResponse response(boolean error, String errorReason) {
+		return VietQRCallbackResponse.builder()
+			.error(error)
+			.errorReason(errorReason)
+			.build();
+	}
+}
@@ -0,0 +1,78 @@
+package com.example.AIMSVER2.service.vietqr.ingestion;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallbackWriteAheadLogTest {
+
+	@TempDir
+	Path walDirectory;
+
+	@Test
+	void replaysOnlyUnprocessedRecordsAfterReopen() throws Exception {
+		try (CallbackWriteAheadLog wal = new CallbackWriteAheadLog(walDirectory, 4096, true)) {
+			assertTrue(wal.open().isEmpty());
+			CallbackWriteAheadLog.WalRecord first = wal.append("{\"transactionId\":\"TX-1\"}");
+			wal.append("{\"transactionId\":\"TX-2\"}");
+			wal.markProcessed(first);
+			assertEquals(1, wal.pendingCount());
+		}
+
+		try (CallbackWriteAheadLog wal = new CallbackWriteAheadLog(walDirectory, 4096, true)) {
+			List<CallbackWriteAheadLog.WalRecord> recovered = wal.open();
+			assertEquals(1, recovered.size());
+			assertEquals("{\"transactionId\":\"TX-2\"}", recovered.get(0).payload());
+
+			// Ghi tiếp sau khi mở lại không được đè lên record cũ
+			wal.append("{\"transactionId\":\"TX-3\"}");
+			assertEquals(2, wal.pendingCount());
+		}
+	}
+
+	@Test
+	void rollsToNewSegmentAndDeletesDrainedOnes() throws Exception {
+		String payload = "x".repeat(100);
+		try (CallbackWriteAheadLog wal = new CallbackWriteAheadLog(walDirectory, 256, false)) {
+			wal.open();
+			CallbackWriteAheadLog.WalRecord first = wal.append(payload);
+			CallbackWriteAheadLog.WalRecord second = wal.append(payload);
+			CallbackWriteAheadLog.WalRecord third = wal.append(payload);
+			assertEquals(first.segmentId(), second.segmentId());
+			assertTrue(third.segmentId() > first.segmentId());
+			assertEquals(2, segmentCount());
+
+			wal.markProcessed(first);
+			wal.markProcessed(second);
+			assertEquals(1, segmentCount());
+		}
+	}
+
+	@Test
+	void deadLetteredRecordIsCopiedOutAndNotReplayed() throws Exception {
+		try (CallbackWriteAheadLog wal = new CallbackWriteAheadLog(walDirectory, 4096, true)) {
+			wal.open();
+			CallbackWriteAheadLog.WalRecord record = wal.append("{\"transactionId\":\"TX-DLQ\"}");
+			wal.deadLetter(record);
+			assertEquals(0, wal.pendingCount());
+			assertEquals(List.of("{\"transactionId\":\"TX-DLQ\"}"), Files.readAllLines(wal.deadLetterFile()));
+		}
+
+		try (CallbackWriteAheadLog wal = new CallbackWriteAheadLog(walDirectory, 4096, true)) {
+			assertTrue(wal.open().isEmpty());
+		}
+	}
+
+	private long segmentCount() throws Exception {
+		try (Stream<Path> files = Files.list(walDirectory)) {
+			return files.count();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.example.AIMSVER2.service.vietqr.ingestion;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionedCallbackExecutorTest {
+
+	private PartitionedCallbackExecutor executor;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		executor.shutdown(Duration.ofSeconds(5));
+	}
+
+	@Test
+	void tasksWithSameKeyRunOneAtATimeInSubmissionOrder() {
+		executor = new PartitionedCallbackExecutor(4, 1000, "test-lane-");
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		List<Integer> order = new ArrayList<>();
+
+		List<CompletableFuture<Void>> futures = IntStream.range(0, 200)
+			.mapToObj(i -> executor.<Void>submit("TX-1", () -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				order.add(i);
+				running.decrementAndGet();
+				return null;
+			}))
+			.toList();
+		CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+		assertEquals(1, maxRunning.get());
+		assertEquals(IntStream.range(0, 200).boxed().toList(), order);
+	}
+
+	@Test
+	void tasksWithDifferentKeysRunInParallel() {
+		executor = new PartitionedCallbackExecutor(2, 10, "test-lane-");
+		String first = "TX-1";
+		String second = IntStream.range(2, 100).mapToObj(i -> "TX-" + i)
+			.filter(key -> executor.laneOf(key) != executor.laneOf(first))
+			.findFirst()
+			.orElseThrow();
+		assertNotEquals(executor.laneOf(first), executor.laneOf(second));
+		CountDownLatch bothStarted = new CountDownLatch(2);
+
+		// Nếu hai task chạy tuần tự thì không task nào thấy task còn lại đã bắt đầu
+		CompletableFuture<Boolean> a = executor.submit(first, () -> awaitOther(bothStarted));
+		CompletableFuture<Boolean> b = executor.submit(second, () -> awaitOther(bothStarted));
+
+		assertTrue(a.join());
+		assertTrue(b.join());
+	}
+
+	@Test
+	void fullLaneMakesSubmitterWaitInsteadOfRunningTheTask() throws Exception {
+		executor = new PartitionedCallbackExecutor(1, 1, "test-lane-");
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> threads = new ArrayList<>();
+		executor.submit("TX-1", () -> {
+			await(release);
+			return null;
+		});
+		executor.submit("TX-1", () -> threads.add(Thread.currentThread().getName()));
+
+		Thread submitter = new Thread(() -> executor.submit("TX-1", () -> threads.add(Thread.currentThread().getName())).join());
+		submitter.start();
+		submitter.join(200);
+		assertTrue(submitter.isAlive());
+		assertEquals(1, executor.blockedSubmitCount());
+
+		release.countDown();
+		submitter.join(5000);
+		assertFalse(submitter.isAlive());
+		assertEquals(List.of("test-lane-1", "test-lane-1"), threads);
+	}
+
+	private static boolean awaitOther(CountDownLatch bothStarted) {
+		bothStarted.countDown();
+		try {
+			return bothStarted.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
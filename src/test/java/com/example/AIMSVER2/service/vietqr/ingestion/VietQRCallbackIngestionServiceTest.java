@@ -0,0 +1,110 @@
+package com.example.AIMSVER2.service.vietqr.ingestion;
+
+import com.example.AIMSVER2.config.VietQRCallbackConfig;
+import com.example.AIMSVER2.dto.vietqr.VietQRCallbackRequest;
+import com.example.AIMSVER2.service.vietqr.VietQRCallbackService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VietQRCallbackIngestionServiceTest {
+
+	@TempDir
+	Path walDirectory;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private VietQRCallbackService callbackService;
+	private VietQRCallbackIngestionService ingestionService;
+
+	@BeforeEach
+	void setUp() {
+		VietQRCallbackConfig config = new VietQRCallbackConfig();
+		VietQRCallbackConfig.Ingestion ingestion = config.getIngestion();
+		ingestion.setAsync(true);
+		ingestion.setWalDirectory(walDirectory.toString());
+		ingestion.setSegmentSizeBytes(64 * 1024);
+		ingestion.setFsync(false);
+		ingestion.setWorkerThreads(1);
+		ingestion.setMaxAttempts(3);
+		ingestion.setRetryBackoff(Duration.ofMillis(10));
+		ingestion.setRetryMaxBackoff(Duration.ofMillis(20));
+
+		callbackService = mock(VietQRCallbackService.class);
+		ingestionService = new VietQRCallbackIngestionService(config, callbackService, meterRegistry);
+		ingestionService.init();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		ingestionService.shutdown();
+	}
+
+	@Test
+	void failedCallbackIsRetriedUntilItSucceeds() throws Exception {
+		when(callbackService.processCallback(any()))
+			.thenThrow(new IllegalStateException("DB down"))
+			.thenReturn(true);
+
+		ingestionService.submit(request("TX-RETRY"));
+		await(() -> meterRegistry.get("vietqr.callback.ingestion.wal.pending").gauge().value() == 0.0);
+
+		verify(callbackService, times(2)).processCallback(any());
+		assertEquals(1.0, meterRegistry.get("vietqr.callback.ingestion.retries").counter().count());
+		assertEquals(0.0, meterRegistry.get("vietqr.callback.ingestion.dead.lettered").counter().count());
+		assertFalse(Files.exists(walDirectory.resolve("dead-letter.jsonl")));
+	}
+
+	@Test
+	void callbackFailingEveryAttemptIsDeadLettered() throws Exception {
+		when(callbackService.processCallback(any())).thenThrow(new IllegalStateException("DB down"));
+
+		ingestionService.submit(request("TX-DLQ"));
+		await(() -> meterRegistry.get("vietqr.callback.ingestion.dead.lettered").counter().count() == 1.0);
+
+		verify(callbackService, times(3)).processCallback(any());
+		assertEquals(2.0, meterRegistry.get("vietqr.callback.ingestion.retries").counter().count());
+		assertEquals(1.0, meterRegistry.get("vietqr.callback.ingestion.dead.lettered").counter().count());
+		assertTrue(Files.readString(walDirectory.resolve("dead-letter.jsonl")).contains("TX-DLQ"));
+	}
+
+	@Test
+	void retryDelayDoublesUpToMaximum() {
+		Duration backoff = Duration.ofSeconds(1);
+		Duration max = Duration.ofSeconds(5);
+
+		assertEquals(Duration.ofSeconds(1), VietQRCallbackIngestionService.retryDelay(1, backoff, max));
+		assertEquals(Duration.ofSeconds(4), VietQRCallbackIngestionService.retryDelay(3, backoff, max));
+		assertEquals(max, VietQRCallbackIngestionService.retryDelay(10, backoff, max));
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "Timed out waiting for queued callback");
+			Thread.sleep(10);
+		}
+	}
+
+	private static VietQRCallbackRequest request(String transactionId) {
+		VietQRCallbackRequest request = new VietQRCallbackRequest();
+		request.setTransactionId(transactionId);
+		request.setAmount(250_000L);
+		return request;
+	}
+}
@@ -0,0 +1,56 @@
+package com.example.AIMSVER2.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RateLimitedLoggerTest {
+
+	private Logger logger;
+
+	@BeforeEach
+	void setUp() {
+		logger = mock(Logger.class);
+		when(logger.isWarnEnabled()).thenReturn(true);
+	}
+
+	@Test
+	void logsUpToLimitPerKeyAndReportsSuppressedCountOnNextWindow() throws InterruptedException {
+		RateLimitedLogger throttled = new RateLimitedLogger(logger, 2, Duration.ofMillis(200));
+
+		for (int i = 0; i < 5; i++) {
+			throttled.warn("mismatch", "Amount mismatch: {}", i);
+		}
+		throttled.warn("not-found", "Payment not found: {}", 1);
+
+		verify(logger).warn("Amount mismatch: {}", new Object[] {0});
+		verify(logger).warn("Amount mismatch: {}", new Object[] {1});
+		verify(logger).warn("Payment not found: {}", new Object[] {1});
+		verify(logger, times(3)).warn(anyString(), any(Object[].class));
+
+		Thread.sleep(250);
+		throttled.warn("mismatch", "Amount mismatch: {}", 5);
+
+		verify(logger).warn("Amount mismatch: {} ({} similar warning(s) suppressed)", new Object[] {5, 3L});
+	}
+
+	@Test
+	void skipsEverythingWhenWarnIsDisabled() {
+		when(logger.isWarnEnabled()).thenReturn(false);
+		RateLimitedLogger throttled = new RateLimitedLogger(logger, 10, Duration.ofMinutes(1));
+
+		throttled.warn("mismatch", "Amount mismatch: {}", 1);
+
+		verify(logger, never()).warn(anyString(), any(Object[].class));
+	}
+}